@@ -0,0 +1,202 @@
+package org.esa.snap.objectstoragefs;
+
+/**
+ * Detects how a byte channel is read from the positions and lengths of its recent
+ * reads, and derives request sizes and prefetch depth from the observed throughput.
+ * <p>
+ * A read is considered sequential if it starts at, or shortly after, the end of the
+ * previous read. The channel is in {@link Mode#SEQUENTIAL} mode while most of the
+ * recent reads are sequential, and in {@link Mode#RANDOM} mode otherwise. A read that
+ * jumps into the last bytes of the object, as readers of formats with a trailing
+ * index do, is classified as {@link Mode#TAIL} and not counted. Explicit access hints
+ * override the detected mode.
+ */
+class ObjectStorageAccessPattern {
+
+    enum Mode {
+        /**
+         * Request large ranges and read ahead.
+         */
+        SEQUENTIAL,
+        /**
+         * Request small ranges and do not read ahead.
+         */
+        RANDOM,
+        /**
+         * Load the tail of the object.
+         */
+        TAIL
+    }
+
+    private static final int HISTORY_SIZE = 8;
+    private static final long MAX_SEQUENTIAL_GAP = 16 * 1024;
+    private static final double SMOOTHING = 0.25;
+
+    private final ObjectStorageOpenOption hint;
+    private final long contentLength;
+    private final long tailSize;
+    private final boolean[] sequentialHistory;
+    private final int[] lengthHistory;
+    private int historyIndex;
+    private int historyCount;
+    private int sequentialCount;
+    private long lastEnd;
+    private long lastReadEndTime;
+    private Mode mode;
+    private double thinkNanosPerByte;
+    private double latencyNanos;
+    private double bytesPerNano;
+    private double fetchNanos;
+
+    /**
+     * Creates a detector.
+     *
+     * @param hint          The access hint given when opening the channel, may be {@code null}
+     * @param contentLength The object's size in bytes
+     * @param tailSize      The number of bytes at the end of the object that are loaded at once on a jump into them, zero to disable
+     */
+    ObjectStorageAccessPattern(ObjectStorageOpenOption hint, long contentLength, long tailSize) {
+        this.hint = hint;
+        this.contentLength = contentLength;
+        this.tailSize = tailSize;
+        this.sequentialHistory = new boolean[HISTORY_SIZE];
+        this.lengthHistory = new int[HISTORY_SIZE];
+        this.lastEnd = 0;
+        this.lastReadEndTime = -1;
+        this.mode = hint == ObjectStorageOpenOption.RANDOM ? Mode.RANDOM : Mode.SEQUENTIAL;
+        this.thinkNanosPerByte = -1;
+        this.latencyNanos = -1;
+        this.bytesPerNano = -1;
+        this.fetchNanos = -1;
+    }
+
+    ObjectStorageOpenOption getHint() {
+        return hint;
+    }
+
+    /**
+     * @return The current mode, either {@link Mode#SEQUENTIAL} or {@link Mode#RANDOM}
+     */
+    synchronized Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Records the start of a read.
+     *
+     * @param position The position of the first byte to read
+     * @param length   The number of bytes to read
+     * @return How the read should be served
+     */
+    synchronized Mode recordRead(long position, int length) {
+        if (lastReadEndTime >= 0 && length > 0) {
+            // The time the reader spent since the previous read tells how fast it consumes data.
+            thinkNanosPerByte = smooth(thinkNanosPerByte, (double) (System.nanoTime() - lastReadEndTime) / length);
+        }
+        boolean sequential = position >= lastEnd && position - lastEnd <= MAX_SEQUENTIAL_GAP;
+        lastEnd = position + length;
+        if (!sequential && tailSize > 0 && position >= contentLength - tailSize) {
+            return Mode.TAIL;
+        }
+        if (historyCount == HISTORY_SIZE && sequentialHistory[historyIndex]) {
+            sequentialCount--;
+        }
+        sequentialHistory[historyIndex] = sequential;
+        lengthHistory[historyIndex] = length;
+        historyIndex = (historyIndex + 1) % HISTORY_SIZE;
+        historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+        if (sequential) {
+            sequentialCount++;
+        }
+        if (hint == null) {
+            mode = 2 * sequentialCount >= historyCount ? Mode.SEQUENTIAL : Mode.RANDOM;
+        }
+        return mode;
+    }
+
+    /**
+     * Records the end of a read.
+     */
+    synchronized void recordReadEnd() {
+        lastReadEndTime = System.nanoTime();
+    }
+
+    /**
+     * Records the time from sending a request until the response headers have been received.
+     *
+     * @param nanos The time in nanoseconds
+     */
+    synchronized void recordLatency(long nanos) {
+        latencyNanos = smooth(latencyNanos, nanos);
+    }
+
+    /**
+     * Records the transfer of response body bytes.
+     *
+     * @param length The number of bytes transferred
+     * @param nanos  The time in nanoseconds
+     */
+    synchronized void recordTransfer(long length, long nanos) {
+        if (length > 0 && nanos > 0) {
+            bytesPerNano = smooth(bytesPerNano, (double) length / nanos);
+        }
+    }
+
+    /**
+     * Records the time of a complete read-ahead request.
+     *
+     * @param nanos The time in nanoseconds
+     */
+    synchronized void recordFetch(long nanos) {
+        fetchNanos = smooth(fetchNanos, nanos);
+    }
+
+    /**
+     * Returns the size of ranges to request in random mode: a power of two that covers
+     * the average recent read and the bytes that can be transferred in half the time
+     * needed to send a request, so that neighbouring small reads are served by one request.
+     *
+     * @param minSize The minimum size
+     * @param maxSize The maximum size
+     * @return The range size
+     */
+    synchronized long getBlockSize(long minSize, long maxSize) {
+        double size = 0;
+        for (int i = 0; i < historyCount; i++) {
+            size += lengthHistory[i];
+        }
+        if (historyCount > 0) {
+            size /= historyCount;
+        }
+        if (latencyNanos > 0 && bytesPerNano > 0) {
+            size = Math.max(size, latencyNanos * bytesPerNano / 2);
+        }
+        long blockSize = size <= 1 ? 1 : Long.highestOneBit((long) Math.ceil(size) - 1) << 1;
+        return Math.max(minSize, Math.min(maxSize, blockSize));
+    }
+
+    /**
+     * Returns the number of buffers to keep ahead of the read position: enough to cover the
+     * time a request takes while the reader consumes buffers at its observed rate. Readers
+     * slower than the network need fewer buffers.
+     *
+     * @param bufferSize The size of a buffer
+     * @param maxDepth   The maximum number of buffers
+     * @return The prefetch depth, at least one
+     */
+    synchronized int getPrefetchDepth(int bufferSize, int maxDepth) {
+        if (fetchNanos < 0 || thinkNanosPerByte < 0) {
+            return maxDepth;
+        }
+        double consumeNanos = thinkNanosPerByte * bufferSize;
+        if (consumeNanos < 1) {
+            return maxDepth;
+        }
+        double depth = Math.ceil(fetchNanos / consumeNanos) + 1;
+        return (int) Math.max(1, Math.min(maxDepth, depth));
+    }
+
+    private static double smooth(double average, double value) {
+        return average < 0 ? value : average + SMOOTHING * (value - average);
+    }
+}
@@ -0,0 +1,144 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache for fixed-size, aligned blocks of objects, shared by all byte channels
+ * of a file system.
+ * <p>
+ * Blocks are identified by object URL and block index. Implementations decide
+ * where blocks are stored and which blocks are evicted.
+ */
+abstract class ObjectStorageBlockCache {
+
+    private final int blockSize;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    ObjectStorageBlockCache(long capacity, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        if (capacity < blockSize) {
+            throw new IllegalArgumentException("capacity must not be less than blockSize");
+        }
+        this.blockSize = blockSize;
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    /**
+     * Creates the block cache configured for a file system.
+     *
+     * @param config The file system configuration
+     * @return The block cache or {@code null} if caching is disabled
+     */
+    static ObjectStorageBlockCache create(ObjectStorageConfig config) {
+        if (config.getBlockCacheSize() <= 0) {
+            return null;
+        }
+        long capacity = Math.max(config.getBlockCacheSize(), config.getBlockCacheBlockSize());
+        if (config.isBlockCacheOffHeap()) {
+            return new ObjectStorageOffHeapBlockCache(capacity, config.getBlockCacheBlockSize());
+        }
+        return new ObjectStorageHeapBlockCache(capacity, config.getBlockCacheBlockSize());
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Reads a range of bytes of an object. Blocks not found in the cache are
+     * read using the given reader and then added to the cache. Consecutive
+     * missing blocks are read with a single request. Bytes beyond the end of the
+     * object are not read.
+     *
+     * @param url           The object URL
+     * @param contentLength The object's size in bytes
+     * @param position      The position of the first byte within the object
+     * @param array         The destination array
+     * @param offset        The offset within the destination array
+     * @param length        The number of bytes to read
+     * @param reader        Reads missing blocks
+     * @throws IOException If an I/O error occurs
+     */
+    void read(URL url, long contentLength, long position, byte[] array, int offset, int length, ObjectStorageRangeReader reader) throws IOException {
+        String objectKey = url.toString();
+        long end = Math.min(position + length, contentLength);
+        long blockIndex = position / blockSize;
+        while (position < end) {
+            long blockPosition = blockIndex * blockSize;
+            int blockOffset = (int) (position - blockPosition);
+            int n = (int) Math.min(blockSize - blockOffset, end - position);
+            if (getBlock(objectKey, blockIndex, blockOffset, array, offset, n)) {
+                hitCount.incrementAndGet();
+                blockIndex++;
+            } else {
+                long missingEnd = blockIndex + 1;
+                while (missingEnd * blockSize < end && !containsBlock(objectKey, missingEnd)) {
+                    missingEnd++;
+                }
+                missCount.addAndGet(missingEnd - blockIndex);
+                int missingLength = (int) (Math.min(missingEnd * blockSize, contentLength) - blockPosition);
+                byte[] data = new byte[missingLength];
+                reader.readRange(url, blockPosition, data, 0, missingLength);
+                for (long i = blockIndex; i < missingEnd; i++) {
+                    int dataOffset = (int) ((i - blockIndex) * blockSize);
+                    putBlock(objectKey, i, data, dataOffset, Math.min(blockSize, missingLength - dataOffset));
+                }
+                n = (int) Math.min(missingLength - blockOffset, end - position);
+                System.arraycopy(data, blockOffset, array, offset, n);
+                blockIndex = missingEnd;
+            }
+            position += n;
+            offset += n;
+        }
+    }
+
+    /**
+     * Copies bytes of a cached block into the given array.
+     *
+     * @param objectKey   The object key
+     * @param blockIndex  The block index
+     * @param blockOffset The offset of the first byte within the block
+     * @param array       The destination array
+     * @param offset      The offset within the destination array
+     * @param length      The number of bytes to copy
+     * @return {@code true} if the block is cached, {@code false} otherwise
+     * @throws IOException If an I/O error occurs
+     */
+    protected abstract boolean getBlock(String objectKey, long blockIndex, int blockOffset, byte[] array, int offset, int length) throws IOException;
+
+    /**
+     * Tells whether a block is cached.
+     *
+     * @param objectKey  The object key
+     * @param blockIndex The block index
+     * @return {@code true} if the block is cached, {@code false} otherwise
+     * @throws IOException If an I/O error occurs
+     */
+    protected abstract boolean containsBlock(String objectKey, long blockIndex) throws IOException;
+
+    /**
+     * Adds a block to the cache, possibly evicting other blocks.
+     *
+     * @param objectKey  The object key
+     * @param blockIndex The block index
+     * @param data       The array holding the block data
+     * @param offset     The offset of the block data within the array
+     * @param length     The length of the block, which is less than the block size only for the last block of an object
+     * @throws IOException If an I/O error occurs
+     */
+    protected abstract void putBlock(String objectKey, long blockIndex, byte[] data, int offset, int length) throws IOException;
+}
@@ -3,39 +3,118 @@ package org.esa.snap.objectstoragefs;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A byte channel that maintains a current <i>position</i> and allows the
  * position to be changed.
+ * <p>
+ * Unless ranged mode is enabled, data is streamed using bounded range requests. The first
+ * range after opening the channel or after a seek is small, and the size of subsequent
+ * ranges doubles as long as data is read sequentially, so that short reads of large
+ * objects do not start transfers of the whole object.
+ * <p>
+ * In stream mode, the channel keeps a few open ranges, the <i>cursors</i>. A read is served by
+ * the cursor just behind the position, skipping the bytes in between, so that readers alternating
+ * between regions of an object, e.g. an index and the data, do not reconnect on every switch.
+ * Bytes are skipped as long as transferring them is expected to take less time than a new request,
+ * as measured by the file system's {@link ObjectStorageTransferStats}. The least recently used
+ * cursor is closed when a new one is needed. A cursor releases its connection as soon as its
+ * range has been read completely, and the connection pool closes the least recently used idle
+ * cursors of all channels beyond {@link ObjectStorageConfig#CHANNEL_CURSOR_LIMIT}.
+ * <p>
+ * Small reads, e.g. of parsers reading a few bytes at a time, are served from a read buffer
+ * that is refilled by one large read. Large reads bypass the buffer to avoid copying.
+ * <p>
+ * An {@link ObjectStorageAccessPattern} observes the reads and adapts the strategy: in random
+ * mode, ranges do not grow and read-ahead is bypassed. A jump into the last bytes of the object
+ * loads these bytes at once, so that the index of formats with a trailing index is served from memory.
+ * <p>
+ * Failed transfers are retried according to the file system's {@link ObjectStorageRetryPolicy}.
+ * A range interrupted in the middle is requested again from the first byte not yet read, on
+ * condition that the object still has the entity tag seen in the first response.
  */
-class ObjectStorageByteChannel implements SeekableByteChannel {
+public class ObjectStorageByteChannel implements SeekableByteChannel {
 
     private final ObjectStoragePath path;
+    private final ObjectStorageFileSystem fileSystem;
     private final URL url;
-    private final long contentLength;
-    private final String contentType;
     private final byte[] buffer;
-    private HttpURLConnection connection;
+    private final byte[] readBuffer;
+    private long readBufferPosition;
+    private int readBufferLength;
+    private final boolean rangedMode;
+    private final ObjectStorageOpenOption hint;
+    private final long initialRangeSize;
+    private final long maxRangeSize;
+    private final ObjectStorageRetryPolicy retryPolicy;
+    private volatile long contentLength;
+    private String contentType;
+    private String etag;
+    private boolean versionRequired;
+    private ObjectStorageReadAhead readAhead;
+    private ObjectStorageAccessPattern accessPattern;
+    private long tailPosition;
+    private byte[] tail;
+    private final List<Cursor> cursors;
+    private final int maxCursors;
+    private final long cursorIdleTimeout;
     private long position;
+    private volatile boolean open;
 
     ObjectStorageByteChannel(ObjectStoragePath path) throws IOException {
-        this(path, 1024 * 16);
+        this(path, null);
     }
 
-    private ObjectStorageByteChannel(ObjectStoragePath path, int bufferSize) throws IOException {
+    ObjectStorageByteChannel(ObjectStoragePath path, ObjectStorageOpenOption hint) throws IOException {
+        this(path, hint, 1024 * 16);
+    }
+
+    /**
+     * Creates a channel without sending any request. The object's size is taken from the
+     * path's file attributes if known, for example from a directory listing; otherwise it
+     * is learned from the first response.
+     */
+    private ObjectStorageByteChannel(ObjectStoragePath path, ObjectStorageOpenOption hint, int bufferSize) throws IOException {
         this.path = path;
+        this.fileSystem = (ObjectStorageFileSystem) path.getFileSystem();
         this.url = path.getFileURL();
-        this.connection = connect();
-        this.contentLength = connection.getContentLengthLong();
-        this.contentType = connection.getContentType();
+        this.hint = hint;
         this.position = 0;
+        ObjectStorageConfig config = fileSystem.getConfig();
+        this.maxRangeSize = config.getRangeRequestMaxSize();
+        this.retryPolicy = fileSystem.getRetryPolicy();
+        // Sequential readers known in advance get large ranges right away.
+        this.initialRangeSize = hint == ObjectStorageOpenOption.SEQUENTIAL ? maxRangeSize : config.getRangeRequestInitialSize();
+        this.cursors = new ArrayList<>();
+        this.maxCursors = config.getChannelCursors();
+        this.cursorIdleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getConnectionIdleTimeout());
+        this.rangedMode = config.getReadAheadWindowSize() > 0
+                          || fileSystem.getBlockCache() != null
+                          || fileSystem.getDiskCache() != null;
+        // The persistent block cache must know the object's version, which only a response tells.
+        this.versionRequired = fileSystem.getDiskCache() != null;
+        this.contentLength = -1;
+        BasicFileAttributes attributes = path.getFileAttributes();
+        if (attributes != null && attributes.isRegularFile() && attributes.size() >= 0) {
+            setContentLength(attributes.size());
+        }
         this.buffer = new byte[bufferSize];
+        this.readBuffer = config.getChannelBufferSize() > 0 ? new byte[config.getChannelBufferSize()] : null;
+        this.open = true;
     }
 
     /**
@@ -47,6 +126,10 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
      */
     @Override
     public long size() throws IOException {
+        if (contentLength < 0) {
+            assertOpen();
+            requestMetadata();
+        }
         return contentLength;
     }
 
@@ -79,24 +162,11 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
         if (newPosition < 0) {
             throw new IllegalArgumentException("newPosition is negative");
         }
-        if (newPosition > contentLength) {
+        if (contentLength >= 0 && newPosition > contentLength) {
             throw new EOFException(url.toString());
         }
-        long delta = newPosition - position;
-        if (delta == 0) {
-            // If no delta, return immediately.
-            return this;
-        } else if (delta > 0 && delta < buffer.length) {
-            // If the delta is positive and less than the internal buffer perform optimisation:
-            // reuse existing connection and download bytes until the seek position is reached.
-            skipBytes((int) delta);
-            position += delta;
-        } else {
-            // ... otherwise establish new connection utilizing the "Range" request header parameter.
-            close();
-            position += delta;
-            this.connection = connect();
-        }
+        // Ranged requests, the read-ahead window and the cursors are positioned on the next read.
+        position = newPosition;
         return this;
     }
 
@@ -107,7 +177,7 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
      */
     @Override
     public boolean isOpen() {
-        return connection != null;
+        return open;
     }
 
     /**
@@ -117,9 +187,15 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
      */
     @Override
     public void close() throws IOException {
-        connection.disconnect();
-        connection = null;
-        ((ObjectStorageFileSystem)path.getFileSystem()).removeByteChannel(this);
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (readAhead != null) {
+            readAhead.close();
+        }
+        disconnect();
+        fileSystem.removeByteChannel(this);
     }
 
     /**
@@ -132,10 +208,45 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
     public int read(ByteBuffer dst) throws IOException {
         assertOpen();
         int numRemaining = dst.remaining();
-        if (dst.hasArray()) {
+        if (readBufferLength > 0
+            && position >= readBufferPosition
+            && position + numRemaining <= readBufferPosition + readBufferLength) {
+            // Served from memory, without further bookkeeping.
+            dst.put(readBuffer, (int) (position - readBufferPosition), numRemaining);
+            position += numRemaining;
+            return numRemaining;
+        }
+        boolean buffered = readBuffer != null && numRemaining > 0 && numRemaining < readBuffer.length / 16;
+        if (contentLength < 0 || versionRequired) {
+            if (rangedMode || versionRequired) {
+                requestMetadata();
+            } else {
+                openFirstRange(buffered ? readBuffer.length : numRemaining);
+            }
+        }
+        buffered &= position + numRemaining <= contentLength;
+        int readLength = buffered ? getRefillLength(numRemaining) : numRemaining;
+        if (accessPattern.recordRead(position, readLength) == ObjectStorageAccessPattern.Mode.TAIL && tail == null) {
+            loadTail();
+        }
+        if (buffered) {
+            long start = position;
+            readBufferLength = 0;
+            readBytes(readBuffer, 0, readLength);
+            readBufferPosition = start;
+            readBufferLength = readLength;
+            position = start + numRemaining;
+            dst.put(readBuffer, 0, numRemaining);
+        } else if (dst.hasArray()) {
             byte[] bytes = dst.array();
-            readBytes(bytes, dst.arrayOffset(), numRemaining);
+            readBytes(bytes, dst.arrayOffset() + dst.position(), numRemaining);
             dst.position(dst.position() + numRemaining);
+        } else if (!rangedMode && (tail == null || position < tailPosition)) {
+            // Stream mode: over plain HTTP, response bytes go straight into the direct buffer.
+            if (position >= contentLength) {
+                throw new EOFException(url.toString());
+            }
+            readStream(dst, accessPattern.getMode() == ObjectStorageAccessPattern.Mode.SEQUENTIAL);
         } else {
             int length = numRemaining;
             while (length > 0) {
@@ -144,10 +255,51 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
                 length -= n;
             }
         }
-        this.position += numRemaining;
+        accessPattern.recordReadEnd();
         return numRemaining;
     }
 
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer, starting at the given
+     * position. This channel's position and connection are not used: the bytes are read from the
+     * block caches or by a ranged request on a pooled connection. Hence, any number of threads
+     * may read from one channel at the same time, like from a {@link java.nio.channels.FileChannel}.
+     *
+     * @param dst      The buffer, up to its remaining bytes are read
+     * @param position The position within the object
+     * @return The number of bytes read, or -1 if the position is at or beyond the end of the object
+     * @throws ClosedChannelException   If this channel is closed
+     * @throws IllegalArgumentException If the position is negative
+     * @throws IOException              If some other I/O error occurs
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        assertOpen();
+        return fileSystem.read(path, contentLength, dst, position);
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer, starting at the given
+     * position, without blocking the calling thread. This channel's position is not changed, and
+     * any number of reads may be outstanding at the same time.
+     *
+     * @param dst      The buffer, up to its remaining bytes are read
+     * @param position The position within the object
+     * @return A future giving the number of bytes read, or -1 if the position is at or beyond the end of the object
+     * @throws IllegalArgumentException If the position is negative
+     * @see ObjectStorageFileSystem#readAsync(java.nio.file.Path, ByteBuffer, long)
+     */
+    public CompletableFuture<Integer> readAsync(ByteBuffer dst, long position) {
+        if (!open) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
+        }
+        return fileSystem.readAsync(path, contentLength, dst, position);
+    }
+
     /**
      * Writes a sequence of bytes to this channel from the given buffer.
      *
@@ -177,47 +329,354 @@ class ObjectStorageByteChannel implements SeekableByteChannel {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Returns the number of bytes to read into the read buffer for a small read at the current position:
+     * the whole buffer while reading sequentially, otherwise a block as sized in random mode.
+     */
+    private int getRefillLength(int numRemaining) {
+        long size = accessPattern.getMode() == ObjectStorageAccessPattern.Mode.SEQUENTIAL
+                ? readBuffer.length
+                : accessPattern.getBlockSize(4096, readBuffer.length);
+        return (int) Math.max(numRemaining, Math.min(size, contentLength - position));
+    }
+
     private void assertOpen() throws ClosedChannelException {
-        if (connection == null) {
+        if (!open) {
             throw new ClosedChannelException();
         }
     }
 
-    private void skipBytes(int length) throws IOException {
-        readBytes(buffer, 0, length);
-    }
-
     private int readBytes(byte[] array, int offset, int length) throws IOException {
         if (position >= contentLength) {
             throw new EOFException(url.toString());
         }
-        InputStream stream = connection.getInputStream();
-        int off = offset;
-        int len = length;
-        while (len > 0) {
-            int n = stream.read(array, off, len);
-            if (n < 0) {
+        if (tail != null && position >= tailPosition) {
+            if (position + length > contentLength) {
                 throw new EOFException(url.toString());
             }
-            len -= n;
-            off += n;
+            System.arraycopy(tail, (int) (position - tailPosition), array, offset, length);
+            position += length;
+            return length;
+        }
+        boolean sequential = accessPattern.getMode() == ObjectStorageAccessPattern.Mode.SEQUENTIAL;
+        if (readAhead != null && sequential) {
+            readAhead.read(position, array, offset, length);
+            position += length;
+            return length;
         }
+        if (rangedMode) {
+            fileSystem.readObjectRange(url, contentLength, position, array, offset, length);
+            position += length;
+            return length;
+        }
+        readStream(ByteBuffer.wrap(array, offset, length), sequential);
         return length;
     }
 
-    private HttpURLConnection connect() throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setDoInput(true);
-        if (position > 0) {
-            String rangeSpec = "bytes=" + position + "-" + (contentLength - 1);
-            connection.setRequestProperty("Range", rangeSpec);
+    /**
+     * Reads exactly {@code dst.remaining()} bytes from the cursors' range responses, requesting further ranges as needed.
+     * If a request or transfer fails, a range starting at the current position is requested again.
+     */
+    private void readStream(ByteBuffer dst, boolean sequential) throws IOException {
+        int retryCount = 0;
+        while (dst.hasRemaining()) {
+            Cursor cursor = null;
+            int n;
+            try {
+                cursor = getCursor(dst.remaining(), sequential);
+                int limit = dst.limit();
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), cursor.rangeEnd - position));
+                long startTime = System.nanoTime();
+                try {
+                    n = cursor.response.read(dst);
+                } finally {
+                    dst.limit(limit);
+                }
+                if (n < 0) {
+                    throw new EOFException(url.toString());
+                }
+                long nanos = System.nanoTime() - startTime;
+                accessPattern.recordTransfer(n, nanos);
+                fileSystem.getTransferStats().recordTransfer(n, nanos);
+            } catch (IOException e) {
+                if (cursor != null) {
+                    // The connection is broken, do not return it to the pool.
+                    cursor.response.abort();
+                    cursors.remove(cursor);
+                }
+                if (!retryPolicy.canRetry(e, retryCount)) {
+                    throw e;
+                }
+                retryPolicy.backoff(retryCount++);
+                continue;
+            }
+            position += n;
+            cursor.position = position;
+            retryCount = 0;
+            if (position == cursor.rangeEnd) {
+                // The range has been read completely, so the connection can be reused right away.
+                cursor.response.close();
+                cursor.response = null;
+            } else {
+                fileSystem.getConnectionPool().holdResponse(cursor.response);
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor whose response continues at the current position. The cursor just behind the
+     * position is used if the bytes in between are few enough to be skipped. Otherwise a new range is
+     * requested, closing the least recently used cursor if the maximum number of cursors is reached.
+     *
+     * @param expectedLength The number of bytes the current read still needs
+     * @param sequential     Whether the channel is in sequential mode
+     */
+    private Cursor getCursor(int expectedLength, boolean sequential) throws IOException {
+        long now = System.nanoTime();
+        long maxSkipDistance = fileSystem.getTransferStats().getMaxSkipDistance(buffer.length);
+        Cursor cursor = null;
+        for (Iterator<Cursor> iterator = cursors.iterator(); iterator.hasNext(); ) {
+            Cursor candidate = iterator.next();
+            if (now - candidate.lastUseTime > cursorIdleTimeout) {
+                // The connection is likely to be closed by the server soon.
+                closeCursor(candidate);
+                iterator.remove();
+            } else if (candidate.position <= position
+                       && position <= candidate.rangeEnd
+                       && position - candidate.position <= maxSkipDistance
+                       && (cursor == null || candidate.position > cursor.position)) {
+                cursor = candidate;
+            }
+        }
+        if (cursor != null && cursor.response != null && !fileSystem.getConnectionPool().resumeResponse(cursor.response)) {
+            // The pool has closed the response to stay within the limit of idle cursors.
+            cursors.remove(cursor);
+            cursor = null;
+        }
+        if (cursor != null && cursor.position < position) {
+            try {
+                long startTime = System.nanoTime();
+                skipResponseBytes(cursor.response, position - cursor.position);
+                fileSystem.getTransferStats().recordTransfer(position - cursor.position, System.nanoTime() - startTime);
+                cursor.position = position;
+            } catch (IOException e) {
+                cursor.response.abort();
+                cursors.remove(cursor);
+                cursor = null;
+            }
+        }
+        if (cursor == null) {
+            if (cursors.size() >= maxCursors) {
+                Cursor leastRecentlyUsed = Collections.min(cursors, Comparator.comparingLong(c -> c.lastUseTime));
+                closeCursor(leastRecentlyUsed);
+                cursors.remove(leastRecentlyUsed);
+            }
+            cursor = new Cursor(initialRangeSize);
+            openRange(cursor, expectedLength, sequential);
+            cursors.add(cursor);
+        } else if (position == cursor.rangeEnd) {
+            openRange(cursor, expectedLength, sequential);
+        }
+        cursor.lastUseTime = now;
+        return cursor;
+    }
+
+    private void disconnect() {
+        for (Cursor cursor : cursors) {
+            closeCursor(cursor);
+        }
+        cursors.clear();
+    }
+
+    /**
+     * Closes the response of an idle cursor, unless the connection pool has closed it already.
+     */
+    private void closeCursor(Cursor cursor) {
+        if (cursor.response != null && fileSystem.getConnectionPool().resumeResponse(cursor.response)) {
+            // Returns the connection to the pool if only a few bytes are left, otherwise closes it.
+            cursor.response.close();
+        }
+        cursor.response = null;
+    }
+
+    /**
+     * Requests the range starting at the current position for the given cursor. In sequential mode,
+     * the cursor's range size is doubled if its previous range has been read completely. In random
+     * mode, the range size is given by the access pattern.
+     *
+     * @param cursor         The cursor
+     * @param expectedLength The number of bytes the current read still needs
+     * @param sequential     Whether the channel is in sequential mode
+     */
+    private void openRange(Cursor cursor, int expectedLength, boolean sequential) throws IOException {
+        if (position >= contentLength) {
+            throw new EOFException(url.toString());
+        }
+        if (!sequential) {
+            cursor.rangeSize = accessPattern.getBlockSize(4096, initialRangeSize);
+        } else if (cursor.rangeEnd > 0) {
+            // The previous range has been read completely.
+            cursor.rangeSize = cursor.rangeSize > maxRangeSize / 2 ? maxRangeSize : cursor.rangeSize * 2;
+        }
+        if (cursor.response != null) {
+            cursor.response.close();
+            cursor.response = null;
+        }
+        long end = Math.min(position + Math.max(expectedLength, cursor.rangeSize), contentLength);
+        long startTime = System.nanoTime();
+        ObjectStorageResponse rangeResponse = checkResponse(fileSystem.getConnectionPool().execute("GET", url, getRangeHeaders(position, end - position)));
+        accessPattern.recordLatency(System.nanoTime() - startTime);
+        setEtag(rangeResponse);
+        if (rangeResponse.getStatusCode() != 206) {
+            // Server ignored the "Range" header, skip to the current position.
+            skipResponseBytes(rangeResponse, position);
+            end = contentLength;
+        }
+        cursor.response = rangeResponse;
+        cursor.position = position;
+        cursor.rangeEnd = end;
+    }
+
+    /**
+     * Sets the object's size and creates the components that depend on it.
+     */
+    private void setContentLength(long contentLength) {
+        ObjectStorageConfig config = fileSystem.getConfig();
+        this.contentLength = contentLength;
+        this.accessPattern = new ObjectStorageAccessPattern(hint, contentLength, config.getTailCacheSize());
+        this.tailPosition = Math.max(0, contentLength - config.getTailCacheSize());
+        if (config.getReadAheadWindowSize() > 0) {
+            this.readAhead = new ObjectStorageReadAhead(fileSystem,
+                                                        url,
+                                                        contentLength,
+                                                        config.getReadAheadBufferSize(),
+                                                        config.getReadAheadWindowSize(),
+                                                        config.getReadAheadConcurrency(),
+                                                        accessPattern);
+        }
+    }
+
+    /**
+     * Asks for the object's metadata only.
+     */
+    private void requestMetadata() throws IOException {
+        try (ObjectStorageResponse headResponse = request("HEAD", Collections.emptyMap())) {
+            if (contentLength < 0) {
+                setContentLength(headResponse.getContentLength());
+            }
+            contentType = headResponse.getHeaderField("Content-Type");
+            setEtag(headResponse);
+            if (fileSystem.getDiskCache() != null) {
+                fileSystem.getDiskCache().validate(url,
+                                                   contentLength,
+                                                   headResponse.getHeaderField("ETag"),
+                                                   headResponse.getHeaderField("Last-Modified"));
+            }
+            versionRequired = false;
+        }
+    }
+
+    /**
+     * Requests the first range at the current position, which also tells the object's size.
+     *
+     * @param expectedLength The number of bytes the current read needs
+     */
+    private void openFirstRange(int expectedLength) throws IOException {
+        long length = Math.max(expectedLength, initialRangeSize);
+        ObjectStorageResponse firstResponse = retryPolicy.execute(() -> {
+            ObjectStorageResponse r = fileSystem.getConnectionPool().get(url, getRangeHeaders(position, length));
+            return r.getStatusCode() == 416 ? r : checkResponse(r);
+        });
+        contentType = firstResponse.getHeaderField("Content-Type");
+        setEtag(firstResponse);
+        if (firstResponse.getStatusCode() == 416) {
+            // The position is beyond the end of the object, e.g. because the object is empty.
+            firstResponse.close();
+            if (firstResponse.getCompleteLength() < 0) {
+                requestMetadata();
+            } else {
+                setContentLength(firstResponse.getCompleteLength());
+            }
+            return;
+        }
+        if (firstResponse.getStatusCode() == 206 && firstResponse.getCompleteLength() < 0) {
+            // Unknown size, e.g. "Content-Range: bytes 0-99/*".
+            firstResponse.close();
+            requestMetadata();
+            return;
+        }
+        Cursor cursor = new Cursor(initialRangeSize);
+        if (firstResponse.getStatusCode() == 206) {
+            setContentLength(firstResponse.getCompleteLength());
+            cursor.rangeEnd = Math.min(position + length, contentLength);
+        } else {
+            // Server ignored the "Range" header and sends the whole object.
+            setContentLength(firstResponse.getContentLength());
+            cursor.rangeEnd = contentLength;
+            skipResponseBytes(firstResponse, position);
+        }
+        cursor.response = firstResponse;
+        cursor.position = position;
+        cursor.lastUseTime = System.nanoTime();
+        cursors.add(cursor);
+        fileSystem.getConnectionPool().holdResponse(firstResponse);
+    }
+
+    private void loadTail() throws IOException {
+        byte[] data = new byte[(int) (contentLength - tailPosition)];
+        fileSystem.readObjectRange(url, contentLength, tailPosition, data, 0, data.length);
+        tail = data;
+    }
+
+    private void skipResponseBytes(ObjectStorageResponse response, long count) throws IOException {
+        InputStream stream = response.getInputStream();
+        while (count > 0) {
+            long n = stream.skip(count);
+            if (n <= 0) {
+                response.close();
+                throw new EOFException(url.toString());
+            }
+            count -= n;
+        }
+    }
+
+    private ObjectStorageResponse request(String method, Map<String, String> headers) throws IOException {
+        return retryPolicy.execute(() -> checkResponse(fileSystem.getConnectionPool().execute(method, url, headers)));
+    }
+
+    private ObjectStorageResponse checkResponse(ObjectStorageResponse response) throws IOException {
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new ObjectStorageHttpException(url.toString(), response.getStatusCode(), response.getReasonPhrase());
+        }
+        return response;
+    }
+
+    /**
+     * Remembers the entity tag of the first response, later ranges must be of the same version of the object.
+     */
+    private void setEtag(ObjectStorageResponse response) {
+        if (etag == null) {
+            etag = response.getHeaderField("ETag");
         }
-        connection.connect();
-        int responseCode = connection.getResponseCode();
-        if (responseCode < 200 || responseCode >= 300) {
-            throw new IOException(url + ": response code " + responseCode + ": " + connection.getResponseMessage());
+    }
+
+    private Map<String, String> getRangeHeaders(long position, long length) {
+        return ObjectStorageConnectionPool.getRangeHeaders(position, length, etag);
+    }
+
+    /**
+     * A range response and the position of its next byte. The response is {@code null} once the range has been read completely.
+     */
+    private static class Cursor {
+        ObjectStorageResponse response;
+        long position;
+        long rangeEnd;
+        long rangeSize;
+        long lastUseTime;
+
+        Cursor(long rangeSize) {
+            this.rangeSize = rangeSize;
         }
-        return connection;
     }
 }
@@ -0,0 +1,525 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Configuration of an {@link ObjectStorageFileSystem}, parsed from the
+ * environment map passed to {@link java.nio.file.FileSystems#newFileSystem(java.net.URI, Map)}.
+ * <p>
+ * Values may be given as numbers or as strings. Byte sizes given as strings may
+ * carry one of the suffixes {@code k}, {@code m} or {@code g}, e.g. {@code "4m"}.
+ */
+public class ObjectStorageConfig {
+
+    /**
+     * Number of buffers the read-ahead window of a byte channel holds. A value of zero disables read-ahead.
+     */
+    public static final String READ_AHEAD_WINDOW_SIZE = "readAheadWindowSize";
+    /**
+     * Maximum number of ranged requests a byte channel keeps in flight ahead of its position.
+     */
+    public static final String READ_AHEAD_CONCURRENCY = "readAheadConcurrency";
+    /**
+     * Size in bytes of a single read-ahead buffer, i.e. of a single ranged request.
+     */
+    public static final String READ_AHEAD_BUFFER_SIZE = "readAheadBufferSize";
+    /**
+     * Capacity in bytes of the block cache shared by all byte channels of a file system. A value of zero disables the cache.
+     */
+    public static final String BLOCK_CACHE_SIZE = "blockCacheSize";
+    /**
+     * Size in bytes of the blocks held by the block cache.
+     */
+    public static final String BLOCK_CACHE_BLOCK_SIZE = "blockCacheBlockSize";
+    /**
+     * Whether the block cache keeps its blocks in direct memory outside of the Java heap.
+     */
+    public static final String BLOCK_CACHE_OFF_HEAP = "blockCacheOffHeap";
+    /**
+     * Directory of the persistent block cache. If not given, no blocks are persisted.
+     */
+    public static final String DISK_CACHE_DIR = "diskCacheDir";
+    /**
+     * Size in bytes of the blocks held by the persistent block cache.
+     */
+    public static final String DISK_CACHE_BLOCK_SIZE = "diskCacheBlockSize";
+    /**
+     * Maximum number of objects whose cache files are kept open at the same time.
+     */
+    public static final String DISK_CACHE_MAX_OPEN_FILES = "diskCacheMaxOpenFiles";
+    /**
+     * Number of threads of the file system's I/O executor.
+     */
+    public static final String IO_THREADS = "ioThreads";
+    /**
+     * Time in milliseconds after which connections held idle by byte channels are closed.
+     */
+    public static final String CONNECTION_IDLE_TIMEOUT = "connectionIdleTimeout";
+    /**
+     * Number of connections opened to the file system's endpoint when the file system is created.
+     */
+    public static final String CONNECTION_PREWARM = "connectionPrewarm";
+    /**
+     * Connect timeout in milliseconds.
+     */
+    public static final String CONNECT_TIMEOUT = "connectTimeout";
+    /**
+     * Read timeout in milliseconds.
+     */
+    public static final String READ_TIMEOUT = "readTimeout";
+    /**
+     * Maximum number of connections open at the same time to each host, including those held idle by byte channels.
+     */
+    public static final String MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
+    /**
+     * Size in bytes of the first range a byte channel requests in stream mode, and after each seek.
+     */
+    public static final String RANGE_REQUEST_INITIAL_SIZE = "rangeRequestInitialSize";
+    /**
+     * Maximum size in bytes of the ranges a byte channel requests in stream mode while reading sequentially.
+     */
+    public static final String RANGE_REQUEST_MAX_SIZE = "rangeRequestMaxSize";
+    /**
+     * Number of bytes at the end of an object a byte channel loads at once when a read jumps into them. A value of zero disables tail caching.
+     */
+    public static final String TAIL_CACHE_SIZE = "tailCacheSize";
+    /**
+     * Maximum number of bytes between two ranges of a vectored read that are requested together.
+     */
+    public static final String RANGE_COALESCE_GAP = "rangeCoalesceGap";
+    /**
+     * Whether vectored reads request all ranges with a single multipart/byteranges request.
+     */
+    public static final String MULTIPART_RANGE_REQUESTS = "multipartRangeRequests";
+    /**
+     * Size in bytes of the parts of parallel downloads to local files. A value of zero derives the part size from the object's size.
+     */
+    public static final String DOWNLOAD_PART_SIZE = "downloadPartSize";
+    /**
+     * Maximum number of parts of a parallel download to local files that are transferred at the same time.
+     */
+    public static final String DOWNLOAD_CONCURRENCY = "downloadConcurrency";
+    /**
+     * Size in bytes of the blocks file channels download into their local file on demand.
+     */
+    public static final String FILE_CHANNEL_BLOCK_SIZE = "fileChannelBlockSize";
+    /**
+     * Size in bytes of each of the two buffers of input streams.
+     */
+    public static final String INPUT_STREAM_BUFFER_SIZE = "inputStreamBufferSize";
+    /**
+     * Percentile of recent response times after which a duplicate of a request still waiting for its response is sent. A value of zero disables hedging.
+     */
+    public static final String HEDGE_PERCENTILE = "hedgePercentile";
+    /**
+     * Minimum time in milliseconds to wait for a response before sending a duplicate request.
+     */
+    public static final String HEDGE_MIN_DELAY = "hedgeMinDelay";
+    /**
+     * Maximum number of duplicate requests as a fraction of all requests.
+     */
+    public static final String HEDGE_BUDGET = "hedgeBudget";
+    /**
+     * Maximum number of retries of a failed request. A value of zero disables retries.
+     */
+    public static final String MAX_RETRIES = "maxRetries";
+    /**
+     * Maximum delay in milliseconds before the first retry, doubled with each further retry.
+     */
+    public static final String RETRY_INITIAL_DELAY = "retryInitialDelay";
+    /**
+     * Maximum delay in milliseconds before any retry.
+     */
+    public static final String RETRY_MAX_DELAY = "retryMaxDelay";
+    /**
+     * Maximum number of open ranges, each holding a connection, a byte channel keeps in stream mode.
+     */
+    public static final String CHANNEL_CURSORS = "channelCursors";
+    /**
+     * Maximum number of open ranges held idle by all byte channels of a file system together.
+     */
+    public static final String CHANNEL_CURSOR_LIMIT = "channelCursorLimit";
+    /**
+     * Size in bytes of the buffer from which a byte channel serves small reads. A value of zero disables the buffer.
+     */
+    public static final String CHANNEL_BUFFER_SIZE = "channelBufferSize";
+    /**
+     * Maximum number of listing pages requested ahead of the page being consumed. A value of zero disables prefetching.
+     */
+    public static final String LIST_PREFETCH_PAGES = "listPrefetchPages";
+    /**
+     * Number of key ranges a listing larger than a page is split into and listed concurrently. A value of one disables partitioning.
+     */
+    public static final String LIST_PARTITIONS = "listPartitions";
+    /**
+     * Maximum number of pages each key range of a partitioned listing requests ahead of the page being consumed.
+     */
+    public static final String LIST_PARTITION_PAGES = "listPartitionPages";
+    /**
+     * Time in milliseconds during which a cached directory listing is served without a request. A value of zero disables the listing cache.
+     */
+    public static final String LIST_CACHE_TTL = "listCacheTtl";
+    /**
+     * Time in milliseconds after the time to live during which an expired listing is still served while it is refreshed in the background.
+     */
+    public static final String LIST_CACHE_STALE_TIME = "listCacheStaleTime";
+    /**
+     * Maximum number of entries of all cached directory listings.
+     */
+    public static final String LIST_CACHE_MAX_ENTRIES = "listCacheMaxEntries";
+
+    private final int readAheadWindowSize;
+    private final int readAheadConcurrency;
+    private final int readAheadBufferSize;
+    private final long blockCacheSize;
+    private final int blockCacheBlockSize;
+    private final boolean blockCacheOffHeap;
+    private final Path diskCacheDir;
+    private final int diskCacheBlockSize;
+    private final int diskCacheMaxOpenFiles;
+    private final int ioThreads;
+    private final long connectionIdleTimeout;
+    private final int connectionPrewarm;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerHost;
+    private final long rangeRequestInitialSize;
+    private final long rangeRequestMaxSize;
+    private final int tailCacheSize;
+    private final long rangeCoalesceGap;
+    private final boolean multipartRangeRequests;
+    private final long downloadPartSize;
+    private final int downloadConcurrency;
+    private final int fileChannelBlockSize;
+    private final int inputStreamBufferSize;
+    private final double hedgePercentile;
+    private final long hedgeMinDelay;
+    private final double hedgeBudget;
+    private final int maxRetries;
+    private final long retryInitialDelay;
+    private final long retryMaxDelay;
+    private final int channelCursors;
+    private final int channelCursorLimit;
+    private final int channelBufferSize;
+    private final int listPrefetchPages;
+    private final int listPartitions;
+    private final int listPartitionPages;
+    private final long listCacheTtl;
+    private final long listCacheStaleTime;
+    private final int listCacheMaxEntries;
+
+    public ObjectStorageConfig(Map<String, ?> env) {
+        if (env == null) {
+            env = Collections.emptyMap();
+        }
+        this.readAheadWindowSize = getInt(env, READ_AHEAD_WINDOW_SIZE, 0, 0);
+        this.readAheadConcurrency = getInt(env, READ_AHEAD_CONCURRENCY, 4, 1);
+        this.readAheadBufferSize = (int) getSize(env, READ_AHEAD_BUFFER_SIZE, 1024 * 1024, 1, Integer.MAX_VALUE);
+        this.blockCacheSize = getSize(env, BLOCK_CACHE_SIZE, 0, 0, Long.MAX_VALUE);
+        this.blockCacheBlockSize = (int) getSize(env, BLOCK_CACHE_BLOCK_SIZE, 64 * 1024, 1, Integer.MAX_VALUE);
+        this.blockCacheOffHeap = getBoolean(env, BLOCK_CACHE_OFF_HEAP, false);
+        this.diskCacheDir = getPath(env, DISK_CACHE_DIR);
+        this.diskCacheBlockSize = (int) getSize(env, DISK_CACHE_BLOCK_SIZE, 256 * 1024, 1, Integer.MAX_VALUE);
+        this.diskCacheMaxOpenFiles = getInt(env, DISK_CACHE_MAX_OPEN_FILES, 64, 1);
+        this.ioThreads = getInt(env, IO_THREADS, 16, 1);
+        this.connectionIdleTimeout = getLong(env, CONNECTION_IDLE_TIMEOUT, 30000, 0, Long.MAX_VALUE);
+        this.connectionPrewarm = getInt(env, CONNECTION_PREWARM, 0, 0);
+        this.connectTimeout = getInt(env, CONNECT_TIMEOUT, 10000, 0);
+        this.readTimeout = getInt(env, READ_TIMEOUT, 60000, 0);
+        this.maxConnectionsPerHost = getInt(env, MAX_CONNECTIONS_PER_HOST, 64, 1);
+        this.rangeRequestInitialSize = getSize(env, RANGE_REQUEST_INITIAL_SIZE, 64 * 1024, 1, Long.MAX_VALUE);
+        this.rangeRequestMaxSize = Math.max(rangeRequestInitialSize,
+                                            getSize(env, RANGE_REQUEST_MAX_SIZE, 64 * 1024 * 1024, 1, Long.MAX_VALUE));
+        this.tailCacheSize = (int) getSize(env, TAIL_CACHE_SIZE, 64 * 1024, 0, Integer.MAX_VALUE);
+        this.rangeCoalesceGap = getSize(env, RANGE_COALESCE_GAP, 64 * 1024, 0, Long.MAX_VALUE);
+        this.multipartRangeRequests = getBoolean(env, MULTIPART_RANGE_REQUESTS, false);
+        this.downloadPartSize = getSize(env, DOWNLOAD_PART_SIZE, 0, 0, Long.MAX_VALUE);
+        this.downloadConcurrency = getInt(env, DOWNLOAD_CONCURRENCY, 8, 1);
+        this.fileChannelBlockSize = (int) getSize(env, FILE_CHANNEL_BLOCK_SIZE, 256 * 1024, 1, Integer.MAX_VALUE);
+        this.inputStreamBufferSize = (int) getSize(env, INPUT_STREAM_BUFFER_SIZE, 256 * 1024, 1, Integer.MAX_VALUE);
+        this.hedgePercentile = getDouble(env, HEDGE_PERCENTILE, 0, 0, 100);
+        this.hedgeMinDelay = getLong(env, HEDGE_MIN_DELAY, 20, 0, Long.MAX_VALUE);
+        this.hedgeBudget = getDouble(env, HEDGE_BUDGET, 0.05, 0, 1);
+        this.maxRetries = getInt(env, MAX_RETRIES, 3, 0);
+        this.retryInitialDelay = getLong(env, RETRY_INITIAL_DELAY, 100, 0, Long.MAX_VALUE);
+        this.retryMaxDelay = getLong(env, RETRY_MAX_DELAY, 5000, 0, Long.MAX_VALUE);
+        this.channelCursors = getInt(env, CHANNEL_CURSORS, 4, 1);
+        this.channelCursorLimit = getInt(env, CHANNEL_CURSOR_LIMIT, 64, 1);
+        this.channelBufferSize = (int) getSize(env, CHANNEL_BUFFER_SIZE, 256 * 1024, 0, Integer.MAX_VALUE - 8);
+        this.listPrefetchPages = getInt(env, LIST_PREFETCH_PAGES, 2, 0);
+        this.listPartitions = getInt(env, LIST_PARTITIONS, 1, 1);
+        this.listPartitionPages = getInt(env, LIST_PARTITION_PAGES, 16, 1);
+        this.listCacheTtl = getLong(env, LIST_CACHE_TTL, 0, 0, Long.MAX_VALUE / 2000000);
+        this.listCacheStaleTime = getLong(env, LIST_CACHE_STALE_TIME, 0, 0, Long.MAX_VALUE / 2000000);
+        this.listCacheMaxEntries = getInt(env, LIST_CACHE_MAX_ENTRIES, 100000, 1);
+    }
+
+    public int getReadAheadWindowSize() {
+        return readAheadWindowSize;
+    }
+
+    public int getReadAheadConcurrency() {
+        return readAheadConcurrency;
+    }
+
+    public int getReadAheadBufferSize() {
+        return readAheadBufferSize;
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    public int getBlockCacheBlockSize() {
+        return blockCacheBlockSize;
+    }
+
+    public boolean isBlockCacheOffHeap() {
+        return blockCacheOffHeap;
+    }
+
+    public Path getDiskCacheDir() {
+        return diskCacheDir;
+    }
+
+    public int getDiskCacheBlockSize() {
+        return diskCacheBlockSize;
+    }
+
+    public int getDiskCacheMaxOpenFiles() {
+        return diskCacheMaxOpenFiles;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public int getConnectionPrewarm() {
+        return connectionPrewarm;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public long getRangeRequestInitialSize() {
+        return rangeRequestInitialSize;
+    }
+
+    public long getRangeRequestMaxSize() {
+        return rangeRequestMaxSize;
+    }
+
+    public int getTailCacheSize() {
+        return tailCacheSize;
+    }
+
+    public long getRangeCoalesceGap() {
+        return rangeCoalesceGap;
+    }
+
+    public boolean isMultipartRangeRequests() {
+        return multipartRangeRequests;
+    }
+
+    public long getDownloadPartSize() {
+        return downloadPartSize;
+    }
+
+    public int getDownloadConcurrency() {
+        return downloadConcurrency;
+    }
+
+    public int getFileChannelBlockSize() {
+        return fileChannelBlockSize;
+    }
+
+    public int getInputStreamBufferSize() {
+        return inputStreamBufferSize;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public long getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    public double getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryInitialDelay() {
+        return retryInitialDelay;
+    }
+
+    public long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public int getChannelCursors() {
+        return channelCursors;
+    }
+
+    public int getChannelCursorLimit() {
+        return channelCursorLimit;
+    }
+
+    public int getChannelBufferSize() {
+        return channelBufferSize;
+    }
+
+    public int getListPrefetchPages() {
+        return listPrefetchPages;
+    }
+
+    public int getListPartitions() {
+        return listPartitions;
+    }
+
+    public int getListPartitionPages() {
+        return listPartitionPages;
+    }
+
+    public long getListCacheTtl() {
+        return listCacheTtl;
+    }
+
+    public long getListCacheStaleTime() {
+        return listCacheStaleTime;
+    }
+
+    public int getListCacheMaxEntries() {
+        return listCacheMaxEntries;
+    }
+
+    static Path getPath(Map<String, ?> env, String name) {
+        Object value = env.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Path) {
+            return (Path) value;
+        }
+        if (value instanceof File) {
+            return ((File) value).toPath();
+        }
+        return Paths.get(value.toString());
+    }
+
+    static boolean getBoolean(Map<String, ?> env, String name, boolean defaultValue) {
+        Object value = env.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = value.toString().trim();
+        if (text.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (text.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException(name + ": not a boolean: " + value);
+    }
+
+    static int getInt(Map<String, ?> env, String name, int defaultValue, int minValue) {
+        return (int) getLong(env, name, defaultValue, minValue, Integer.MAX_VALUE);
+    }
+
+    static long getLong(Map<String, ?> env, String name, long defaultValue, long minValue, long maxValue) {
+        Object value = env.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        long longValue;
+        if (value instanceof Number) {
+            longValue = ((Number) value).longValue();
+        } else {
+            try {
+                longValue = Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + ": not a number: " + value);
+            }
+        }
+        return checkRange(name, longValue, minValue, maxValue);
+    }
+
+    static double getDouble(Map<String, ?> env, String name, double defaultValue, double minValue, double maxValue) {
+        Object value = env.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        double doubleValue;
+        if (value instanceof Number) {
+            doubleValue = ((Number) value).doubleValue();
+        } else {
+            try {
+                doubleValue = Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + ": not a number: " + value);
+            }
+        }
+        if (!(doubleValue >= minValue && doubleValue <= maxValue)) {
+            throw new IllegalArgumentException(name + ": value out of range [" + minValue + ", " + maxValue + "]: " + value);
+        }
+        return doubleValue;
+    }
+
+    static long getSize(Map<String, ?> env, String name, long defaultValue, long minValue, long maxValue) {
+        Object value = env.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return checkRange(name, ((Number) value).longValue(), minValue, maxValue);
+        }
+        String text = value.toString().trim().toLowerCase();
+        long factor = 1;
+        if (text.endsWith("k")) {
+            factor = 1024L;
+        } else if (text.endsWith("m")) {
+            factor = 1024L * 1024L;
+        } else if (text.endsWith("g")) {
+            factor = 1024L * 1024L * 1024L;
+        }
+        if (factor > 1) {
+            text = text.substring(0, text.length() - 1).trim();
+        }
+        try {
+            return checkRange(name, Long.parseLong(text) * factor, minValue, maxValue);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": not a byte size: " + value);
+        }
+    }
+
+    private static long checkRange(String name, long value, long minValue, long maxValue) {
+        if (value < minValue || value > maxValue) {
+            throw new IllegalArgumentException(name + ": value out of range [" + minValue + ", " + maxValue + "]: " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,419 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the HTTP requests of a file system, shared by all byte channels and directory listings.
+ * <p>
+ * Requests are sent using {@link HttpURLConnection}, so that proxies, see {@link java.net.ProxySelector},
+ * HTTP authentication, see {@link java.net.Authenticator}, and TLS are handled by the JRE. HEAD requests
+ * and range requests over plain HTTP without proxy are sent on socket channels instead, whose response
+ * bodies are read straight into direct buffers, see {@link ObjectStoragePlainHttpTransport}.
+ * Connections are reused through the JRE's keep-alive cache: closing a response whose body has
+ * been read completely, or whose remaining body is small enough to be skipped, returns its
+ * connection to the cache, so that TCP and TLS handshakes are only paid once. Otherwise the
+ * connection is closed. The JRE keeps at most {@code http.maxConnections} idle connections per
+ * endpoint, 5 by default, and closes them after its keep-alive timeout; this system property
+ * should be raised for highly concurrent access.
+ * <p>
+ * The number of responses open at the same time is limited per host, see
+ * {@link ObjectStorageConfig#MAX_CONNECTIONS_PER_HOST}. A request beyond the limit waits until
+ * a response to the same host is closed.
+ * <p>
+ * Byte channels hold responses open between reads. The pool limits the number of such idle
+ * responses and closes the least recently held ones beyond the limit, see {@link #holdResponse}.
+ * A request waiting for a connection aborts the least recently held response to its host.
+ * <p>
+ * If configured, requests whose responses are late are hedged, see {@link ObjectStorageConfig#HEDGE_PERCENTILE}.
+ */
+public class ObjectStorageConnectionPool implements Closeable {
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final long PERMIT_WAIT_INTERVAL = 100;
+    private static final int MAX_IDLE_CONNECTIONS = 64;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerHost;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits;
+    private final ObjectStoragePlainHttpTransport plainHttpTransport;
+    private final ObjectStorageHedging hedging;
+    private final ObjectStorageTransferStats transferStats;
+    private final int maxHeldResponses;
+    private final LinkedHashSet<ObjectStorageResponse> heldResponses;
+    private volatile boolean closed;
+
+    /**
+     * Creates a connection pool that does not limit the connections per host or the responses held idle.
+     *
+     * @param connectTimeout The connect timeout in milliseconds
+     * @param readTimeout    The read timeout in milliseconds
+     */
+    public ObjectStorageConnectionPool(int connectTimeout, int readTimeout) {
+        this(connectTimeout, readTimeout, Integer.MAX_VALUE, 30000, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates the connection pool configured for a file system.
+     *
+     * @param config The file system configuration
+     */
+    public ObjectStorageConnectionPool(ObjectStorageConfig config) {
+        this(config.getConnectTimeout(),
+             config.getReadTimeout(),
+             config.getMaxConnectionsPerHost(),
+             config.getConnectionIdleTimeout(),
+             config.getChannelCursorLimit(),
+             config.getHedgePercentile() > 0
+                     ? new ObjectStorageHedging(config.getHedgePercentile(), config.getHedgeMinDelay(), config.getHedgeBudget())
+                     : null);
+    }
+
+    private ObjectStorageConnectionPool(int connectTimeout, int readTimeout, int maxConnectionsPerHost, long idleTimeout,
+                                        int maxHeldResponses, ObjectStorageHedging hedging) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.hostPermits = new ConcurrentHashMap<>();
+        this.plainHttpTransport = new ObjectStoragePlainHttpTransport(connectTimeout, readTimeout, idleTimeout,
+                                                                      Math.min(maxConnectionsPerHost, MAX_IDLE_CONNECTIONS));
+        this.maxHeldResponses = maxHeldResponses;
+        this.hedging = hedging;
+        this.transferStats = new ObjectStorageTransferStats();
+        this.heldResponses = new LinkedHashSet<>();
+    }
+
+    /**
+     * @return The total number of duplicate requests sent because of late responses
+     */
+    public long getHedgedRequestCount() {
+        return hedging != null ? hedging.getHedgedRequestCount() : 0;
+    }
+
+    /**
+     * @return The latency and bandwidth measured by this pool and the readers of its responses
+     */
+    public ObjectStorageTransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    /**
+     * Sends a GET request.
+     *
+     * @param url     The URL
+     * @param headers Additional request header fields
+     * @return The response, which must be closed
+     * @throws IOException If an I/O error occurs
+     */
+    public ObjectStorageResponse get(URL url, Map<String, String> headers) throws IOException {
+        return execute("GET", url, headers);
+    }
+
+    /**
+     * Sends a HEAD request.
+     *
+     * @param url The URL
+     * @return The response, which must be closed
+     * @throws IOException If an I/O error occurs
+     */
+    public ObjectStorageResponse head(URL url) throws IOException {
+        return execute("HEAD", url, Collections.emptyMap());
+    }
+
+    /**
+     * Sends a request without body. Redirects are followed.
+     *
+     * @param method  The request method
+     * @param url     The URL
+     * @param headers Additional request header fields
+     * @return The response, which must be closed
+     * @throws IOException If an I/O error occurs
+     */
+    public ObjectStorageResponse execute(String method, URL url, Map<String, String> headers) throws IOException {
+        for (int redirectCount = 0; ; redirectCount++) {
+            long startTime = System.nanoTime();
+            ObjectStorageResponse response = hedging != null
+                    ? hedging.send(method, url, headers, this::send)
+                    : send(method, url, headers, null);
+            transferStats.recordLatency(System.nanoTime() - startTime);
+            int code = response.getStatusCode();
+            String location = response.getHeaderField("Location");
+            if ((code == 301 || code == 302 || code == 303 || code == 307 || code == 308)
+                && location != null && redirectCount < MAX_REDIRECTS) {
+                response.close();
+                url = new URL(url, location);
+                continue;
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Opens connections to the endpoint of the given URL in advance, so that the given number
+     * of connections is kept idle, as far as the JRE's keep-alive cache permits.
+     *
+     * @param url   The URL
+     * @param count The number of idle connections to provide
+     * @throws IOException If an I/O error occurs
+     */
+    public void prewarm(URL url, int count) throws IOException {
+        if (ObjectStoragePlainHttpTransport.accepts("HEAD", url, Collections.emptyMap())) {
+            plainHttpTransport.prewarm(url, count);
+            return;
+        }
+        // Connections are only returned to the keep-alive cache when their responses have been
+        // received, so all connections are opened first.
+        List<HttpURLConnection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < count && !closed; i++) {
+                HttpURLConnection connection = openConnection("HEAD", url, Collections.emptyMap());
+                connections.add(connection);
+                connection.connect();
+            }
+            for (HttpURLConnection connection : connections) {
+                connection.getResponseCode();
+            }
+        } catch (IOException e) {
+            for (HttpURLConnection connection : connections) {
+                connection.disconnect();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a response that is held open while it is not read. If more responses are held,
+     * the least recently held one is aborted. Before the response is read again, it must be
+     * taken back by {@link #resumeResponse}.
+     *
+     * @param response The response
+     */
+    void holdResponse(ObjectStorageResponse response) {
+        ObjectStorageResponse reclaimed = null;
+        synchronized (heldResponses) {
+            heldResponses.add(response);
+            if (heldResponses.size() > maxHeldResponses) {
+                Iterator<ObjectStorageResponse> iterator = heldResponses.iterator();
+                reclaimed = iterator.next();
+                iterator.remove();
+            }
+        }
+        if (reclaimed != null) {
+            // The response is never read again, so its remaining body is not skipped on this thread.
+            reclaimed.abort();
+        }
+    }
+
+    /**
+     * Takes back a response registered by {@link #holdResponse}.
+     *
+     * @param response The response
+     * @return {@code false} if the response has been closed in the meantime
+     */
+    boolean resumeResponse(ObjectStorageResponse response) {
+        synchronized (heldResponses) {
+            return heldResponses.remove(response);
+        }
+    }
+
+    /**
+     * Stops sending requests and closes the responses held idle. Pending responses are not affected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<ObjectStorageResponse> responses;
+        synchronized (heldResponses) {
+            responses = new ArrayList<>(heldResponses);
+            heldResponses.clear();
+        }
+        for (ObjectStorageResponse response : responses) {
+            response.abort();
+        }
+        if (hedging != null) {
+            hedging.close();
+        }
+        plainHttpTransport.close();
+    }
+
+    private ObjectStorageResponse send(String method, URL url, Map<String, String> headers,
+                                       ObjectStorageHedging.Exchange exchange) throws IOException {
+        Semaphore permits = acquirePermit(url);
+        try {
+            if (ObjectStoragePlainHttpTransport.accepts(method, url, headers)) {
+                if (closed) {
+                    throw new IOException("connection pool is closed");
+                }
+                ObjectStorageResponse response = plainHttpTransport.send(method, url, headers, permits, exchange);
+                if (response != null) {
+                    return response;
+                }
+            }
+            return sendByUrlConnection(method, url, headers, permits, exchange);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private ObjectStorageResponse sendByUrlConnection(String method, URL url, Map<String, String> headers, Semaphore permits,
+                                                      ObjectStorageHedging.Exchange exchange) throws IOException {
+        HttpURLConnection connection = openConnection(method, url, headers);
+        try {
+            if (exchange != null) {
+                // Disconnecting only takes effect once connected, so an abort in between is checked for.
+                exchange.attach(connection::disconnect);
+                connection.connect();
+                exchange.checkAborted();
+            }
+            int code = connection.getResponseCode();
+            if (code < 0) {
+                throw new IOException(url + ": invalid HTTP response");
+            }
+            return new ObjectStorageResponse(connection, code, connection.getResponseMessage(), getHeaderFields(connection),
+                                             !method.equals("HEAD"), permits);
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a permit to open a connection to the host of the given URL, waiting as long as
+     * the limit of connections per host is reached.
+     */
+    private Semaphore acquirePermit(URL url) throws IOException {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String endpoint = url.getHost().toLowerCase() + ":" + port;
+        Semaphore permits = hostPermits.computeIfAbsent(endpoint, key -> new Semaphore(maxConnectionsPerHost));
+        try {
+            while (!permits.tryAcquire()) {
+                if (closed) {
+                    throw new IOException("connection pool is closed");
+                }
+                // Responses held idle would otherwise keep their connections until they time out.
+                if (!abortHeldResponse(permits) && permits.tryAcquire(PERMIT_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a connection to " + endpoint);
+        }
+        return permits;
+    }
+
+    /**
+     * Aborts the least recently held response whose connection has been opened with the given permits.
+     *
+     * @return {@code false} if there is no such response
+     */
+    private boolean abortHeldResponse(Semaphore permits) {
+        ObjectStorageResponse reclaimed = null;
+        synchronized (heldResponses) {
+            Iterator<ObjectStorageResponse> iterator = heldResponses.iterator();
+            while (iterator.hasNext()) {
+                ObjectStorageResponse response = iterator.next();
+                if (response.getConnectionPermits() == permits) {
+                    reclaimed = response;
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        if (reclaimed == null) {
+            return false;
+        }
+        reclaimed.abort();
+        return true;
+    }
+
+    private HttpURLConnection openConnection(String method, URL url, Map<String, String> headers) throws IOException {
+        if (closed) {
+            throw new IOException("connection pool is closed");
+        }
+        String protocol = url.getProtocol().toLowerCase();
+        if (!protocol.equals("http") && !protocol.equals("https")) {
+            throw new IOException("unsupported protocol: " + protocol);
+        }
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    private static Map<String, String> getHeaderFields(HttpURLConnection connection) {
+        Map<String, String> headerFields = new HashMap<>();
+        for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+            // The status line is given with a null name.
+            if (field.getKey() != null && !field.getValue().isEmpty()) {
+                headerFields.put(field.getKey().toLowerCase(), String.join(", ", field.getValue()));
+            }
+        }
+        return headerFields;
+    }
+
+    /**
+     * Returns the header fields requesting a range of bytes.
+     *
+     * @param position The position of the first byte
+     * @param length   The number of bytes
+     * @param etag     The entity tag the object must still have, or {@code null}
+     * @return The header fields
+     */
+    static Map<String, String> getRangeHeaders(long position, long length, String etag) {
+        String range = "bytes=" + position + "-" + (position + length - 1);
+        if (etag == null) {
+            return Collections.singletonMap("Range", range);
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", range);
+        // Makes the server answer "412 Precondition Failed" if the object has been replaced.
+        headers.put("If-Match", etag);
+        return headers;
+    }
+
+    static String readLine(InputStream stream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        while (true) {
+            int b = stream.read();
+            if (b < 0) {
+                throw new SocketException("unexpected end of response");
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (line.size() == MAX_LINE_LENGTH) {
+                throw new IOException("response line too long");
+            }
+            line.write(b);
+        }
+        String s = new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
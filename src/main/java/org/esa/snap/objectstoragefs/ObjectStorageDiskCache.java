@@ -0,0 +1,395 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A block cache that persists blocks in a local directory, so that they survive
+ * restarts of the JVM.
+ * <p>
+ * Each object is stored in two files named after a hash of the object URL:
+ * a sparse {@code .data} file holding the cached blocks at their offsets within
+ * the object, and an {@code .index} file with a header that identifies the object
+ * version followed by a bitmap of the blocks present in the data file.
+ * <p>
+ * An object's blocks are only cached after its version has been registered by
+ * {@link #validate}. If the registered version, given by the object's ETag or
+ * Last-Modified value and size, differs from the one recorded in the index file,
+ * the cached blocks are discarded. Blocks marked as present whose data cannot be
+ * read, e.g. because the data file has been truncated, are treated as missing.
+ * <p>
+ * Blocks are only marked as present in the index file once their data have been forced
+ * to disk, so that after a crash no block is served whose data never reached the disk.
+ * To limit the cost, bitmap changes are written in batches.
+ */
+class ObjectStorageDiskCache extends ObjectStorageBlockCache implements Closeable {
+
+    private static final int MAGIC = 0x4f534643;
+    private static final int FORMAT_VERSION = 1;
+    private static final ObjectVersion UNVERSIONED = new ObjectVersion(-1, "");
+    private static final int BITMAP_FLUSH_BLOCK_COUNT = 16;
+
+    private final Path directory;
+    private final int maxOpenFiles;
+    private final Map<String, ObjectVersion> objectVersions;
+    private final LinkedHashMap<String, Entry> openEntries;
+
+    ObjectStorageDiskCache(Path directory, int blockSize, int maxOpenFiles) {
+        super(Long.MAX_VALUE, blockSize);
+        this.directory = directory;
+        this.maxOpenFiles = maxOpenFiles;
+        this.objectVersions = new ConcurrentHashMap<>();
+        this.openEntries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Registers the current version of an object. Blocks of objects without a
+     * registered version are neither read from nor written to the cache.
+     *
+     * @param url           The object URL
+     * @param contentLength The object's size in bytes
+     * @param eTag          The object's ETag, may be {@code null}
+     * @param lastModified  The object's Last-Modified value, may be {@code null}
+     */
+    void validate(URL url, long contentLength, String eTag, String lastModified) {
+        String objectKey = url.toString();
+        String version = eTag != null ? eTag : lastModified;
+        if (version == null || contentLength < 0) {
+            // Not cacheable, but need not be validated again.
+            objectVersions.put(objectKey, UNVERSIONED);
+            return;
+        }
+        objectVersions.put(objectKey, new ObjectVersion(contentLength, version));
+    }
+
+    /**
+     * Tells whether the version of an object has been registered, cacheable or not.
+     *
+     * @param url The object URL
+     * @return {@code true} if {@link #validate} has been called for the object
+     */
+    boolean isValidated(URL url) {
+        return objectVersions.containsKey(url.toString());
+    }
+
+    @Override
+    protected boolean getBlock(String objectKey, long blockIndex, int blockOffset, byte[] array, int offset, int length) throws IOException {
+        Entry entry = getEntry(objectKey);
+        return entry != null && entry.read(blockIndex, blockOffset, array, offset, length);
+    }
+
+    @Override
+    protected boolean containsBlock(String objectKey, long blockIndex) throws IOException {
+        Entry entry = getEntry(objectKey);
+        return entry != null && entry.contains(blockIndex);
+    }
+
+    @Override
+    protected void putBlock(String objectKey, long blockIndex, byte[] data, int offset, int length) throws IOException {
+        Entry entry = getEntry(objectKey);
+        if (entry != null) {
+            entry.write(blockIndex, data, offset, length);
+        }
+    }
+
+    /**
+     * Closes all open cache files.
+     */
+    @Override
+    public void close() {
+        synchronized (openEntries) {
+            for (Entry entry : openEntries.values()) {
+                entry.close();
+            }
+            openEntries.clear();
+        }
+    }
+
+    private Entry getEntry(String objectKey) throws IOException {
+        ObjectVersion version = objectVersions.get(objectKey);
+        if (version == null || version == UNVERSIONED) {
+            return null;
+        }
+        synchronized (openEntries) {
+            Entry entry = openEntries.get(objectKey);
+            if (entry != null) {
+                if (entry.version.equals(version)) {
+                    return entry;
+                }
+                openEntries.remove(objectKey);
+                entry.close();
+            }
+            entry = openEntry(objectKey, version);
+            openEntries.put(objectKey, entry);
+            Iterator<Entry> iterator = openEntries.values().iterator();
+            while (openEntries.size() > maxOpenFiles) {
+                iterator.next().close();
+                iterator.remove();
+            }
+            return entry;
+        }
+    }
+
+    private Entry openEntry(String objectKey, ObjectVersion version) throws IOException {
+        Files.createDirectories(directory);
+        String fileName = getFileName(objectKey);
+        int blockCount = (int) ((version.contentLength + getBlockSize() - 1) / getBlockSize());
+        byte[] header = createHeader(objectKey, version);
+        byte[] bitmap = new byte[(blockCount + 7) / 8];
+        FileChannel indexChannel = FileChannel.open(directory.resolve(fileName + ".index"),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE);
+        FileChannel dataChannel = null;
+        try {
+            dataChannel = FileChannel.open(directory.resolve(fileName + ".data"),
+                                           StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+            if (indexChannel.size() == header.length + bitmap.length
+                && Arrays.equals(header, readFully(indexChannel, 0, header.length))) {
+                System.arraycopy(readFully(indexChannel, header.length, bitmap.length), 0, bitmap, 0, bitmap.length);
+            } else {
+                // New object or object version changed: discard all cached blocks.
+                indexChannel.truncate(0);
+                dataChannel.truncate(0);
+                ByteBuffer buffer = ByteBuffer.allocate(header.length + bitmap.length);
+                buffer.put(header);
+                buffer.rewind();
+                writeFully(indexChannel, 0, buffer);
+            }
+        } catch (IOException e) {
+            indexChannel.close();
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+            throw e;
+        }
+        return new Entry(version, indexChannel, dataChannel, header.length, bitmap);
+    }
+
+    private byte[] createHeader(String objectKey, ObjectVersion version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream stream = new DataOutputStream(bytes)) {
+            stream.writeInt(MAGIC);
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeInt(getBlockSize());
+            stream.writeLong(version.contentLength);
+            stream.writeUTF(version.version);
+            stream.writeUTF(objectKey);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String getFileName(String objectKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(objectKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder fileName = new StringBuilder();
+            for (byte b : digest) {
+                fileName.append(String.format("%02x", b));
+            }
+            return fileName.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    private static class ObjectVersion {
+        final long contentLength;
+        final String version;
+
+        ObjectVersion(long contentLength, String version) {
+            this.contentLength = contentLength;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ObjectVersion)) {
+                return false;
+            }
+            ObjectVersion other = (ObjectVersion) o;
+            return contentLength == other.contentLength && version.equals(other.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(contentLength) + version.hashCode();
+        }
+    }
+
+    /**
+     * The open cache files of an object. A closed entry behaves as if it had no blocks.
+     */
+    private class Entry {
+        final ObjectVersion version;
+        final FileChannel indexChannel;
+        final FileChannel dataChannel;
+        final int bitmapOffset;
+        final byte[] bitmap;
+        final ReadWriteLock lock;
+        boolean closed;
+        // The range of bitmap bytes changed since the last flush, guarded by the bitmap.
+        int dirtyStart = Integer.MAX_VALUE;
+        int dirtyEnd;
+        int unflushedCount;
+
+        Entry(ObjectVersion version, FileChannel indexChannel, FileChannel dataChannel, int bitmapOffset, byte[] bitmap) {
+            this.version = version;
+            this.indexChannel = indexChannel;
+            this.dataChannel = dataChannel;
+            this.bitmapOffset = bitmapOffset;
+            this.bitmap = bitmap;
+            this.lock = new ReentrantReadWriteLock();
+        }
+
+        boolean contains(long blockIndex) throws IOException {
+            lock.readLock().lock();
+            try {
+                return !closed && isStored(blockIndex);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean read(long blockIndex, int blockOffset, byte[] array, int offset, int length) throws IOException {
+            lock.readLock().lock();
+            try {
+                if (closed || !isPresent(blockIndex)) {
+                    return false;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(array, offset, length);
+                long position = blockIndex * getBlockSize() + blockOffset - offset;
+                while (buffer.hasRemaining()) {
+                    if (dataChannel.read(buffer, position + buffer.position()) < 0) {
+                        // The data file has lost the block, let it be fetched and written again.
+                        setPresent(blockIndex, false);
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void write(long blockIndex, byte[] data, int offset, int length) throws IOException {
+            lock.readLock().lock();
+            try {
+                if (closed || isStored(blockIndex)) {
+                    return;
+                }
+                writeFully(dataChannel, blockIndex * getBlockSize(), ByteBuffer.wrap(data, offset, length));
+                // The bitmap is updated after the data have been written, and persisted after they have been forced.
+                setPresent(blockIndex, true);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void setPresent(long blockIndex, boolean present) throws IOException {
+            int byteIndex = (int) (blockIndex >> 3);
+            synchronized (bitmap) {
+                if (present) {
+                    bitmap[byteIndex] |= 1 << (blockIndex & 7);
+                } else {
+                    bitmap[byteIndex] &= ~(1 << (blockIndex & 7));
+                }
+                dirtyStart = Math.min(dirtyStart, byteIndex);
+                dirtyEnd = Math.max(dirtyEnd, byteIndex + 1);
+                // Cleared bits are persisted at once, as the block may be missing from the data file.
+                if (!present || ++unflushedCount >= BITMAP_FLUSH_BLOCK_COUNT) {
+                    flushBitmap();
+                }
+            }
+        }
+
+        /**
+         * Writes the changed bitmap bytes to the index file after forcing the data file to disk.
+         * The caller holds the bitmap's monitor.
+         */
+        private void flushBitmap() throws IOException {
+            if (dirtyStart >= dirtyEnd) {
+                return;
+            }
+            dataChannel.force(false);
+            writeFully(indexChannel, bitmapOffset + dirtyStart, ByteBuffer.wrap(bitmap, dirtyStart, dirtyEnd - dirtyStart));
+            dirtyStart = Integer.MAX_VALUE;
+            dirtyEnd = 0;
+            unflushedCount = 0;
+        }
+
+        void close() {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                synchronized (bitmap) {
+                    flushBitmap();
+                }
+            } catch (IOException ignored) {
+                // Blocks not yet marked in the index file are fetched again.
+            }
+            try {
+                indexChannel.close();
+                dataChannel.close();
+            } catch (IOException ignored) {
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Tells whether a block is marked as present and within the data file. Blocks beyond
+         * the end of a truncated data file are missing.
+         */
+        private boolean isStored(long blockIndex) throws IOException {
+            long blockEnd = Math.min((blockIndex + 1) * getBlockSize(), version.contentLength);
+            return isPresent(blockIndex) && blockEnd <= dataChannel.size();
+        }
+
+        private boolean isPresent(long blockIndex) {
+            synchronized (bitmap) {
+                return (bitmap[(int) (blockIndex >> 3)] & (1 << (blockIndex & 7))) != 0;
+            }
+        }
+    }
+}
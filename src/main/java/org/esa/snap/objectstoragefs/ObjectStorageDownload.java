@@ -0,0 +1,189 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a range of an object into a local file. The range is split into parts that
+ * are requested concurrently, and each part is written at its offset using positional
+ * writes, so that parts may complete in any order. Downloads bypass the block caches.
+ */
+class ObjectStorageDownload {
+
+    static final long MIN_PART_SIZE = 1024 * 1024;
+    static final long MAX_PART_SIZE = 64 * 1024 * 1024;
+    private static final int PARTS_PER_WORKER = 4;
+    private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+
+    private final ObjectStorageFileSystem fileSystem;
+    private final URL url;
+    private final long configuredPartSize;
+    private final int concurrency;
+
+    ObjectStorageDownload(ObjectStorageFileSystem fileSystem, URL url) {
+        ObjectStorageConfig config = fileSystem.getConfig();
+        this.fileSystem = fileSystem;
+        this.url = url;
+        this.configuredPartSize = config.getDownloadPartSize();
+        this.concurrency = Math.min(config.getDownloadConcurrency(), config.getIoThreads());
+    }
+
+    /**
+     * Returns the size of the parts of a download. Unless configured, the size is chosen so that
+     * each worker transfers a few parts, which balances slow and fast connections, bounded by
+     * sizes that keep the number of requests and the cost of a failed part low.
+     *
+     * @param count              The number of bytes to download
+     * @param configuredPartSize The configured part size, zero if not configured
+     * @param concurrency        The number of parts transferred at the same time
+     * @return The part size
+     */
+    static long getPartSize(long count, long configuredPartSize, int concurrency) {
+        if (configuredPartSize > 0) {
+            return configuredPartSize;
+        }
+        long partSize = count / ((long) concurrency * PARTS_PER_WORKER);
+        partSize = partSize <= 1 ? 1 : Long.highestOneBit(partSize - 1) << 1;
+        return Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, partSize));
+    }
+
+    /**
+     * Transfers {@code count} bytes of the object starting at {@code position} into the target file
+     * starting at {@code targetPosition}. The target file is extended to its final size first.
+     * The target channel's position is not changed.
+     *
+     * @param position       The position within the object
+     * @param count          The number of bytes to transfer
+     * @param target         The target file
+     * @param targetPosition The position within the target file
+     * @throws EOFException If the end of the object is reached before {@code count} bytes have been transferred
+     * @throws IOException  If some other I/O error occurs
+     */
+    void transferTo(long position, long count, FileChannel target, long targetPosition) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        if (target.size() < targetPosition + count) {
+            // Preallocate, so that parts written out of order do not extend the file repeatedly.
+            target.write(ByteBuffer.wrap(new byte[1]), targetPosition + count - 1);
+        }
+        long partSize = getPartSize(count, configuredPartSize, concurrency);
+        long partCount = (count + partSize - 1) / partSize;
+        AtomicLong nextPart = new AtomicLong();
+        Callable<Void> worker = () -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(TRANSFER_BUFFER_SIZE, partSize));
+            long part;
+            while ((part = nextPart.getAndIncrement()) < partCount) {
+                long offset = part * partSize;
+                transferPart(position + offset, Math.min(partSize, count - offset), target, targetPosition + offset, buffer);
+            }
+            return null;
+        };
+        // Waiting on the I/O executor for workers from an I/O thread could exhaust it, so the calling thread transfers all parts.
+        int workerCount = fileSystem.isIoThread() ? 1 : (int) Math.min(partCount, concurrency);
+        // One worker runs in the calling thread, the others on the I/O executor.
+        List<Future<Void>> futures = new ArrayList<>(workerCount - 1);
+        for (int i = 1; i < workerCount; i++) {
+            futures.add(fileSystem.getExecutor().submit(worker));
+        }
+        IOException failure = null;
+        try {
+            worker.call();
+        } catch (IOException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new IOException(e);
+        }
+        if (failure != null) {
+            // Let the other workers stop after their current part.
+            nextPart.set(partCount);
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                nextPart.set(partCount);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                nextPart.set(partCount);
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Transfers a part, resuming at the first missing byte if the transfer fails.
+     */
+    private void transferPart(long position, long length, FileChannel target, long targetPosition, ByteBuffer buffer) throws IOException {
+        ObjectStorageRetryPolicy retryPolicy = fileSystem.getRetryPolicy();
+        String etag = null;
+        for (int retryCount = 0; ; retryCount++) {
+            Map<String, String> headers = ObjectStorageConnectionPool.getRangeHeaders(position, length, etag);
+            try (ObjectStorageResponse response = fileSystem.getConnectionPool().get(url, headers)) {
+                if (!response.isSuccessful()) {
+                    throw new ObjectStorageHttpException(url.toString(), response.getStatusCode(), response.getReasonPhrase());
+                }
+                if (etag == null) {
+                    etag = response.getHeaderField("ETag");
+                }
+                if (response.getStatusCode() != 206 && position > 0) {
+                    // Server ignored the "Range" header, skip to the part's position.
+                    InputStream stream = response.getInputStream();
+                    long toSkip = position;
+                    while (toSkip > 0) {
+                        long n = stream.skip(toSkip);
+                        if (n <= 0) {
+                            throw new EOFException(url.toString());
+                        }
+                        toSkip -= n;
+                    }
+                }
+                while (length > 0) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), length));
+                    try {
+                        while (buffer.hasRemaining()) {
+                            if (response.read(buffer) < 0) {
+                                throw new EOFException(url.toString());
+                            }
+                        }
+                    } finally {
+                        // Keep the bytes received before a failure.
+                        buffer.flip();
+                        int n = buffer.remaining();
+                        while (buffer.hasRemaining()) {
+                            targetPosition += target.write(buffer, targetPosition);
+                        }
+                        position += n;
+                        length -= n;
+                    }
+                }
+                return;
+            } catch (IOException e) {
+                if (!retryPolicy.canRetry(e, retryCount)) {
+                    throw e;
+                }
+            }
+            retryPolicy.backoff(retryCount);
+        }
+    }
+}
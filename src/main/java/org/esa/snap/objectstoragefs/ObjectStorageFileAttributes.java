@@ -1,7 +1,7 @@
 package org.esa.snap.objectstoragefs;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
@@ -27,12 +27,22 @@ public abstract class ObjectStorageFileAttributes implements BasicFileAttributes
             if (path.isDirectory()) {
                 fileAttributes = newDir(path.toString().substring(1));
             } else {
-                HttpURLConnection urlConnection = (HttpURLConnection) path.getFileURL().openConnection();
-                urlConnection.connect();
-                long contentLength = urlConnection.getContentLengthLong();
-                String lastModified = urlConnection.getHeaderField("last-modified");
-                urlConnection.disconnect();
-                fileAttributes = newFile(path.toString(), contentLength, lastModified);
+                ObjectStorageFileSystem fileSystem = (ObjectStorageFileSystem) path.getFileSystem();
+                // A recent listing of the parent directory saves the HEAD request.
+                fileAttributes = fileSystem.getListedAttributes(path);
+                if (fileAttributes == null) {
+                    fileAttributes = fileSystem.getRetryPolicy().execute(() -> {
+                        try (ObjectStorageResponse response = fileSystem.getConnectionPool().head(path.getFileURL())) {
+                            if (response.getStatusCode() == 404) {
+                                throw new NoSuchFileException(path.toString());
+                            }
+                            if (!response.isSuccessful()) {
+                                throw new ObjectStorageHttpException(path.toString(), response.getStatusCode(), response.getReasonPhrase());
+                            }
+                            return newFile(path.toString(), response.getContentLength(), response.getHeaderField("Last-Modified"));
+                        }
+                    });
+                }
             }
             path.setFileAttributes(fileAttributes);
         }
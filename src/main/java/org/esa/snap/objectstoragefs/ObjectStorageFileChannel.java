@@ -0,0 +1,281 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * A read-only file channel backed by a sparse local file. Blocks of the object are
+ * downloaded into the local file when they are first read, so that only the parts of
+ * the object actually accessed are transferred. Mapping a region of the channel
+ * downloads the missing blocks of the region and maps the local file, so that
+ * libraries requiring {@link FileChannel#map} can read objects without copying them
+ * to the local disk first.
+ * <p>
+ * The local file is created in the persistent cache directory, if configured, or in the
+ * default temporary directory, and deleted when the channel is closed.
+ */
+class ObjectStorageFileChannel extends FileChannel {
+
+    private final ObjectStorageFileSystem fileSystem;
+    private final ObjectStorageDownload download;
+    private final long contentLength;
+    private final int blockSize;
+    private final Path localFile;
+    private final FileChannel localChannel;
+    private final BitSet presentBlocks;
+    private long position;
+
+    ObjectStorageFileChannel(ObjectStoragePath path, long contentLength) throws IOException {
+        this.fileSystem = (ObjectStorageFileSystem) path.getFileSystem();
+        this.download = new ObjectStorageDownload(fileSystem, path.getFileURL());
+        this.contentLength = contentLength;
+        this.blockSize = fileSystem.getConfig().getFileChannelBlockSize();
+        Path directory = fileSystem.getConfig().getDiskCacheDir();
+        if (directory == null) {
+            directory = Paths.get(System.getProperty("java.io.tmpdir"));
+        }
+        Files.createDirectories(directory);
+        this.localFile = Files.createTempFile(directory, "objectstoragefs-", ".data");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(localFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+            if (contentLength > 0) {
+                // Extend the file without allocating disk space where supported.
+                channel.write(ByteBuffer.wrap(new byte[1]), contentLength - 1);
+            }
+        } catch (IOException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(localFile);
+            throw e;
+        }
+        this.localChannel = channel;
+        this.presentBlocks = new BitSet();
+        this.position = 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        synchronized (this) {
+            int n = read(dst, position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        ensureOpen();
+        synchronized (this) {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (!dsts[i].hasRemaining()) {
+                    continue;
+                }
+                int n = read(dsts[i], position);
+                if (n < 0) {
+                    return total > 0 ? total : -1;
+                }
+                position += n;
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        ensureOpen();
+        if (position >= contentLength) {
+            return -1;
+        }
+        int length = (int) Math.min(dst.remaining(), contentLength - position);
+        fill(position, length);
+        int limit = dst.limit();
+        dst.limit(dst.position() + length);
+        try {
+            int total = 0;
+            while (dst.hasRemaining()) {
+                total += localChannel.read(dst, position + total);
+            }
+            return total;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        ensureOpen();
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return contentLength;
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        ensureOpen();
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("negative position or count");
+        }
+        ensureOpen();
+        if (position >= contentLength) {
+            return 0;
+        }
+        count = Math.min(count, contentLength - position);
+        fill(position, count);
+        return localChannel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Maps a region of this channel into memory. Only {@link MapMode#READ_ONLY} is supported.
+     * The missing blocks of the region are downloaded before the region is mapped.
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        if (mode != MapMode.READ_ONLY) {
+            throw new NonWritableChannelException();
+        }
+        if (position < 0 || size < 0) {
+            throw new IllegalArgumentException("negative position or size");
+        }
+        ensureOpen();
+        if (position + size > contentLength) {
+            throw new IOException("region exceeds the end of the object");
+        }
+        fill(position, size);
+        return localChannel.map(MapMode.READ_ONLY, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        if (!shared) {
+            throw new NonWritableChannelException();
+        }
+        ensureOpen();
+        return localChannel.lock(position, size, true);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        if (!shared) {
+            throw new NonWritableChannelException();
+        }
+        ensureOpen();
+        return localChannel.tryLock(position, size, true);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        try {
+            localChannel.close();
+        } finally {
+            try {
+                Files.deleteIfExists(localFile);
+            } catch (IOException e) {
+                // The file may still be mapped on some platforms.
+                localFile.toFile().deleteOnExit();
+            }
+            fileSystem.removeByteChannel(this);
+        }
+    }
+
+    /**
+     * Downloads the missing blocks overlapping the given region. Each run of consecutive
+     * missing blocks is downloaded by concurrent ranged requests.
+     */
+    private void fill(long position, long length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        int firstBlock = (int) (position / blockSize);
+        int lastBlock = (int) ((position + length - 1) / blockSize);
+        int block = firstBlock;
+        while (block <= lastBlock) {
+            int runStart;
+            int runEnd;
+            synchronized (presentBlocks) {
+                runStart = presentBlocks.nextClearBit(block);
+                if (runStart > lastBlock) {
+                    return;
+                }
+                runEnd = Math.min(presentBlocks.nextSetBit(runStart) < 0 ? lastBlock + 1 : presentBlocks.nextSetBit(runStart), lastBlock + 1);
+            }
+            long start = (long) runStart * blockSize;
+            long end = Math.min((long) runEnd * blockSize, contentLength);
+            download.transferTo(start, end - start, localChannel, start);
+            synchronized (presentBlocks) {
+                presentBlocks.set(runStart, runEnd);
+            }
+            block = runEnd;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package org.esa.snap.objectstoragefs;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
@@ -10,10 +18,20 @@ import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Provides an interface to a file system and is the factory for objects to
@@ -25,12 +43,24 @@ public class ObjectStorageFileSystem extends FileSystem {
     private final String address;
     private final ObjectStoragePath root;
     private final ObjectStoragePath empty;
+    private final ObjectStorageConfig config;
+    private final ObjectStorageBlockCache blockCache;
+    private final ObjectStorageDiskCache diskCache;
+    private final ObjectStorageListingCache listingCache;
+    private final ObjectStorageConnectionPool connectionPool;
+    private final ObjectStorageRetryPolicy retryPolicy;
     private String separator;
     private boolean closed;
-    private List<ObjectStorageByteChannel> openChannels;
+    private List<Channel> openChannels;
     private ObjectStorageWalker walker;
+    private ObjectStorageWalker refreshWalker;
+    private ExecutorService executor;
 
     public ObjectStorageFileSystem(ObjectStorageFileSystemProvider provider, String address, String separator) {
+        this(provider, address, separator, Collections.emptyMap());
+    }
+
+    public ObjectStorageFileSystem(ObjectStorageFileSystemProvider provider, String address, String separator, Map<String, ?> env) {
         if (provider == null) {
             throw new NullPointerException("provider");
         }
@@ -46,10 +76,21 @@ public class ObjectStorageFileSystem extends FileSystem {
         this.provider = provider;
         this.address = address;
         this.separator = separator;
+        this.config = new ObjectStorageConfig(env);
+        this.blockCache = ObjectStorageBlockCache.create(config);
+        this.diskCache = config.getDiskCacheDir() != null
+                ? new ObjectStorageDiskCache(config.getDiskCacheDir(), config.getDiskCacheBlockSize(), config.getDiskCacheMaxOpenFiles())
+                : null;
+        this.listingCache = config.getListCacheTtl() > 0 ? new ObjectStorageListingCache(config) : null;
+        this.connectionPool = new ObjectStorageConnectionPool(config);
+        this.retryPolicy = new ObjectStorageRetryPolicy(config);
         this.closed = false;
-        this.openChannels = new ArrayList<>();
+        this.openChannels = Collections.synchronizedList(new ArrayList<>());
         this.root = new ObjectStoragePath(this, true, true, "", ObjectStorageFileAttributes.ROOT);
         this.empty = new ObjectStoragePath(this, false, false, "", ObjectStorageFileAttributes.EMPTY);
+        if (config.getConnectionPrewarm() > 0) {
+            prewarmConnections(config.getConnectionPrewarm());
+        }
     }
 
     /**
@@ -71,6 +112,42 @@ public class ObjectStorageFileSystem extends FileSystem {
         return address;
     }
 
+    /**
+     * Returns the configuration of this file system.
+     *
+     * @return The configuration
+     */
+    public ObjectStorageConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the pool of HTTP connections used by this file system.
+     *
+     * @return The connection pool
+     */
+    public ObjectStorageConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Returns the latency and bandwidth measured for this file system, e.g. for diagnostics.
+     *
+     * @return The transfer statistics
+     */
+    public ObjectStorageTransferStats getTransferStats() {
+        return connectionPool.getTransferStats();
+    }
+
+    /**
+     * Returns the policy for retrying failed requests of this file system.
+     *
+     * @return The retry policy
+     */
+    public ObjectStorageRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     /**
      * Returns the root path.
      *
@@ -108,6 +185,16 @@ public class ObjectStorageFileSystem extends FileSystem {
             } catch (IOException ignored) {
             }
         }
+        if (diskCache != null) {
+            diskCache.close();
+        }
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        connectionPool.close();
         provider.unlinkFileSystem(this);
     }
 
@@ -150,7 +237,11 @@ public class ObjectStorageFileSystem extends FileSystem {
      */
     @Override
     public Iterable<Path> getRootDirectories() {
-        return walkDir(getRoot(), path -> ((ObjectStoragePath) path).isDirectory());
+        try (Stream<Path> directories = walkDir(getRoot(), path -> ((ObjectStoragePath) path).isDirectory())) {
+            return directories.collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -263,40 +354,569 @@ public class ObjectStorageFileSystem extends FileSystem {
     }
 
     SeekableByteChannel openByteChannel(ObjectStoragePath path, Set<? extends OpenOption> options, FileAttribute<?>[] attrs) throws IOException {
-        boolean plainReadMode = options.isEmpty() || options.size() == 1 && options.contains(StandardOpenOption.READ);
+        ObjectStorageOpenOption hint = null;
+        boolean plainReadMode = true;
+        for (OpenOption option : options) {
+            if (option instanceof ObjectStorageOpenOption) {
+                if (hint != null && hint != option) {
+                    throw new IllegalArgumentException("conflicting options: " + hint + ", " + option);
+                }
+                hint = (ObjectStorageOpenOption) option;
+            } else if (option != StandardOpenOption.READ) {
+                plainReadMode = false;
+            }
+        }
         boolean noCreateAttributes = attrs.length == 0;
         if (plainReadMode && noCreateAttributes) {
-            return addByteChannel(new ObjectStorageByteChannel(path));
+            return addByteChannel(new ObjectStorageByteChannel(path, hint));
         }
         throw new UnsupportedOperationException();
     }
 
-    ObjectStorageByteChannel addByteChannel(ObjectStorageByteChannel channel) {
+    InputStream openInputStream(ObjectStoragePath path, OpenOption... options) {
+        assertOpen();
+        for (OpenOption option : options) {
+            if (option != StandardOpenOption.READ && !(option instanceof ObjectStorageOpenOption)) {
+                throw new UnsupportedOperationException("unsupported open option: " + option);
+            }
+        }
+        return new ObjectStorageInputStream(path, config.getInputStreamBufferSize());
+    }
+
+    FileChannel openFileChannel(ObjectStoragePath path, Set<? extends OpenOption> options, FileAttribute<?>[] attrs) throws IOException {
+        assertOpen();
+        for (OpenOption option : options) {
+            if (option != StandardOpenOption.READ && !(option instanceof ObjectStorageOpenOption)) {
+                throw new UnsupportedOperationException("unsupported open option: " + option);
+            }
+        }
+        if (attrs.length > 0) {
+            throw new UnsupportedOperationException();
+        }
+        return addByteChannel(new ObjectStorageFileChannel(path, readFileAttributes(path).size()));
+    }
+
+    /**
+     * Reads many byte ranges of a file at once. Ranges that are close to each other are
+     * fetched by a single request, see {@link ObjectStorageConfig#RANGE_COALESCE_GAP}, and
+     * the requests are sent concurrently. The remaining bytes of each buffer are filled
+     * with the bytes starting at the corresponding position.
+     *
+     * @param path      The path of the file
+     * @param positions The positions of the ranges within the file
+     * @param buffers   The destination buffers, their remaining bytes give the lengths of the ranges
+     * @throws IllegalArgumentException If the number of positions and buffers differ or a position is negative
+     * @throws EOFException             If a range exceeds the end of the file
+     * @throws IOException              If some other I/O error occurs
+     */
+    public void readRanges(Path path, long[] positions, ByteBuffer[] buffers) throws IOException {
+        assertOpen();
+        ObjectStoragePath objectStoragePath = (ObjectStoragePath) path;
+        long contentLength = -1;
+        BasicFileAttributes attributes = objectStoragePath.getFileAttributes();
+        if (attributes != null && attributes.isRegularFile()) {
+            contentLength = attributes.size();
+        } else if (blockCache != null || diskCache != null) {
+            // Cached blocks are aligned to the object's size.
+            contentLength = provider.readAttributes(path, BasicFileAttributes.class).size();
+        }
+        new ObjectStorageVectoredRead(this, objectStoragePath.getFileURL(), contentLength).read(positions, buffers);
+    }
+
+    /**
+     * Reads a sequence of bytes of a file into the given buffer without blocking the calling
+     * thread. The read is performed on the file system's I/O executor, so that the number of
+     * threads blocked by outstanding reads is bounded by {@link ObjectStorageConfig#IO_THREADS}.
+     * The buffer must not be accessed until the returned future is complete.
+     *
+     * @param path     The path of the file
+     * @param dst      The buffer, up to its remaining bytes are read
+     * @param position The position within the file
+     * @return A future giving the number of bytes read, or -1 if the position is at or beyond the end of the file
+     * @throws IllegalArgumentException If the position is negative
+     */
+    public CompletableFuture<Integer> readAsync(Path path, ByteBuffer dst, long position) {
+        return readAsync((ObjectStoragePath) path, -1, dst, position);
+    }
+
+    /**
+     * Reads the basic attributes of a file without blocking the calling thread.
+     *
+     * @param path The path of the file
+     * @return A future giving the file's attributes
+     */
+    public CompletableFuture<BasicFileAttributes> readAttributesAsync(Path path) {
+        ObjectStoragePath objectStoragePath = (ObjectStoragePath) path;
+        return submit(() -> readFileAttributes(objectStoragePath));
+    }
+
+    CompletableFuture<Integer> readAsync(ObjectStoragePath path, long contentLength, ByteBuffer dst, long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        return submit(() -> read(path, contentLength, dst, position));
+    }
+
+    /**
+     * Reads exactly {@code dst.remaining()} bytes of a file into the given buffer, starting at the
+     * given position. No channel is opened: the bytes are read from the block caches or by a ranged
+     * request on a pooled connection. Any number of threads may read concurrently.
+     *
+     * @param path     The path of the file
+     * @param position The position within the file
+     * @param dst      The buffer
+     * @throws EOFException             If the end of the file is reached before the buffer is filled
+     * @throws IllegalArgumentException If the position is negative
+     * @throws IOException              If some other I/O error occurs
+     */
+    public void readFully(Path path, long position, ByteBuffer dst) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        assertOpen();
+        ObjectStoragePath objectStoragePath = (ObjectStoragePath) path;
+        int length = dst.remaining();
+        if (read(objectStoragePath, -1, dst, position) < length) {
+            throw new EOFException(path.toString());
+        }
+    }
+
+    /**
+     * Reads up to {@code dst.remaining()} bytes of a file into the given buffer, starting at the given
+     * position. Shared state is not modified, so that concurrent reads need no synchronization.
+     *
+     * @param path          The path of the file
+     * @param contentLength The file's size, or -1 if not known
+     * @param dst           The buffer
+     * @param position      The position within the file
+     * @return The number of bytes read, or -1 if the position is at or beyond the end of the file
+     * @throws IOException If an I/O error occurs
+     */
+    int read(ObjectStoragePath path, long contentLength, ByteBuffer dst, long position) throws IOException {
+        long size = contentLength >= 0 ? contentLength : readFileAttributes(path).size();
+        if (position >= size) {
+            return dst.hasRemaining() ? -1 : 0;
+        }
+        int length = (int) Math.min(dst.remaining(), size - position);
+        ByteBuffer range = dst.duplicate();
+        range.limit(range.position() + length);
+        new ObjectStorageVectoredRead(this, path.getFileURL(), size).read(new long[]{position}, new ByteBuffer[]{range});
+        dst.position(dst.position() + length);
+        return length;
+    }
+
+    /**
+     * Tells whether the calling thread is one of this file system's I/O threads. A task running
+     * on the I/O executor must not wait for further tasks it submits to the executor, as all
+     * threads could end up waiting, so it does such work itself.
+     *
+     * @return {@code true} if called from the I/O executor
+     */
+    boolean isIoThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof IoThread && ((IoThread) thread).getFileSystem() == this;
+    }
+
+    /**
+     * Runs a task on the I/O executor.
+     *
+     * @param task The task
+     * @param <T>  The type of the task's result
+     * @return A future giving the task's result or its failure
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            getExecutor().execute(() -> {
+                if (future.isDone()) {
+                    // Cancelled while queued.
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (ClosedFileSystemException | RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Transfers bytes of a file to the given channel. If the target is a {@link FileChannel},
+     * the bytes are downloaded by concurrent ranged requests and written using positional writes,
+     * otherwise they are streamed. Bytes are written starting at the target's position, and the
+     * target's position is advanced by the number of bytes transferred.
+     *
+     * @param path     The path of the file
+     * @param position The position within the file
+     * @param count    The maximum number of bytes to transfer
+     * @param target   The target channel
+     * @return The number of bytes transferred, which is less than {@code count} if the end of the file is reached
+     * @throws IllegalArgumentException If the position or the count are negative
+     * @throws IOException              If an I/O error occurs
+     */
+    public long transferTo(Path path, long position, long count, WritableByteChannel target) throws IOException {
+        assertOpen();
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("negative position or count");
+        }
+        ObjectStoragePath objectStoragePath = (ObjectStoragePath) path;
+        long size = readFileAttributes(objectStoragePath).size();
+        count = Math.max(0, Math.min(count, size - position));
+        if (target instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) target;
+            long targetPosition = fileChannel.position();
+            new ObjectStorageDownload(this, objectStoragePath.getFileURL()).transferTo(position, count, fileChannel, targetPosition);
+            fileChannel.position(targetPosition + count);
+            return count;
+        }
+        try (SeekableByteChannel channel = addByteChannel(new ObjectStorageByteChannel(objectStoragePath, ObjectStorageOpenOption.SEQUENTIAL))) {
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            long remaining = count;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                channel.read(buffer);
+                buffer.flip();
+                remaining -= buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies a file to a file of another file system, usually the default one. The file's bytes
+     * are downloaded by concurrent ranged requests, see {@link #transferTo(Path, long, long, WritableByteChannel)}.
+     * If the copy fails, the incomplete target file is deleted.
+     *
+     * @param source  The path of the file to copy
+     * @param target  The path of the target file
+     * @param options The copy options, {@link StandardCopyOption#REPLACE_EXISTING} and
+     *                {@link StandardCopyOption#COPY_ATTRIBUTES} are supported
+     * @throws FileAlreadyExistsException    If the target file exists and {@code REPLACE_EXISTING} is not given
+     * @throws UnsupportedOperationException If an unsupported option is given
+     * @throws IOException                   If some other I/O error occurs
+     */
+    void copyToForeignFile(ObjectStoragePath source, Path target, CopyOption... options) throws IOException {
+        assertOpen();
+        boolean replaceExisting = false;
+        boolean copyAttributes = false;
+        for (CopyOption option : options) {
+            if (option == StandardCopyOption.REPLACE_EXISTING) {
+                replaceExisting = true;
+            } else if (option == StandardCopyOption.COPY_ATTRIBUTES) {
+                copyAttributes = true;
+            } else if (option != LinkOption.NOFOLLOW_LINKS) {
+                throw new UnsupportedOperationException("unsupported copy option: " + option);
+            }
+        }
+        BasicFileAttributes attributes = readFileAttributes(source);
+        if (attributes.isDirectory()) {
+            if (replaceExisting) {
+                Files.deleteIfExists(target);
+            }
+            Files.createDirectory(target);
+        } else {
+            FileChannel channel = replaceExisting
+                    ? FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+                    : FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            boolean completed = false;
+            try {
+                new ObjectStorageDownload(this, source.getFileURL()).transferTo(0, attributes.size(), channel, 0);
+                completed = true;
+            } finally {
+                channel.close();
+                if (!completed) {
+                    Files.deleteIfExists(target);
+                }
+            }
+        }
+        if (copyAttributes) {
+            Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+        }
+    }
+
+    /**
+     * Returns the attributes of the given path, from a previous listing if known.
+     */
+    private BasicFileAttributes readFileAttributes(ObjectStoragePath path) throws IOException {
+        BasicFileAttributes attributes = path.getFileAttributes();
+        if (attributes != null && attributes.isRegularFile()) {
+            return attributes;
+        }
+        return provider.readAttributes(path, BasicFileAttributes.class);
+    }
+
+    /**
+     * Returns the executor used for concurrent I/O operations of this file system.
+     *
+     * @return The I/O executor
+     */
+    synchronized ExecutorService getExecutor() {
+        assertOpen();
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(config.getIoThreads(), new IoThreadFactory(address));
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the block cache shared by all byte channels of this file system.
+     *
+     * @return The block cache or {@code null} if caching is disabled
+     */
+    ObjectStorageBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Returns the persistent block cache of this file system.
+     *
+     * @return The persistent block cache or {@code null} if no cache directory is configured
+     */
+    ObjectStorageDiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Reads a range of bytes of the object at the given URL. The range is read
+     * through the block cache and then the persistent block cache, if any.
+     * Remaining bytes are read using ranged requests.
+     *
+     * @param url           The object URL
+     * @param contentLength The object's size in bytes
+     * @param position      The position of the first byte within the object
+     * @param array         The destination array
+     * @param offset        The offset within the destination array
+     * @param length        The number of bytes to read
+     * @throws EOFException If the range exceeds the end of the object
+     * @throws IOException  If some other I/O error occurs
+     */
+    void readObjectRange(URL url, long contentLength, long position, byte[] array, int offset, int length) throws IOException {
+        if (position + length > contentLength) {
+            throw new EOFException(url.toString());
+        }
+        ObjectStorageRangeReader reader = this::readRange;
+        if (diskCache != null) {
+            if (!diskCache.isValidated(url)) {
+                validateDiskCache(url);
+            }
+            ObjectStorageRangeReader networkReader = reader;
+            reader = (u, p, a, o, l) -> diskCache.read(u, contentLength, p, a, o, l, networkReader);
+        }
+        if (blockCache != null) {
+            blockCache.read(url, contentLength, position, array, offset, length, reader);
+        } else {
+            reader.readRange(url, position, array, offset, length);
+        }
+    }
+
+    /**
+     * Registers the current version of an object with the persistent block cache, which
+     * reads and writes an object's blocks only once its version is known.
+     */
+    private void validateDiskCache(URL url) throws IOException {
+        retryPolicy.execute(() -> {
+            try (ObjectStorageResponse response = connectionPool.head(url)) {
+                if (!response.isSuccessful()) {
+                    throw new ObjectStorageHttpException(url.toString(), response.getStatusCode(), response.getReasonPhrase());
+                }
+                diskCache.validate(url,
+                                   response.getContentLength(),
+                                   response.getHeaderField("ETag"),
+                                   response.getHeaderField("Last-Modified"));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Reads a range of bytes of the object at the given URL using a ranged request.
+     * If the transfer fails, it is resumed at the first missing byte, provided that the
+     * object's entity tag has not changed.
+     *
+     * @param url      The object URL
+     * @param position The position of the first byte within the object
+     * @param array    The destination array
+     * @param offset   The offset within the destination array
+     * @param length   The number of bytes to read
+     * @throws EOFException If the end of the object is reached before {@code length} bytes have been read
+     * @throws IOException  If some other I/O error occurs
+     */
+    void readRange(URL url, long position, byte[] array, int offset, int length) throws IOException {
+        String etag = null;
+        for (int retryCount = 0; ; retryCount++) {
+            Map<String, String> headers = ObjectStorageConnectionPool.getRangeHeaders(position, length, etag);
+            try (ObjectStorageResponse response = connectionPool.get(url, headers)) {
+                if (!response.isSuccessful()) {
+                    throw new ObjectStorageHttpException(url.toString(), response.getStatusCode(), response.getReasonPhrase());
+                }
+                if (etag == null) {
+                    etag = response.getHeaderField("ETag");
+                }
+                InputStream stream = response.getInputStream();
+                if (response.getStatusCode() != 206 && position > 0) {
+                    // Server ignored the "Range" header, skip to the requested position.
+                    long toSkip = position;
+                    while (toSkip > 0) {
+                        long n = stream.skip(toSkip);
+                        if (n <= 0) {
+                            throw new EOFException(url.toString());
+                        }
+                        toSkip -= n;
+                    }
+                }
+                long startTime = System.nanoTime();
+                int total = length;
+                try {
+                    while (length > 0) {
+                        int n = stream.read(array, offset, length);
+                        if (n < 0) {
+                            throw new EOFException(url.toString());
+                        }
+                        position += n;
+                        offset += n;
+                        length -= n;
+                    }
+                } finally {
+                    getTransferStats().recordTransfer(total - length, System.nanoTime() - startTime);
+                }
+                return;
+            } catch (IOException e) {
+                if (!retryPolicy.canRetry(e, retryCount)) {
+                    throw e;
+                }
+            }
+            retryPolicy.backoff(retryCount);
+        }
+    }
+
+    private void prewarmConnections(int count) {
+        URL url;
+        try {
+            url = new URL(address);
+        } catch (MalformedURLException e) {
+            return;
+        }
+        getExecutor().submit(() -> {
+            try {
+                connectionPool.prewarm(url, count);
+            } catch (IOException ignored) {
+                // Connections will be opened on demand.
+            }
+        });
+    }
+
+    <T extends Channel> T addByteChannel(T channel) {
         openChannels.add(channel);
         return channel;
     }
 
-    void removeByteChannel(ObjectStorageByteChannel channel) {
+    void removeByteChannel(Channel channel) {
         openChannels.remove(channel);
     }
 
-    Iterable<Path> walkDir(Path dir, DirectoryStream.Filter<? super Path> filter) {
+    /**
+     * Lists the entries of a directory lazily, page by page.
+     *
+     * @param dir    The directory
+     * @param filter The filter selecting the entries
+     * @return The stream of entries, which must be closed to stop fetching further pages
+     * @throws IOException If the listing cannot be started
+     */
+    Stream<Path> walkDir(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
         assertOpen();
         Path path = dir.toAbsolutePath();
         String prefix = path.toString().substring(1);
-        List<BasicFileAttributes> files;
-        if (walker == null) {
-            walker = provider.newObjectStorageWalker();
+        return listDir(prefix, getSeparator())
+                .map(f -> ObjectStoragePath.fromFileAttributes(this, f))
+                .filter(p -> filterPath(p, filter))
+                .map(Path.class::cast);
+    }
+
+    /**
+     * Lists the entries under a prefix from the listing cache, if enabled, or else from the server.
+     * A stale cached listing is refreshed in the background.
+     */
+    private Stream<BasicFileAttributes> listDir(String prefix, String delimiter) throws IOException {
+        if (listingCache == null) {
+            return getWalker().walk(address, prefix, delimiter);
+        }
+        ObjectStorageListingCache.Listing listing = listingCache.get(prefix, delimiter);
+        if (listing != null) {
+            if (listingCache.startRefresh(listing)) {
+                refreshListing(prefix, delimiter, listing);
+            }
+            return listing.entries.stream();
         }
+        long generation = listingCache.getGeneration();
+        return listingCache.cacheOnCompletion(prefix, delimiter, getWalker().walk(address, prefix, delimiter), generation);
+    }
+
+    private void refreshListing(String prefix, String delimiter, ObjectStorageListingCache.Listing listing) {
+        long generation = listingCache.getGeneration();
         try {
-            files = walker.walk(address, prefix, getSeparator());
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
+            getExecutor().execute(() -> {
+                // Pages are requested on this thread, as waiting on the I/O executor for them could deadlock.
+                try (Stream<BasicFileAttributes> entries = getRefreshWalker().walk(address, prefix, delimiter)) {
+                    listingCache.put(prefix, delimiter, entries.collect(Collectors.toList()), generation);
+                } catch (IOException | UncheckedIOException ignored) {
+                    // The stale listing is served until it expires or a later refresh succeeds.
+                } finally {
+                    listingCache.endRefresh(listing);
+                }
+            });
+        } catch (ClosedFileSystemException | RejectedExecutionException e) {
+            listingCache.endRefresh(listing);
+        }
+    }
+
+    private synchronized ObjectStorageWalker getWalker() {
+        if (walker == null) {
+            walker = provider.newObjectStorageWalker(this, getExecutor());
+        }
+        return walker;
+    }
+
+    private synchronized ObjectStorageWalker getRefreshWalker() {
+        if (refreshWalker == null) {
+            refreshWalker = provider.newObjectStorageWalker(this, null);
+        }
+        return refreshWalker;
+    }
+
+    /**
+     * Returns the attributes of a file or directory as found by a fresh cached listing of its parent directory.
+     *
+     * @param path The path
+     * @return The attributes or {@code null} if not known
+     */
+    BasicFileAttributes getListedAttributes(ObjectStoragePath path) {
+        if (listingCache == null) {
+            return null;
+        }
+        String key = path.toAbsolutePath().toString().substring(1);
+        return listingCache.getAttributes(key, getSeparator());
+    }
+
+    /**
+     * Drops the cached listings that may be affected by a change of the given file or directory,
+     * i.e. the listing of its parent directory and, for a directory, the listings below it.
+     * To be called after the objects have been changed, e.g. by a write operation or by another client.
+     *
+     * @param path The changed file or directory, the root drops all cached listings
+     */
+    public void invalidateListings(Path path) {
+        if (listingCache != null) {
+            listingCache.invalidate(path.toAbsolutePath().toString().substring(1));
         }
-        return files.stream()
-                .map(f -> ObjectStoragePath.fromFileAttributes(this, f))
-                .filter(p -> filterPath(p, filter))
-                .collect(Collectors.toList());
     }
 
     private boolean filterPath(ObjectStoragePath path, DirectoryStream.Filter<? super Path> filter) {
@@ -306,4 +926,30 @@ public class ObjectStorageFileSystem extends FileSystem {
             return false;
         }
     }
+
+    private class IoThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        IoThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new IoThread(runnable, "objectstoragefs-io-" + count.incrementAndGet() + " (" + name + ")");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private class IoThread extends Thread {
+        IoThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+
+        ObjectStorageFileSystem getFileSystem() {
+            return ObjectStorageFileSystem.this;
+        }
+    }
 }
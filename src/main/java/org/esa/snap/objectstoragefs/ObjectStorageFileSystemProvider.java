@@ -1,8 +1,11 @@
 package org.esa.snap.objectstoragefs;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -13,6 +16,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 /**
  * Service-provider class for file systems. The methods defined by the {@link
@@ -58,7 +63,15 @@ public abstract class ObjectStorageFileSystemProvider extends FileSystemProvider
 
     protected abstract ObjectStorageFileSystem newFileSystem(String address, Map<String, ?> env) throws IOException;
 
-    protected abstract ObjectStorageWalker newObjectStorageWalker();
+    /**
+     * Creates the walker listing the objects of a file system.
+     *
+     * @param fileSystem The file system
+     * @param executor   The file system's I/O executor, which the walker may use to request pages in the background,
+     *                   or {@code null} if the walker must request all pages on the thread consuming the listing
+     * @return The walker
+     */
+    protected abstract ObjectStorageWalker newObjectStorageWalker(ObjectStorageFileSystem fileSystem, Executor executor);
 
     /**
      * Constructs a new {@code FileSystem} object identified by a URI. This
@@ -238,6 +251,51 @@ public abstract class ObjectStorageFileSystemProvider extends FileSystemProvider
         return fs.openByteChannel((ObjectStoragePath) path, options, attrs);
     }
 
+    /**
+     * Opens a file, returning an input stream to read from the file. This
+     * method works in exactly the manner specified by the {@link
+     * Files#newInputStream} method.
+     * <p>
+     * The stream reads the file with a single request and fills its next buffer in
+     * the background while the current one is read.
+     *
+     * @param path    the path to the file to open
+     * @param options options specifying how the file is opened
+     * @return a new input stream
+     * @throws UnsupportedOperationException if an unsupported option is specified
+     * @throws IOException                   if an I/O error occurs
+     */
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        ObjectStorageFileSystem fs = (ObjectStorageFileSystem) path.getFileSystem();
+        return fs.openInputStream((ObjectStoragePath) path, options);
+    }
+
+    /**
+     * Opens or creates a file for reading and/or writing, returning a file
+     * channel to access the file. This method works in exactly the manner
+     * specified by the {@link FileChannel#open(Path, Set, FileAttribute[])}
+     * method.
+     * <p>
+     * File channels are read-only. They are backed by a sparse local file into
+     * which the blocks of the file are downloaded when first read or mapped.
+     *
+     * @param path    the path of the file to open or create
+     * @param options options specifying how the file is opened
+     * @param attrs   an optional list of file attributes to set atomically when
+     *                creating the file
+     * @return a new file channel
+     * @throws UnsupportedOperationException if an unsupported open option is specified or the array contains
+     *                                       attributes that cannot be set atomically when creating the file
+     * @throws NoSuchFileException           if the file does not exist
+     * @throws IOException                   if an I/O error occurs
+     */
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        ObjectStorageFileSystem fs = (ObjectStorageFileSystem) path.getFileSystem();
+        return fs.openFileChannel((ObjectStoragePath) path, options, attrs);
+    }
+
     /**
      * Opens a directory, returning a {@code DirectoryStream} to iterate over
      * the entries in the directory. This method works in exactly the manner
@@ -258,16 +316,42 @@ public abstract class ObjectStorageFileSystemProvider extends FileSystemProvider
     @Override
     public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
         ObjectStorageFileSystem fs = (ObjectStorageFileSystem) dir.getFileSystem();
-        Iterable<Path> directories = fs.walkDir(dir, filter);
+        Stream<Path> entries = fs.walkDir(dir, filter);
         return new DirectoryStream<Path>() {
+            private boolean iterated;
+
             @Override
             public Iterator<Path> iterator() {
-                return directories.iterator();
+                if (iterated) {
+                    throw new IllegalStateException("iterator already obtained");
+                }
+                iterated = true;
+                Iterator<Path> iterator = entries.iterator();
+                return new Iterator<Path>() {
+                    @Override
+                    public boolean hasNext() {
+                        try {
+                            return iterator.hasNext();
+                        } catch (UncheckedIOException e) {
+                            throw new DirectoryIteratorException(e.getCause());
+                        }
+                    }
+
+                    @Override
+                    public Path next() {
+                        try {
+                            return iterator.next();
+                        } catch (UncheckedIOException e) {
+                            throw new DirectoryIteratorException(e.getCause());
+                        }
+                    }
+                };
             }
 
             @Override
-            public void close() throws IOException {
-                // ok
+            public void close() {
+                // Stops fetching the remaining pages of the listing.
+                entries.close();
             }
         };
     }
@@ -319,6 +403,11 @@ public abstract class ObjectStorageFileSystemProvider extends FileSystemProvider
      * specified by the {@link Files#copy(Path, Path, CopyOption[])} method
      * except that both the source and target paths must be associated with
      * this provider.
+     * <p>
+     * As an extension, the target may also be a path of another file system, e.g. of the
+     * default one, in which case the file is downloaded by concurrent ranged requests.
+     * Note that {@link Files#copy(Path, Path, CopyOption[])} only delegates to this method
+     * if both paths are associated with this provider, so downloads must call it directly.
      *
      * @param source  the path to the file to copy
      * @param target  the path to the target file
@@ -341,6 +430,12 @@ public abstract class ObjectStorageFileSystemProvider extends FileSystemProvider
      */
     @Override
     public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        if (source instanceof ObjectStoragePath && !(target instanceof ObjectStoragePath)) {
+            // Download, e.g. to the default file system.
+            ObjectStorageFileSystem fs = (ObjectStorageFileSystem) source.getFileSystem();
+            fs.copyToForeignFile((ObjectStoragePath) source, target, options);
+            return;
+        }
         // TODO - implement me
         throw new UnsupportedOperationException();
     }
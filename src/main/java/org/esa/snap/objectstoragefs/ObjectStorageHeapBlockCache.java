@@ -0,0 +1,113 @@
+package org.esa.snap.objectstoragefs;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A block cache that keeps blocks as arrays on the Java heap.
+ * <p>
+ * The cache is split into segments, each guarded by its own lock and evicting
+ * its least recently used blocks once its share of the total capacity is exceeded.
+ */
+class ObjectStorageHeapBlockCache extends ObjectStorageBlockCache {
+
+    private static final int MAX_SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+
+    ObjectStorageHeapBlockCache(long capacity, int blockSize) {
+        super(capacity, blockSize);
+        int segmentCount = (int) Math.min(MAX_SEGMENT_COUNT, capacity / blockSize);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(capacity / segmentCount);
+        }
+    }
+
+    @Override
+    protected boolean getBlock(String objectKey, long blockIndex, int blockOffset, byte[] array, int offset, int length) {
+        BlockKey key = new BlockKey(objectKey, blockIndex);
+        byte[] block = getSegment(key).get(key);
+        if (block == null) {
+            return false;
+        }
+        System.arraycopy(block, blockOffset, array, offset, length);
+        return true;
+    }
+
+    @Override
+    protected boolean containsBlock(String objectKey, long blockIndex) {
+        BlockKey key = new BlockKey(objectKey, blockIndex);
+        return getSegment(key).contains(key);
+    }
+
+    @Override
+    protected void putBlock(String objectKey, long blockIndex, byte[] data, int offset, int length) {
+        BlockKey key = new BlockKey(objectKey, blockIndex);
+        getSegment(key).put(key, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    private Segment getSegment(BlockKey key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static class Segment {
+        private final long capacity;
+        private final LinkedHashMap<BlockKey, byte[]> blocks;
+        private long size;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+            this.blocks = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized byte[] get(BlockKey key) {
+            return blocks.get(key);
+        }
+
+        synchronized boolean contains(BlockKey key) {
+            return blocks.containsKey(key);
+        }
+
+        synchronized void put(BlockKey key, byte[] block) {
+            byte[] oldBlock = blocks.put(key, block);
+            if (oldBlock != null) {
+                size -= oldBlock.length;
+            }
+            size += block.length;
+            while (size > capacity) {
+                Map.Entry<BlockKey, byte[]> eldest = blocks.entrySet().iterator().next();
+                blocks.remove(eldest.getKey());
+                size -= eldest.getValue().length;
+            }
+        }
+    }
+
+    private static class BlockKey {
+        final String objectKey;
+        final long blockIndex;
+
+        BlockKey(String objectKey, long blockIndex) {
+            this.objectKey = objectKey;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return blockIndex == other.blockIndex && objectKey.equals(other.objectKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * objectKey.hashCode() + Long.hashCode(blockIndex);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a duplicate of a request whose response headers have not been received within
+ * a threshold derived from a percentile of recent response times. The first response
+ * wins, the connection of the other request is aborted and its response, if any, discarded.
+ * <p>
+ * The original request is sent on the calling thread; only duplicates are sent on threads
+ * of their own. Response times are tracked separately for listings, ranged requests and
+ * other requests of each method, as their latencies differ. Duplicates are limited by a
+ * budget: each request earns a fraction of a token, and each duplicate costs a whole token.
+ */
+class ObjectStorageHedging implements Closeable {
+
+    /**
+     * Sends a single request.
+     */
+    interface Sender {
+        ObjectStorageResponse send(String method, URL url, Map<String, String> headers, Exchange exchange) throws IOException;
+    }
+
+    private static final int SAMPLE_COUNT = 256;
+    private static final int MIN_SAMPLE_COUNT = 20;
+    private static final int RESORT_INTERVAL = 16;
+    private static final double MAX_TOKENS = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double budget;
+    private final Map<String, LatencyTracker> trackers;
+    private final AtomicLong hedgedRequestCount;
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor executor;
+    private double tokens;
+
+    /**
+     * Creates a hedging policy.
+     *
+     * @param percentile The percentile of recent response times after which a duplicate is sent
+     * @param minDelay   The minimum time in milliseconds before a duplicate is sent
+     * @param budget     The maximum number of duplicates as a fraction of all requests
+     */
+    ObjectStorageHedging(double percentile, long minDelay, double budget) {
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelay);
+        this.budget = budget;
+        this.trackers = new HashMap<>();
+        this.hedgedRequestCount = new AtomicLong();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "objectstoragefs-hedging");
+            thread.setDaemon(true);
+            return thread;
+        };
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, threadFactory);
+        timer.setRemoveOnCancelPolicy(true);
+        this.timer = timer;
+        // The budget never allows more duplicates in flight than tokens can be saved up.
+        this.executor = new ThreadPoolExecutor(0, (int) MAX_TOKENS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+        this.tokens = 1;
+    }
+
+    /**
+     * @return The number of duplicate requests sent so far
+     */
+    long getHedgedRequestCount() {
+        return hedgedRequestCount.get();
+    }
+
+    /**
+     * Sends a request, and a duplicate if the response is late and the budget allows.
+     *
+     * @param method  The request method
+     * @param url     The URL
+     * @param headers Additional request header fields
+     * @param sender  Sends a single request
+     * @return The first response
+     * @throws IOException If both requests fail
+     */
+    ObjectStorageResponse send(String method, URL url, Map<String, String> headers, Sender sender) throws IOException {
+        LatencyTracker tracker = getTracker(method, url, headers);
+        long threshold = tracker.getPercentile(percentile);
+        earnToken();
+        if (threshold < 0) {
+            // Not enough samples yet.
+            return timedSend(method, url, headers, sender, null, tracker);
+        }
+        return new HedgedRequest(method, url, headers, sender, tracker).send(Math.max(threshold, minDelayNanos));
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static ObjectStorageResponse timedSend(String method, URL url, Map<String, String> headers,
+                                                   Sender sender, Exchange exchange, LatencyTracker tracker) throws IOException {
+        long startTime = System.nanoTime();
+        ObjectStorageResponse response = sender.send(method, url, headers, exchange);
+        tracker.add(System.nanoTime() - startTime);
+        return response;
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    private synchronized void earnToken() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    private synchronized boolean spendToken() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private LatencyTracker getTracker(String method, URL url, Map<String, String> headers) {
+        String requestClass = method;
+        if (url.getQuery() != null) {
+            requestClass += " list";
+        } else if (headers.containsKey("Range")) {
+            requestClass += " range";
+        }
+        synchronized (trackers) {
+            return trackers.computeIfAbsent(requestClass, key -> new LatencyTracker());
+        }
+    }
+
+    /**
+     * The connection of a request in flight, which may be aborted from another thread.
+     */
+    static class Exchange {
+        private volatile Runnable disconnect;
+        private volatile boolean aborted;
+
+        /**
+         * Attaches the connection the request is sent on.
+         *
+         * @param disconnect Closes the connection
+         * @throws IOException If the request has been aborted
+         */
+        void attach(Runnable disconnect) throws IOException {
+            this.disconnect = disconnect;
+            checkAborted();
+        }
+
+        boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * @throws IOException If the request has been aborted
+         */
+        void checkAborted() throws IOException {
+            if (aborted) {
+                throw new IOException("request aborted");
+            }
+        }
+
+        /**
+         * Closes the connection of the request, which makes a thread blocked in it fail.
+         */
+        void abort() {
+            aborted = true;
+            Runnable disconnect = this.disconnect;
+            if (disconnect != null) {
+                disconnect.run();
+            }
+        }
+    }
+
+    /**
+     * A request which may be duplicated.
+     */
+    private class HedgedRequest {
+        private final String method;
+        private final URL url;
+        private final Map<String, String> headers;
+        private final Sender sender;
+        private final LatencyTracker tracker;
+        private final Exchange primary;
+        private final Exchange duplicate;
+        private final CompletableFuture<ObjectStorageResponse> winner;
+        private boolean primaryDone;
+        private boolean hedged;
+        private int failureCount;
+
+        HedgedRequest(String method, URL url, Map<String, String> headers, Sender sender, LatencyTracker tracker) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.sender = sender;
+            this.tracker = tracker;
+            this.primary = new Exchange();
+            this.duplicate = new Exchange();
+            this.winner = new CompletableFuture<>();
+        }
+
+        ObjectStorageResponse send(long delay) throws IOException {
+            ScheduledFuture<?> hedgeTask;
+            try {
+                hedgeTask = timer.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                return timedSend(method, url, headers, sender, null, tracker);
+            }
+            ObjectStorageResponse response = null;
+            Throwable failure = null;
+            try {
+                response = timedSend(method, url, headers, sender, primary, tracker);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                hedgeTask.cancel(false);
+            }
+            synchronized (this) {
+                primaryDone = true;
+                if (!hedged) {
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    if (failure != null) {
+                        throw (RuntimeException) failure;
+                    }
+                    return response;
+                }
+            }
+            complete(response, failure, duplicate);
+            try {
+                return winner.get();
+            } catch (InterruptedException e) {
+                duplicate.abort();
+                winner.whenComplete((r, f) -> {
+                    if (r != null) {
+                        r.abort();
+                    }
+                });
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw toIOException(e.getCause());
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (primaryDone || !spendToken()) {
+                    return;
+                }
+                hedged = true;
+            }
+            hedgedRequestCount.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        complete(timedSend(method, url, headers, sender, duplicate, tracker), null, primary);
+                    } catch (Throwable e) {
+                        complete(null, e, primary);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                complete(null, e, primary);
+            }
+        }
+
+        /**
+         * Completes one of the two requests. The first response wins and aborts the other request.
+         */
+        private void complete(ObjectStorageResponse response, Throwable failure, Exchange other) {
+            if (failure == null) {
+                if (winner.complete(response)) {
+                    other.abort();
+                } else {
+                    response.abort();
+                }
+                return;
+            }
+            int failureCount;
+            synchronized (this) {
+                failureCount = ++this.failureCount;
+            }
+            if (failureCount == 2) {
+                winner.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * The most recent response times of a class of requests. The sorted times are cached and only
+     * sorted again after a number of new samples, so that most requests look up their threshold
+     * without sorting.
+     */
+    static class LatencyTracker {
+        private final long[] samples = new long[SAMPLE_COUNT];
+        private long[] sorted;
+        private int count;
+        private int index;
+        private int unsortedCount;
+
+        synchronized void add(long nanos) {
+            samples[index] = nanos;
+            index = (index + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            unsortedCount++;
+        }
+
+        /**
+         * @return The given percentile of the recorded times in nanoseconds, or -1 if too few times have been recorded
+         */
+        synchronized long getPercentile(double percentile) {
+            if (count < MIN_SAMPLE_COUNT) {
+                return -1;
+            }
+            if (sorted == null || unsortedCount >= RESORT_INTERVAL) {
+                sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                unsortedCount = 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+    }
+}
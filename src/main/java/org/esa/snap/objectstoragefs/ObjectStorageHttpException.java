@@ -0,0 +1,25 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.IOException;
+
+/**
+ * Signals an unexpected HTTP response status.
+ */
+public class ObjectStorageHttpException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public ObjectStorageHttpException(String resource, int statusCode, String reasonPhrase) {
+        super(resource + ": response code " + statusCode + ": " + reasonPhrase);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return The HTTP response status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,259 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A stream that reads an object sequentially using two buffers: while the consumer reads
+ * from the front buffer, the back buffer is filled on the file system's I/O executor.
+ * Parsing and network transfer thus overlap instead of alternating.
+ * <p>
+ * The object is requested by a single request, which is sent when the stream is created.
+ * Closing the stream before the end of the object aborts the request. If the transfer fails,
+ * the rest of the object is requested again, provided that its entity tag has not changed.
+ */
+class ObjectStorageInputStream extends InputStream {
+
+    private final ObjectStorageFileSystem fileSystem;
+    private final ObjectStoragePath path;
+    private final URL url;
+    private final Object lock;
+    private byte[] front;
+    private int frontPosition;
+    private int frontLimit;
+    private byte[] back;
+    private Future<Integer> pending;
+    private boolean endOfStream;
+    private ObjectStorageResponse response;
+    private long responsePosition;
+    private String etag;
+    private boolean filling;
+    private boolean closed;
+
+    ObjectStorageInputStream(ObjectStoragePath path, int bufferSize) {
+        this.fileSystem = (ObjectStorageFileSystem) path.getFileSystem();
+        this.path = path;
+        this.url = path.getFileURL();
+        this.lock = new Object();
+        this.front = new byte[bufferSize];
+        this.back = new byte[bufferSize];
+        this.frontPosition = 0;
+        this.frontLimit = 0;
+        fillBack();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (frontPosition == frontLimit && !swap()) {
+            return -1;
+        }
+        return front[frontPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (frontPosition == frontLimit && !swap()) {
+            return -1;
+        }
+        int n = Math.min(len, frontLimit - frontPosition);
+        System.arraycopy(front, frontPosition, b, off, n);
+        frontPosition += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return frontLimit - frontPosition;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!filling) {
+                closeResponse();
+            }
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    /**
+     * Makes the back buffer, once filled, the front buffer and starts filling the former front buffer.
+     *
+     * @return {@code false} at the end of the object
+     */
+    private boolean swap() throws IOException {
+        ensureOpen();
+        if (endOfStream) {
+            return false;
+        }
+        int n;
+        try {
+            n = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            endOfStream = true;
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        if (n < 0) {
+            endOfStream = true;
+            return false;
+        }
+        byte[] filled = back;
+        back = front;
+        front = filled;
+        frontPosition = 0;
+        frontLimit = n;
+        if (n < front.length) {
+            // The fill stopped at the end of the object.
+            endOfStream = true;
+            pending = null;
+        } else {
+            fillBack();
+        }
+        return true;
+    }
+
+    private void fillBack() {
+        byte[] buffer = back;
+        pending = fileSystem.submit(() -> fill(buffer));
+    }
+
+    /**
+     * Fills the given buffer from the response, sending the request first if not yet done.
+     * Failed requests and transfers are retried from the first byte not yet received.
+     *
+     * @return The number of bytes read, less than the buffer size only at the end of the object, or -1 if no bytes are left
+     */
+    private int fill(byte[] buffer) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return -1;
+            }
+            filling = true;
+        }
+        try {
+            ObjectStorageRetryPolicy retryPolicy = fileSystem.getRetryPolicy();
+            int length = 0;
+            for (int retryCount = 0; ; retryCount++) {
+                try {
+                    if (response == null) {
+                        openResponse();
+                    }
+                    InputStream stream = response.getInputStream();
+                    while (length < buffer.length) {
+                        int n = stream.read(buffer, length, buffer.length - length);
+                        if (n < 0) {
+                            // Returns the connection to the pool.
+                            response.close();
+                            return length > 0 ? length : -1;
+                        }
+                        length += n;
+                        responsePosition += n;
+                    }
+                    return length;
+                } catch (IOException e) {
+                    if (response != null) {
+                        response.abort();
+                        response = null;
+                    }
+                    if (isClosed() || !retryPolicy.canRetry(e, retryCount)) {
+                        throw e;
+                    }
+                }
+                retryPolicy.backoff(retryCount);
+            }
+        } finally {
+            synchronized (lock) {
+                filling = false;
+                if (closed) {
+                    closeResponse();
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests the object from the first byte not yet received.
+     */
+    private void openResponse() throws IOException {
+        Map<String, String> headers = Collections.emptyMap();
+        if (responsePosition > 0) {
+            headers = new HashMap<>();
+            headers.put("Range", "bytes=" + responsePosition + "-");
+            if (etag != null) {
+                headers.put("If-Match", etag);
+            }
+        }
+        ObjectStorageResponse newResponse = fileSystem.getConnectionPool().get(url, headers);
+        if (!newResponse.isSuccessful()) {
+            newResponse.close();
+            if (newResponse.getStatusCode() == 404) {
+                throw new NoSuchFileException(path.toString());
+            }
+            throw new ObjectStorageHttpException(url.toString(), newResponse.getStatusCode(), newResponse.getReasonPhrase());
+        }
+        response = newResponse;
+        if (etag == null) {
+            etag = response.getHeaderField("ETag");
+        }
+        if (responsePosition > 0 && response.getStatusCode() != 206) {
+            // Server ignored the "Range" header, skip the bytes already received.
+            InputStream stream = response.getInputStream();
+            long toSkip = responsePosition;
+            while (toSkip > 0) {
+                long n = stream.skip(toSkip);
+                if (n <= 0) {
+                    throw new EOFException(url.toString());
+                }
+                toSkip -= n;
+            }
+        }
+    }
+
+    private void closeResponse() {
+        if (response != null) {
+            // The remaining body may be large, do not drain it.
+            response.abort();
+        }
+    }
+
+    private boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+    }
+}
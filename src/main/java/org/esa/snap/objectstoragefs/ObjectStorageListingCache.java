@@ -0,0 +1,263 @@
+package org.esa.snap.objectstoragefs;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Caches complete directory listings, keyed by prefix and delimiter.
+ * <p>
+ * A listing is served as is for the configured time to live. For the configured stale time
+ * after that, it is still served but should be refreshed in the background; later it is
+ * dropped. The cache holds at most the configured number of entries and evicts the least
+ * recently used listings first. Listings are only cached once they have been consumed
+ * completely, so that listings closed early or failing are never cached partially.
+ * <p>
+ * Any invalidation discards the results of all loads started before it, so that a load
+ * racing with a write cannot put the listing from before the write into the cache.
+ */
+class ObjectStorageListingCache {
+
+    private final long timeToLive;
+    private final long staleTime;
+    private final int maxEntries;
+    private final LinkedHashMap<ListingKey, Listing> listings;
+    private int entryCount;
+    private long generation;
+
+    ObjectStorageListingCache(ObjectStorageConfig config) {
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(config.getListCacheTtl());
+        this.staleTime = TimeUnit.MILLISECONDS.toNanos(config.getListCacheStaleTime());
+        this.maxEntries = config.getListCacheMaxEntries();
+        this.listings = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a cached listing that may still be served.
+     *
+     * @param prefix    The prefix
+     * @param delimiter The delimiter
+     * @return The listing, which may need a refresh, or {@code null}
+     */
+    synchronized Listing get(String prefix, String delimiter) {
+        ListingKey key = new ListingKey(prefix, delimiter);
+        Listing listing = listings.get(key);
+        if (listing == null) {
+            return null;
+        }
+        if (System.nanoTime() - listing.loadTime > timeToLive + staleTime) {
+            remove(key);
+            return null;
+        }
+        return listing;
+    }
+
+    /**
+     * Returns the attributes of an object or common prefix as found by a fresh cached listing of its parent.
+     *
+     * @param key       The key of the object or the common prefix
+     * @param delimiter The delimiter
+     * @return The attributes or {@code null} if not known
+     */
+    BasicFileAttributes getAttributes(String key, String delimiter) {
+        Listing listing = get(getParentPrefix(key, delimiter), delimiter);
+        if (listing == null || !listing.isFresh()) {
+            return null;
+        }
+        return listing.entriesByKey.get(key);
+    }
+
+    /**
+     * Returns the generation to be passed to {@link #put}.
+     *
+     * @return The number of invalidations so far
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a complete listing, unless it is too large or has been invalidated while it was loaded.
+     *
+     * @param prefix     The prefix
+     * @param delimiter  The delimiter
+     * @param entries    The entries of the listing
+     * @param generation The generation obtained before the listing was requested
+     */
+    synchronized void put(String prefix, String delimiter, List<BasicFileAttributes> entries, long generation) {
+        if (generation != this.generation || entries.size() > maxEntries) {
+            return;
+        }
+        ListingKey key = new ListingKey(prefix, delimiter);
+        remove(key);
+        listings.put(key, new Listing(entries, System.nanoTime()));
+        entryCount += entries.size();
+        Iterator<Listing> iterator = listings.values().iterator();
+        while (entryCount > maxEntries) {
+            entryCount -= iterator.next().entries.size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Marks a stale listing as being refreshed.
+     *
+     * @param listing The listing
+     * @return {@code false} if the listing is fresh or already being refreshed
+     */
+    synchronized boolean startRefresh(Listing listing) {
+        if (listing.isFresh() || listing.refreshing) {
+            return false;
+        }
+        listing.refreshing = true;
+        return true;
+    }
+
+    /**
+     * Allows another refresh of a listing whose refresh has failed.
+     *
+     * @param listing The listing
+     */
+    synchronized void endRefresh(Listing listing) {
+        listing.refreshing = false;
+    }
+
+    /**
+     * Drops the listing of the parent of the given key and all listings under the key. Used
+     * after the object with the given key, or the objects under it, have been changed.
+     *
+     * @param key The key of an object or a prefix, the empty key drops all listings
+     */
+    synchronized void invalidate(String key) {
+        generation++;
+        Iterator<Map.Entry<ListingKey, Listing>> iterator = listings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ListingKey, Listing> entry = iterator.next();
+            String prefix = entry.getKey().prefix;
+            String delimiter = entry.getKey().delimiter;
+            String dirPrefix = key.isEmpty() || key.endsWith(delimiter) ? key : key + delimiter;
+            if (prefix.startsWith(dirPrefix) || prefix.equals(getParentPrefix(key, delimiter))) {
+                entryCount -= entry.getValue().entries.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Passes the entries of a listing through and caches the listing once the returned stream
+     * has been consumed completely.
+     *
+     * @param prefix     The prefix
+     * @param delimiter  The delimiter
+     * @param entries    The stream of entries
+     * @param generation The generation obtained before the listing was requested
+     * @return The stream of entries
+     */
+    Stream<BasicFileAttributes> cacheOnCompletion(String prefix, String delimiter, Stream<BasicFileAttributes> entries, long generation) {
+        Iterator<BasicFileAttributes> iterator = entries.iterator();
+        Iterator<BasicFileAttributes> recordingIterator = new Iterator<BasicFileAttributes>() {
+            private List<BasicFileAttributes> recorded = new ArrayList<>();
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = iterator.hasNext();
+                if (!hasNext && recorded != null) {
+                    put(prefix, delimiter, recorded, generation);
+                    recorded = null;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public BasicFileAttributes next() {
+                BasicFileAttributes entry = iterator.next();
+                if (recorded != null) {
+                    recorded.add(entry);
+                    if (recorded.size() > maxEntries) {
+                        // Too large to be cached.
+                        recorded = null;
+                    }
+                }
+                return entry;
+            }
+        };
+        Spliterator<BasicFileAttributes> spliterator = Spliterators.spliteratorUnknownSize(recordingIterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(entries::close);
+    }
+
+    /**
+     * Returns the prefix listing the given key, i.e. the key up to and including its last delimiter, not counting a trailing one.
+     */
+    private static String getParentPrefix(String key, String delimiter) {
+        int end = key.endsWith(delimiter) ? key.length() - delimiter.length() : key.length();
+        int index = key.lastIndexOf(delimiter, end - 1);
+        return index < 0 ? "" : key.substring(0, index + delimiter.length());
+    }
+
+    private void remove(ListingKey key) {
+        Listing listing = listings.remove(key);
+        if (listing != null) {
+            entryCount -= listing.entries.size();
+        }
+    }
+
+    /**
+     * A cached listing.
+     */
+    class Listing {
+        final List<BasicFileAttributes> entries;
+        final Map<String, BasicFileAttributes> entriesByKey;
+        final long loadTime;
+        boolean refreshing;
+
+        Listing(List<BasicFileAttributes> entries, long loadTime) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.entriesByKey = new HashMap<>();
+            for (BasicFileAttributes entry : entries) {
+                entriesByKey.put(entry.fileKey().toString(), entry);
+            }
+            this.loadTime = loadTime;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - loadTime <= timeToLive;
+        }
+    }
+
+    private static class ListingKey {
+        final String prefix;
+        final String delimiter;
+
+        ListingKey(String prefix, String delimiter) {
+            this.prefix = prefix;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ListingKey)) {
+                return false;
+            }
+            ListingKey other = (ListingKey) o;
+            return prefix.equals(other.prefix) && delimiter.equals(other.delimiter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * prefix.hashCode() + delimiter.hashCode();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.esa.snap.objectstoragefs;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-capacity hash map from non-negative {@code long} keys to {@code int}
+ * values using open addressing with linear probing. Entries are stored in two
+ * primitive arrays, so neither boxing nor per-entry objects are needed.
+ * <p>
+ * This class is not thread-safe.
+ */
+class ObjectStorageLongIntMap {
+
+    static final int NO_VALUE = -1;
+
+    private static final long FREE_KEY = -1L;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * Creates a map.
+     *
+     * @param maxSize The maximum number of entries the map can hold
+     */
+    ObjectStorageLongIntMap(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        // Keep the load factor at or below 0.5 so that probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+        Arrays.fill(keys, FREE_KEY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value for the given key.
+     *
+     * @param key The key, must not be negative
+     * @return The value or {@link #NO_VALUE} if the map contains no entry for the key
+     */
+    int get(long key) {
+        int i = indexOf(key);
+        return keys[i] == key ? values[i] : NO_VALUE;
+    }
+
+    /**
+     * Sets the value for the given key.
+     *
+     * @param key   The key, must not be negative
+     * @param value The value
+     * @throws IllegalStateException If the map is full
+     */
+    void put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("key must not be negative");
+        }
+        int i = indexOf(key);
+        if (keys[i] != key) {
+            if (size == maxSize) {
+                throw new IllegalStateException("map is full");
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Removes the entry for the given key.
+     *
+     * @param key The key
+     * @return The removed value or {@link #NO_VALUE} if the map contained no entry for the key
+     */
+    int remove(long key) {
+        int i = indexOf(key);
+        if (keys[i] != key) {
+            return NO_VALUE;
+        }
+        int value = values[i];
+        // Backward-shift deletion: move entries of the following probe sequence into the gap,
+        // so that no tombstones are needed.
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == FREE_KEY) {
+                break;
+            }
+            int home = (int) mix(k) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE_KEY;
+        size--;
+        return value;
+    }
+
+    private int indexOf(long key) {
+        int i = (int) mix(key) & mask;
+        while (keys[i] != FREE_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Computes a well-distributed 64-bit hash of the given key using the
+     * finalization step of MurmurHash3. The map uses the low bits of the hash.
+     *
+     * @param key The key
+     * @return The hash
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,163 @@
+package org.esa.snap.objectstoragefs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A block cache that keeps blocks outside of the Java heap.
+ * <p>
+ * Blocks are stored in direct byte buffers, the <i>arenas</i>, which are carved
+ * into slots of the block size. Each arena belongs to a segment that is guarded
+ * by its own lock. A segment maps keys hashed from object key and block index to
+ * slots using a {@link ObjectStorageLongIntMap}, and evicts blocks using the
+ * CLOCK algorithm. Each slot records the 64-bit hash of its object key and its
+ * block index, so that blocks whose keys collide are told apart. Cached blocks
+ * create no objects on the Java heap, neither per block nor per object.
+ * <p>
+ * Note that the total capacity is limited by the JVM's maximum direct memory size,
+ * see the {@code -XX:MaxDirectMemorySize} option.
+ */
+class ObjectStorageOffHeapBlockCache extends ObjectStorageBlockCache {
+
+    private static final int MIN_SEGMENT_COUNT = 16;
+    private static final long MAX_ARENA_SIZE = 1 << 30;
+
+    private final Segment[] segments;
+
+    ObjectStorageOffHeapBlockCache(long capacity, int blockSize) {
+        super(capacity, blockSize);
+        if (blockSize > MAX_ARENA_SIZE) {
+            throw new IllegalArgumentException("blockSize must not be greater than " + MAX_ARENA_SIZE);
+        }
+        long slotCount = capacity / blockSize;
+        long maxSlotsPerArena = MAX_ARENA_SIZE / blockSize;
+        int segmentCount = (int) Math.max(Math.min(MIN_SEGMENT_COUNT, slotCount), (slotCount + maxSlotsPerArena - 1) / maxSlotsPerArena);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Distribute the remaining slots over the first segments.
+            int segmentSlotCount = (int) (slotCount / segmentCount + (i < slotCount % segmentCount ? 1 : 0));
+            segments[i] = new Segment(segmentSlotCount, blockSize);
+        }
+    }
+
+    @Override
+    protected boolean getBlock(String objectKey, long blockIndex, int blockOffset, byte[] array, int offset, int length) {
+        long objectHash = hash(objectKey);
+        long key = getKey(objectHash, blockIndex);
+        return getSegment(key).get(key, objectHash, blockIndex, blockOffset, array, offset, length);
+    }
+
+    @Override
+    protected boolean containsBlock(String objectKey, long blockIndex) {
+        long objectHash = hash(objectKey);
+        long key = getKey(objectHash, blockIndex);
+        return getSegment(key).contains(key, objectHash, blockIndex);
+    }
+
+    @Override
+    protected void putBlock(String objectKey, long blockIndex, byte[] data, int offset, int length) {
+        long objectHash = hash(objectKey);
+        long key = getKey(objectHash, blockIndex);
+        getSegment(key).put(key, objectHash, blockIndex, data, offset, length);
+    }
+
+    /**
+     * Computes a 64-bit hash of an object key without allocating.
+     */
+    static long hash(String objectKey) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < objectKey.length(); i++) {
+            hash = 31 * hash + objectKey.charAt(i);
+        }
+        return ObjectStorageLongIntMap.mix(hash);
+    }
+
+    /**
+     * Composes the non-negative key of a block from its object's hash and its index.
+     */
+    private static long getKey(long objectHash, long blockIndex) {
+        return ObjectStorageLongIntMap.mix(objectHash + blockIndex * 0x9e3779b97f4a7c15L) & Long.MAX_VALUE;
+    }
+
+    private Segment getSegment(long key) {
+        // The segment is selected by the upper hash bits, the segment's map uses the lower ones.
+        return segments[(int) ((ObjectStorageLongIntMap.mix(key) >>> 33) % segments.length)];
+    }
+
+    private static class Segment {
+        private final int slotSize;
+        private final int slotCount;
+        private final ByteBuffer arena;
+        private final ObjectStorageLongIntMap slotIndex;
+        private final long[] slotKeys;
+        private final long[] slotObjectHashes;
+        private final long[] slotBlockIndexes;
+        private final boolean[] slotReferenced;
+        private int usedSlotCount;
+        private int clockHand;
+
+        Segment(int slotCount, int slotSize) {
+            this.slotSize = slotSize;
+            this.slotCount = slotCount;
+            this.arena = ByteBuffer.allocateDirect(slotCount * slotSize);
+            this.slotIndex = new ObjectStorageLongIntMap(slotCount);
+            this.slotKeys = new long[slotCount];
+            this.slotObjectHashes = new long[slotCount];
+            this.slotBlockIndexes = new long[slotCount];
+            this.slotReferenced = new boolean[slotCount];
+        }
+
+        synchronized boolean get(long key, long objectHash, long blockIndex, int blockOffset, byte[] array, int offset, int length) {
+            int slot = findSlot(key, objectHash, blockIndex);
+            if (slot == ObjectStorageLongIntMap.NO_VALUE) {
+                return false;
+            }
+            slotReferenced[slot] = true;
+            arena.position(slot * slotSize + blockOffset);
+            arena.get(array, offset, length);
+            return true;
+        }
+
+        synchronized boolean contains(long key, long objectHash, long blockIndex) {
+            return findSlot(key, objectHash, blockIndex) != ObjectStorageLongIntMap.NO_VALUE;
+        }
+
+        synchronized void put(long key, long objectHash, long blockIndex, byte[] data, int offset, int length) {
+            // A block whose key collides with this one's is replaced.
+            int slot = slotIndex.get(key);
+            if (slot == ObjectStorageLongIntMap.NO_VALUE) {
+                slot = allocateSlot();
+                slotKeys[slot] = key;
+                slotIndex.put(key, slot);
+            }
+            slotObjectHashes[slot] = objectHash;
+            slotBlockIndexes[slot] = blockIndex;
+            slotReferenced[slot] = true;
+            arena.position(slot * slotSize);
+            arena.put(data, offset, length);
+        }
+
+        private int findSlot(long key, long objectHash, long blockIndex) {
+            int slot = slotIndex.get(key);
+            if (slot != ObjectStorageLongIntMap.NO_VALUE
+                && (slotObjectHashes[slot] != objectHash || slotBlockIndexes[slot] != blockIndex)) {
+                return ObjectStorageLongIntMap.NO_VALUE;
+            }
+            return slot;
+        }
+
+        private int allocateSlot() {
+            if (usedSlotCount < slotCount) {
+                return usedSlotCount++;
+            }
+            // CLOCK: evict the first slot not referenced since the hand passed it last.
+            while (slotReferenced[clockHand]) {
+                slotReferenced[clockHand] = false;
+                clockHand = (clockHand + 1) % slotCount;
+            }
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % slotCount;
+            slotIndex.remove(slotKeys[slot]);
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.esa.snap.objectstoragefs;
+
+import java.nio.file.OpenOption;
+
+/**
+ * Access hints that may be passed to {@link java.nio.file.Files#newByteChannel(java.nio.file.Path, OpenOption...)}
+ * for files of an {@link ObjectStorageFileSystem}. Without a hint, byte channels detect the access pattern
+ * from the positions and lengths of their reads.
+ */
+public enum ObjectStorageOpenOption implements OpenOption {
+    /**
+     * The file is mostly read from start to end: request large ranges and read ahead from the start.
+     */
+    SEQUENTIAL,
+    /**
+     * The file is read at scattered positions: request small ranges and do not read ahead.
+     */
+    RANDOM
+}
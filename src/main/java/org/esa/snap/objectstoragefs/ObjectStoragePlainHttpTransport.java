@@ -0,0 +1,477 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends HEAD requests and GET requests for byte ranges over plain HTTP on socket channels, so
+ * that the kernel copies response bodies straight into the direct buffers of readers.
+ * <p>
+ * Only requests to be sent without proxy are accepted, see {@link #accepts}. Responses that
+ * challenge for authentication, or whose body is not delimited by a Content-Length, are
+ * discarded, and the request is to be sent again by {@link HttpURLConnection}.
+ * <p>
+ * Connections whose responses have been read completely are kept idle for reuse, until the
+ * idle timeout expires. A selector per connection implements the read timeout and lets another
+ * thread abort a blocked read.
+ */
+class ObjectStoragePlainHttpTransport implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long idleTimeout;
+    private final int maxIdleConnections;
+    private final Map<String, ArrayDeque<ChannelConnection>> idleConnections;
+    private boolean closed;
+
+    /**
+     * @param connectTimeout     The connect timeout in milliseconds
+     * @param readTimeout        The read timeout in milliseconds
+     * @param idleTimeout        The time in milliseconds after which idle connections are closed
+     * @param maxIdleConnections The maximum number of idle connections per host
+     */
+    ObjectStoragePlainHttpTransport(int connectTimeout, int readTimeout, long idleTimeout, int maxIdleConnections) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+        this.maxIdleConnections = maxIdleConnections;
+        this.idleConnections = new HashMap<>();
+    }
+
+    /**
+     * Tells whether a request can be sent by this transport: a HEAD request, or a GET request
+     * with a Range header field, to a plain HTTP URL for which no proxy is selected.
+     */
+    static boolean accepts(String method, URL url, Map<String, String> headers) {
+        if (!url.getProtocol().equalsIgnoreCase("http")
+            || !(method.equals("HEAD") || method.equals("GET") && headers.containsKey("Range"))) {
+            return false;
+        }
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) {
+            return true;
+        }
+        try {
+            for (Proxy proxy : proxySelector.select(url.toURI())) {
+                if (proxy.type() != Proxy.Type.DIRECT) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a request accepted by {@link #accepts}.
+     *
+     * @param method   The request method
+     * @param url      The URL
+     * @param headers  Additional request header fields
+     * @param permits  The permits of the host, one of which has been taken for the response
+     * @param exchange The exchange to attach the connection to, or {@code null}
+     * @return The response, or {@code null} if the request must be sent by {@link HttpURLConnection}
+     * @throws IOException If an I/O error occurs
+     */
+    ObjectStorageResponse send(String method, URL url, Map<String, String> headers, Semaphore permits,
+                               ObjectStorageHedging.Exchange exchange) throws IOException {
+        String endpoint = getEndpoint(url);
+        byte[] request = formatRequest(method, url, headers);
+        while (true) {
+            ChannelConnection connection = takeIdleConnection(endpoint);
+            boolean reused = connection != null;
+            if (connection == null) {
+                connection = connect(url);
+            }
+            try {
+                if (exchange != null) {
+                    exchange.attach(connection::disconnect);
+                }
+                connection.send(request);
+                return connection.readResponse(method, permits);
+            } catch (IOException | RuntimeException e) {
+                connection.disconnect();
+                if (reused && !connection.received && (exchange == null || !exchange.isAborted())) {
+                    // The server has closed the idle connection in the meantime.
+                    continue;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Opens connections to the endpoint of the given URL and keeps them idle.
+     *
+     * @param url   The URL
+     * @param count The number of connections
+     * @throws IOException If an I/O error occurs
+     */
+    void prewarm(URL url, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            putIdleConnection(connect(url));
+        }
+    }
+
+    /**
+     * Closes the idle connections. Connections in use are closed when their responses are closed.
+     */
+    @Override
+    public void close() {
+        List<ChannelConnection> connections = new ArrayList<>();
+        synchronized (idleConnections) {
+            closed = true;
+            for (ArrayDeque<ChannelConnection> idle : idleConnections.values()) {
+                connections.addAll(idle);
+            }
+            idleConnections.clear();
+        }
+        for (ChannelConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    private ChannelConnection takeIdleConnection(String endpoint) {
+        List<ChannelConnection> expired = new ArrayList<>();
+        ChannelConnection connection = null;
+        synchronized (idleConnections) {
+            ArrayDeque<ChannelConnection> idle = idleConnections.get(endpoint);
+            if (idle != null) {
+                removeExpired(idle, expired);
+                // The most recently used connection is the least likely to be closed by the server.
+                connection = idle.pollLast();
+            }
+        }
+        for (ChannelConnection expiredConnection : expired) {
+            expiredConnection.disconnect();
+        }
+        return connection;
+    }
+
+    private void putIdleConnection(ChannelConnection connection) {
+        List<ChannelConnection> expired = new ArrayList<>();
+        synchronized (idleConnections) {
+            ArrayDeque<ChannelConnection> idle = idleConnections.computeIfAbsent(connection.endpoint, key -> new ArrayDeque<>());
+            removeExpired(idle, expired);
+            if (closed || idle.size() >= maxIdleConnections) {
+                expired.add(connection);
+            } else {
+                connection.lastUseTime = System.nanoTime();
+                idle.addLast(connection);
+            }
+        }
+        for (ChannelConnection expiredConnection : expired) {
+            expiredConnection.disconnect();
+        }
+    }
+
+    private void removeExpired(ArrayDeque<ChannelConnection> idle, List<ChannelConnection> expired) {
+        long expiry = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        Iterator<ChannelConnection> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            ChannelConnection connection = iterator.next();
+            if (connection.lastUseTime - expiry > 0) {
+                break;
+            }
+            iterator.remove();
+            expired.add(connection);
+        }
+    }
+
+    private ChannelConnection connect(URL url) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setKeepAlive(true);
+            channel.socket().connect(new InetSocketAddress(url.getHost(), getPort(url)), connectTimeout);
+            return new ChannelConnection(getEndpoint(url), channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String getEndpoint(URL url) {
+        return url.getHost().toLowerCase() + ":" + getPort(url);
+    }
+
+    private static int getPort(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    private static byte[] formatRequest(String method, URL url, Map<String, String> headers) {
+        String file = url.getFile();
+        StringBuilder request = new StringBuilder();
+        request.append(method).append(' ').append(file.startsWith("/") ? file : "/" + file).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            request.append(':').append(url.getPort());
+        }
+        request.append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+        return request.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * A connection over a non-blocking socket channel.
+     */
+    private class ChannelConnection implements ObjectStorageResponse.Connection {
+        final String endpoint;
+        final SocketChannel channel;
+        final Selector selector;
+        final SelectionKey key;
+        final Input input;
+        long lastUseTime;
+        boolean keepAlive;
+        boolean received;
+
+        ChannelConnection(String endpoint, SocketChannel channel) throws IOException {
+            this.endpoint = endpoint;
+            this.channel = channel;
+            channel.configureBlocking(false);
+            this.selector = Selector.open();
+            try {
+                this.key = channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException | RuntimeException e) {
+                selector.close();
+                throw e;
+            }
+            this.input = new Input(this);
+        }
+
+        void send(byte[] data) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) {
+                        await(SelectionKey.OP_WRITE);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                throw new SocketException("connection closed");
+            }
+        }
+
+        /**
+         * Reads at least one byte into the given buffer, blocking until data is available.
+         *
+         * @return The number of bytes read or -1 at the end of the stream
+         */
+        int receive(ByteBuffer dst) throws IOException {
+            try {
+                while (true) {
+                    int n = channel.read(dst);
+                    if (n != 0) {
+                        received = true;
+                        return n;
+                    }
+                    await(SelectionKey.OP_READ);
+                }
+            } catch (ClosedChannelException e) {
+                throw new SocketException("connection closed");
+            }
+        }
+
+        private void await(int operation) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeout);
+            try {
+                key.interestOps(operation);
+                while (true) {
+                    long timeout = 0;
+                    if (readTimeout > 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new SocketTimeoutException(operation == SelectionKey.OP_READ ? "read timed out" : "write timed out");
+                        }
+                        timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+                    }
+                    int readyCount = selector.select(timeout);
+                    selector.selectedKeys().clear();
+                    if (readyCount > 0) {
+                        return;
+                    }
+                    if (!channel.isOpen()) {
+                        throw new SocketException("connection closed");
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            } catch (ClosedSelectorException | CancelledKeyException e) {
+                throw new SocketException("connection closed");
+            }
+        }
+
+        ObjectStorageResponse readResponse(String method, Semaphore permits) throws IOException {
+            while (true) {
+                String statusLine = ObjectStorageConnectionPool.readLine(input);
+                String[] parts = statusLine.split(" ", 3);
+                int code = -1;
+                if (parts.length >= 2 && parts[0].startsWith("HTTP/")) {
+                    try {
+                        code = Integer.parseInt(parts[1]);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                if (code < 0) {
+                    throw new IOException("invalid status line: " + statusLine);
+                }
+                Map<String, String> headerFields = new HashMap<>();
+                for (String line = ObjectStorageConnectionPool.readLine(input); !line.isEmpty();
+                     line = ObjectStorageConnectionPool.readLine(input)) {
+                    int colonIndex = line.indexOf(':');
+                    if (colonIndex > 0) {
+                        String name = line.substring(0, colonIndex).trim().toLowerCase();
+                        String value = line.substring(colonIndex + 1).trim();
+                        headerFields.merge(name, value, (v1, v2) -> v1 + ", " + v2);
+                    }
+                }
+                if (code >= 100 && code < 200) {
+                    // Interim response, the final response follows.
+                    continue;
+                }
+                boolean hasBody = !method.equals("HEAD") && code != 204 && code != 304;
+                if (code == 401 || code == 407
+                    || hasBody && (headerFields.containsKey("transfer-encoding") || !headerFields.containsKey("content-length"))) {
+                    disconnect();
+                    return null;
+                }
+                String connectionField = headerFields.get("connection");
+                keepAlive = parts[0].equals("HTTP/1.1")
+                        ? !"close".equalsIgnoreCase(connectionField)
+                        : "keep-alive".equalsIgnoreCase(connectionField);
+                return new ObjectStorageResponse(this, code, parts.length > 2 ? parts[2] : "", headerFields,
+                                                 hasBody ? input : null, permits);
+            }
+        }
+
+        @Override
+        public void release() {
+            if (keepAlive && input.available() == 0 && channel.isOpen()) {
+                received = false;
+                putIdleConnection(this);
+            } else {
+                disconnect();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The buffered input of a connection. Reads that are at least as large as the buffer bypass it.
+     */
+    private static class Input extends InputStream implements ReadableByteChannel {
+        private final ChannelConnection connection;
+        private final ByteBuffer buffer;
+
+        Input(ChannelConnection connection) {
+            this.connection = connection;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                if (dst.remaining() >= buffer.capacity()) {
+                    return connection.receive(dst);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(dst.remaining(), buffer.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + n);
+            dst.put(buffer);
+            buffer.limit(limit);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return connection.channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int n;
+            try {
+                n = connection.receive(buffer);
+            } finally {
+                buffer.flip();
+            }
+            return n >= 0;
+        }
+    }
+}
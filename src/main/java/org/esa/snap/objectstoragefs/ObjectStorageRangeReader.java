@@ -0,0 +1,23 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Reads ranges of bytes of objects.
+ */
+interface ObjectStorageRangeReader {
+    /**
+     * Reads a range of bytes of the object at the given URL.
+     *
+     * @param url      The object URL
+     * @param position The position of the first byte within the object
+     * @param array    The destination array
+     * @param offset   The offset within the destination array
+     * @param length   The number of bytes to read
+     * @throws EOFException If the end of the object is reached before {@code length} bytes have been read
+     * @throws IOException  If some other I/O error occurs
+     */
+    void readRange(URL url, long position, byte[] array, int offset, int length) throws IOException;
+}
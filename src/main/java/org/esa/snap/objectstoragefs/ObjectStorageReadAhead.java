@@ -0,0 +1,167 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An ordered window of buffers that are filled by concurrent ranged requests
+ * ahead of the current read position of a byte channel. The number of buffers
+ * kept ahead is tuned by the channel's {@link ObjectStorageAccessPattern}.
+ */
+class ObjectStorageReadAhead {
+
+    private final ObjectStorageFileSystem fileSystem;
+    private final URL url;
+    private final long contentLength;
+    private final int bufferSize;
+    private final int windowSize;
+    private final int concurrency;
+    private final ObjectStorageAccessPattern accessPattern;
+    private final ArrayDeque<Buffer> window;
+    private long nextPosition;
+
+    ObjectStorageReadAhead(ObjectStorageFileSystem fileSystem,
+                           URL url,
+                           long contentLength,
+                           int bufferSize,
+                           int windowSize,
+                           int concurrency,
+                           ObjectStorageAccessPattern accessPattern) {
+        this.fileSystem = fileSystem;
+        this.url = url;
+        this.contentLength = contentLength;
+        this.bufferSize = bufferSize;
+        this.windowSize = windowSize;
+        this.concurrency = Math.min(concurrency, windowSize);
+        this.accessPattern = accessPattern;
+        this.window = new ArrayDeque<>(windowSize);
+        this.nextPosition = 0;
+    }
+
+    /**
+     * Reads exactly {@code length} bytes starting at the given position.
+     *
+     * @param position The position within the object
+     * @param array    The destination array
+     * @param offset   The offset within the destination array
+     * @param length   The number of bytes to read
+     * @throws EOFException If the end of the object is reached before {@code length} bytes have been read
+     * @throws IOException  If some other I/O error occurs
+     */
+    void read(long position, byte[] array, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position >= contentLength) {
+                throw new EOFException(url.toString());
+            }
+            Buffer buffer = seek(position);
+            byte[] data;
+            try {
+                data = buffer.get();
+            } catch (IOException e) {
+                reset(position);
+                throw e;
+            }
+            int start = (int) (position - buffer.position);
+            int n = Math.min(length, data.length - start);
+            System.arraycopy(data, start, array, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+            if (start + n == data.length) {
+                window.pollFirst();
+                fill();
+            }
+        }
+    }
+
+    /**
+     * Cancels all pending requests.
+     */
+    void close() {
+        reset(contentLength);
+    }
+
+    private Buffer seek(long position) {
+        while (!window.isEmpty()) {
+            Buffer first = window.peekFirst();
+            if (position < first.position) {
+                break;
+            }
+            if (position < first.position + first.length) {
+                fill();
+                return first;
+            }
+            window.pollFirst().future.cancel(true);
+        }
+        reset(position);
+        fill();
+        return window.peekFirst();
+    }
+
+    private void reset(long position) {
+        for (Buffer buffer : window) {
+            buffer.future.cancel(true);
+        }
+        window.clear();
+        nextPosition = position;
+    }
+
+    private void fill() {
+        int depth = accessPattern.getPrefetchDepth(bufferSize, windowSize);
+        while (window.size() < depth && nextPosition < contentLength && getNumInFlight() < concurrency) {
+            long position = nextPosition;
+            int length = (int) Math.min(bufferSize, contentLength - position);
+            Future<byte[]> future = fileSystem.getExecutor().submit(() -> {
+                byte[] data = new byte[length];
+                long startTime = System.nanoTime();
+                fileSystem.readObjectRange(url, contentLength, position, data, 0, length);
+                accessPattern.recordFetch(System.nanoTime() - startTime);
+                return data;
+            });
+            window.addLast(new Buffer(position, length, future));
+            nextPosition += length;
+        }
+    }
+
+    private int getNumInFlight() {
+        int numInFlight = 0;
+        for (Buffer buffer : window) {
+            if (!buffer.future.isDone()) {
+                numInFlight++;
+            }
+        }
+        return numInFlight;
+    }
+
+    private static class Buffer {
+        final long position;
+        final int length;
+        final Future<byte[]> future;
+
+        Buffer(long position, int length, Future<byte[]> future) {
+            this.position = position;
+            this.length = length;
+            this.future = future;
+        }
+
+        byte[] get() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+}
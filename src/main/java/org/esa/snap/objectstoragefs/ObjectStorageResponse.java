@@ -0,0 +1,416 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The response to an HTTP request sent through an {@link ObjectStorageConnectionPool}.
+ * <p>
+ * A response occupies its connection, and a permit of the connection pool's limit of
+ * connections per host, until it is closed. Closing a response whose body has been
+ * read completely, or whose remaining body is small enough to be skipped, leaves the
+ * connection to be reused. Otherwise the connection is closed.
+ * A response may be aborted by another thread while it is being read.
+ */
+public class ObjectStorageResponse implements Closeable {
+
+    private static final int DRAIN_LIMIT = 64 * 1024;
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final Connection connection;
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final Map<String, String> headerFields;
+    private final Body body;
+    private final Semaphore connectionPermits;
+    private final AtomicBoolean closed;
+
+    ObjectStorageResponse(HttpURLConnection connection,
+                          int statusCode,
+                          String reasonPhrase,
+                          Map<String, String> headerFields,
+                          boolean hasBody) throws IOException {
+        this(connection, statusCode, reasonPhrase, headerFields, hasBody, null);
+    }
+
+    /**
+     * @param connectionPermits The permits of the connection's host, one of which is released
+     *                          when the response is closed, or {@code null}
+     */
+    ObjectStorageResponse(HttpURLConnection connection,
+                          int statusCode,
+                          String reasonPhrase,
+                          Map<String, String> headerFields,
+                          boolean hasBody,
+                          Semaphore connectionPermits) throws IOException {
+        this(new UrlConnection(connection), statusCode, reasonPhrase, headerFields, hasBody, connectionPermits);
+    }
+
+    private ObjectStorageResponse(UrlConnection connection,
+                                  int statusCode,
+                                  String reasonPhrase,
+                                  Map<String, String> headerFields,
+                                  boolean hasBody,
+                                  Semaphore connectionPermits) throws IOException {
+        this(connection, statusCode, reasonPhrase, headerFields,
+             hasBody && statusCode != 204 && statusCode != 304 ? connection.openStream(statusCode) : null,
+             connectionPermits);
+    }
+
+    /**
+     * @param stream            The stream of the body, or {@code null} if there is no body. If it is a
+     *                          {@link ReadableByteChannel}, reads into direct buffers use it.
+     * @param connectionPermits The permits of the connection's host, one of which is released
+     *                          when the response is closed, or {@code null}
+     */
+    ObjectStorageResponse(Connection connection,
+                          int statusCode,
+                          String reasonPhrase,
+                          Map<String, String> headerFields,
+                          InputStream stream,
+                          Semaphore connectionPermits) {
+        this.connection = connection;
+        this.connectionPermits = connectionPermits;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headerFields = headerFields;
+        this.closed = new AtomicBoolean();
+        this.body = new Body(stream, stream != null ? getContentLength() : 0);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    /**
+     * Tells whether the status code signals success, i.e. is in the range 200 to 299.
+     *
+     * @return {@code true} if the request succeeded
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * Returns the value of the named header field.
+     *
+     * @param name The case-insensitive header field name
+     * @return The value or {@code null} if the header field is not present
+     */
+    public String getHeaderField(String name) {
+        return headerFields.get(name.toLowerCase());
+    }
+
+    /**
+     * Returns the value of the Content-Length header field.
+     *
+     * @return The content length or -1 if not known
+     */
+    public long getContentLength() {
+        String value = getHeaderField("Content-Length");
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the complete length of the object given by the Content-Range header field,
+     * which is present in responses to range requests.
+     *
+     * @return The complete length or -1 if not known
+     */
+    public long getCompleteLength() {
+        String value = getHeaderField("Content-Range");
+        if (value != null) {
+            int slashIndex = value.lastIndexOf('/');
+            if (slashIndex >= 0) {
+                try {
+                    return Long.parseLong(value.substring(slashIndex + 1).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a stream that reads the response body. Closing the stream closes this response.
+     *
+     * @return The body stream
+     */
+    public InputStream getInputStream() {
+        return body;
+    }
+
+    /**
+     * Reads body bytes into the given buffer.
+     *
+     * @param dst The buffer
+     * @return The number of bytes read, at least one if {@code dst} has remaining space, or -1 at the end of the body
+     * @throws IOException If an I/O error occurs
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        return body.read(dst);
+    }
+
+    /**
+     * Closes this response and releases its connection.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        boolean reusable;
+        try {
+            reusable = body.drain(DRAIN_LIMIT);
+        } catch (IOException e) {
+            reusable = false;
+        }
+        if (reusable) {
+            try {
+                connection.release();
+            } catch (IOException e) {
+                connection.disconnect();
+            }
+        } else {
+            connection.disconnect();
+        }
+        releasePermit();
+    }
+
+    /**
+     * Closes this response and its connection without reading the remaining body.
+     */
+    public void abort() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        connection.disconnect();
+        releasePermit();
+    }
+
+    Semaphore getConnectionPermits() {
+        return connectionPermits;
+    }
+
+    private void releasePermit() {
+        if (connectionPermits != null) {
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * The connection a response is received on.
+     */
+    interface Connection {
+        /**
+         * Leaves the connection to be reused, once the response body has been read completely.
+         *
+         * @throws IOException If an I/O error occurs
+         */
+        void release() throws IOException;
+
+        /**
+         * Closes the connection, which makes a thread blocked in it fail.
+         */
+        void disconnect();
+    }
+
+    /**
+     * A connection of the JRE, which is reused through its keep-alive cache.
+     */
+    private static class UrlConnection implements Connection {
+        private final HttpURLConnection connection;
+        private InputStream stream;
+
+        UrlConnection(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        InputStream openStream(int statusCode) throws IOException {
+            stream = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return stream;
+        }
+
+        @Override
+        public void release() throws IOException {
+            // Closing the completely read stream keeps the connection alive.
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            connection.disconnect();
+        }
+    }
+
+    private class Body extends InputStream {
+        final InputStream stream;
+        long remaining;
+        byte[] transferBuffer;
+
+        /**
+         * @param stream The stream of the body, or {@code null} if there is no body
+         * @param length The length of the body, or -1 if it is delimited by its end
+         */
+        Body(InputStream stream, long length) {
+            this.stream = stream;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed.get()) {
+                throw new IOException("response is closed");
+            }
+            if (stream == null || remaining == 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = stream.read(b, off, remaining >= 0 ? (int) Math.min(len, remaining) : len);
+            if (n < 0) {
+                if (remaining > 0) {
+                    throw new SocketException("unexpected end of response body");
+                }
+                remaining = 0;
+                return -1;
+            }
+            if (remaining > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        int read(ByteBuffer dst) throws IOException {
+            if (!dst.hasRemaining()) {
+                return closed.get() || stream == null || remaining == 0 ? -1 : 0;
+            }
+            if (dst.hasArray()) {
+                int n = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+                return n;
+            }
+            if (stream instanceof ReadableByteChannel) {
+                return readChannel((ReadableByteChannel) stream, dst);
+            }
+            if (transferBuffer == null) {
+                transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+            }
+            int n = read(transferBuffer, 0, Math.min(dst.remaining(), transferBuffer.length));
+            if (n > 0) {
+                dst.put(transferBuffer, 0, n);
+            }
+            return n;
+        }
+
+        private int readChannel(ReadableByteChannel channel, ByteBuffer dst) throws IOException {
+            if (closed.get()) {
+                throw new IOException("response is closed");
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (remaining > 0 && remaining < dst.remaining()) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            int n;
+            try {
+                n = channel.read(dst);
+            } finally {
+                dst.limit(limit);
+            }
+            if (n < 0) {
+                if (remaining > 0) {
+                    throw new SocketException("unexpected end of response body");
+                }
+                remaining = 0;
+                return -1;
+            }
+            if (remaining > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed.get() || stream == null || remaining == 0) {
+                return 0;
+            }
+            int available = stream.available();
+            return remaining > 0 ? (int) Math.min(available, remaining) : available;
+        }
+
+        /**
+         * Skips the remaining body.
+         *
+         * @param limit The maximum number of bytes to skip
+         * @return {@code true} if the end of the body has been reached
+         * @throws IOException If an I/O error occurs
+         */
+        boolean drain(long limit) throws IOException {
+            if (stream == null || remaining == 0) {
+                return true;
+            }
+            if (remaining > limit) {
+                return false;
+            }
+            byte[] buffer = new byte[8192];
+            long count = 0;
+            while (count <= limit) {
+                // The stream may continue past the body when the connection is kept alive.
+                int n = stream.read(buffer, 0, remaining >= 0 ? (int) Math.min(buffer.length, remaining) : buffer.length);
+                if (n < 0) {
+                    if (remaining > 0) {
+                        throw new SocketException("unexpected end of response body");
+                    }
+                    return true;
+                }
+                count += n;
+                if (remaining > 0) {
+                    remaining -= n;
+                    if (remaining == 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            ObjectStorageResponse.this.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether failed requests are retried and how long to wait before a retry.
+ * <p>
+ * Only failures known to be temporary are retried: timeouts, refused connections, connections
+ * reset or closed by the server, including responses ending prematurely, and the HTTP status
+ * codes 408, 429 and 5xx. Anything else, e.g. unknown hosts, malformed URLs, TLS handshake
+ * failures, missing objects or reaching the end of an object, signalled by an
+ * {@link EOFException}, is not. The delay before the n-th retry is chosen at random between
+ * zero and the initial delay times 2<sup>n</sup>, bounded by the maximum delay ("full jitter"),
+ * so that many clients failing at the same time do not retry at the same time.
+ * <p>
+ * Callers resume interrupted transfers from the first byte not yet received.
+ */
+public class ObjectStorageRetryPolicy {
+
+    /**
+     * A request, including the processing of its response, that may be repeated.
+     */
+    public interface Request<T> {
+        T send() throws IOException;
+    }
+
+    private final int maxRetries;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * Creates a retry policy.
+     *
+     * @param maxRetries   The maximum number of retries of a request, zero disables retries
+     * @param initialDelay The maximum delay in milliseconds before the first retry
+     * @param maxDelay     The maximum delay in milliseconds before any retry
+     */
+    public ObjectStorageRetryPolicy(int maxRetries, long initialDelay, long maxDelay) {
+        this.maxRetries = maxRetries;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Creates the retry policy configured for a file system.
+     *
+     * @param config The file system configuration
+     */
+    public ObjectStorageRetryPolicy(ObjectStorageConfig config) {
+        this(config.getMaxRetries(), config.getRetryInitialDelay(), config.getRetryMaxDelay());
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sends a request, repeating it while it fails and may be retried.
+     *
+     * @param request The request
+     * @return The request's result
+     * @throws IOException If the request fails and may not be retried
+     */
+    public <T> T execute(Request<T> request) throws IOException {
+        for (int retryCount = 0; ; retryCount++) {
+            try {
+                return request.send();
+            } catch (IOException e) {
+                if (!canRetry(e, retryCount)) {
+                    throw e;
+                }
+            }
+            backoff(retryCount);
+        }
+    }
+
+    /**
+     * Tells whether a request that failed with the given exception is retried.
+     *
+     * @param e          The failure
+     * @param retryCount The number of retries already done
+     * @return {@code true} if the request is retried
+     */
+    public boolean canRetry(IOException e, int retryCount) {
+        return retryCount < maxRetries && isRetryable(e);
+    }
+
+    /**
+     * Tells whether the given failure may be temporary.
+     *
+     * @param e The failure
+     * @return {@code true} if a retry may succeed
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof ObjectStorageHttpException) {
+            int statusCode = ((ObjectStorageHttpException) e).getStatusCode();
+            return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+        }
+        // Socket exceptions include ConnectException, connection resets and premature ends of responses.
+        return e instanceof SocketTimeoutException || e instanceof SocketException;
+    }
+
+    /**
+     * Returns the random delay before a retry.
+     *
+     * @param retryCount The number of retries already done
+     * @return The delay in milliseconds
+     */
+    public long getDelay(int retryCount) {
+        long delay = initialDelay << Math.min(retryCount, 30);
+        if (delay <= 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+        return delay > 0 ? ThreadLocalRandom.current().nextLong(delay + 1) : 0;
+    }
+
+    /**
+     * Waits before a retry.
+     *
+     * @param retryCount The number of retries already done
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public void backoff(int retryCount) throws InterruptedIOException {
+        try {
+            Thread.sleep(getDelay(retryCount));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
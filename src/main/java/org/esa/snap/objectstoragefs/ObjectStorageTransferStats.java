@@ -0,0 +1,103 @@
+package org.esa.snap.objectstoragefs;
+
+/**
+ * Measures the latency of requests and the bandwidth of response transfers of a file system.
+ * Recent measurements are weighted more than older ones, so that the estimates follow
+ * changing network conditions.
+ * <p>
+ * The estimates decide whether an open response is read on to reach a position ahead of it,
+ * or a new request is sent: skipping costs the time to transfer the bytes in between, a new
+ * request costs its latency.
+ */
+public class ObjectStorageTransferStats {
+
+    private static final double SMOOTHING = 0.25;
+
+    private long requestCount;
+    private long transferredBytes;
+    private double latencyNanos;
+    private double recentBytes;
+    private double recentNanos;
+
+    ObjectStorageTransferStats() {
+        this.latencyNanos = -1;
+    }
+
+    /**
+     * Records the time between sending a request and receiving its response header.
+     *
+     * @param nanos The time in nanoseconds
+     */
+    synchronized void recordLatency(long nanos) {
+        requestCount++;
+        latencyNanos = latencyNanos < 0 ? nanos : latencyNanos + SMOOTHING * (nanos - latencyNanos);
+    }
+
+    /**
+     * Records the transfer of response body bytes.
+     *
+     * @param length The number of bytes transferred
+     * @param nanos  The time in nanoseconds spent waiting for the bytes
+     */
+    synchronized void recordTransfer(long length, long nanos) {
+        if (length <= 0) {
+            return;
+        }
+        transferredBytes += length;
+        // Short transfers served from socket buffers take almost no time, so the bandwidth is
+        // the ratio of decaying sums rather than an average of the transfers' rates.
+        recentBytes = (1 - SMOOTHING) * recentBytes + length;
+        recentNanos = (1 - SMOOTHING) * recentNanos + Math.max(0, nanos);
+    }
+
+    /**
+     * @return The number of requests sent
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return The number of response body bytes transferred
+     */
+    public synchronized long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * @return The recent latency of requests in milliseconds, or -1 if no request has been sent yet
+     */
+    public synchronized double getLatency() {
+        return latencyNanos < 0 ? -1 : latencyNanos / 1e6;
+    }
+
+    /**
+     * @return The recent bandwidth of transfers in bytes per second, or -1 if unknown
+     */
+    public synchronized double getBandwidth() {
+        return recentNanos > 0 ? recentBytes / recentNanos * 1e9 : -1;
+    }
+
+    /**
+     * Returns the maximum number of bytes to skip on an open response to reach a position ahead
+     * of it: the bytes transferred in the time a new request takes, i.e. the bandwidth-delay product.
+     *
+     * @param minDistance The distance returned as long as the bandwidth or the latency is unknown, and the minimum distance
+     * @return The maximum skip distance
+     */
+    synchronized long getMaxSkipDistance(long minDistance) {
+        if (latencyNanos < 0 || recentNanos <= 0) {
+            return minDistance;
+        }
+        double distance = recentBytes / recentNanos * latencyNanos;
+        return (long) Math.max(minDistance, Math.min(Long.MAX_VALUE / 2, distance));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "requests: " + requestCount
+               + ", bytes: " + transferredBytes
+               + ", latency: " + String.format("%.1f", getLatency()) + " ms"
+               + ", bandwidth: " + String.format("%.0f", getBandwidth()) + " B/s";
+    }
+}
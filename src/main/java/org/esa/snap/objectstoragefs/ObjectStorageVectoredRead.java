@@ -0,0 +1,311 @@
+package org.esa.snap.objectstoragefs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a set of byte ranges of one object. Ranges separated by at most a given gap are
+ * coalesced into spans, each span is fetched by one ranged request, and the spans are
+ * fetched concurrently. Optionally, all spans are requested by a single request answered
+ * with a {@code multipart/byteranges} response. The bytes are scattered into the buffers
+ * given for the ranges.
+ */
+class ObjectStorageVectoredRead {
+
+    private final ObjectStorageFileSystem fileSystem;
+    private final URL url;
+    private final long contentLength;
+    private final long maxGap;
+    private final long maxSpanSize;
+    private final boolean multipart;
+
+    /**
+     * Creates a vectored read.
+     *
+     * @param fileSystem    The file system
+     * @param url           The object URL
+     * @param contentLength The object's size in bytes, or -1 if unknown, in which case the caches are bypassed
+     */
+    ObjectStorageVectoredRead(ObjectStorageFileSystem fileSystem, URL url, long contentLength) {
+        ObjectStorageConfig config = fileSystem.getConfig();
+        this.fileSystem = fileSystem;
+        this.url = url;
+        this.contentLength = contentLength;
+        this.maxGap = config.getRangeCoalesceGap();
+        this.maxSpanSize = Math.min(Integer.MAX_VALUE - 8, Math.max(config.getRangeRequestMaxSize(), maxGap));
+        this.multipart = config.isMultipartRangeRequests()
+                         && fileSystem.getBlockCache() == null
+                         && fileSystem.getDiskCache() == null;
+    }
+
+    /**
+     * Fills the remaining bytes of each buffer with the bytes of the object starting at the
+     * corresponding position.
+     *
+     * @param positions The positions of the ranges within the object
+     * @param buffers   The destination buffers, their remaining bytes give the lengths of the ranges
+     * @throws EOFException If a range exceeds the end of the object
+     * @throws IOException  If some other I/O error occurs
+     */
+    void read(long[] positions, ByteBuffer[] buffers) throws IOException {
+        if (positions.length != buffers.length) {
+            throw new IllegalArgumentException("number of positions and buffers differ");
+        }
+        int[] lengths = new int[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException("negative position");
+            }
+            lengths[i] = buffers[i].remaining();
+            if (contentLength >= 0 && positions[i] + lengths[i] > contentLength) {
+                throw new EOFException(url.toString());
+            }
+        }
+        List<Span> spans = coalesce(positions, lengths, maxGap, maxSpanSize);
+        if (multipart && spans.size() > 1) {
+            boolean[] done = readMultipart(spans, positions, lengths, buffers);
+            for (int i = 0; i < done.length; i++) {
+                if (done[i]) {
+                    lengths[i] = 0;
+                }
+            }
+            spans = coalesce(positions, lengths, maxGap, maxSpanSize);
+        }
+        readSpans(spans, positions, buffers);
+    }
+
+    /**
+     * Sorts the given ranges and merges ranges separated by at most {@code maxGap} bytes
+     * into spans of at most {@code maxSpanSize} bytes. Empty ranges are not included.
+     *
+     * @param positions   The positions of the ranges
+     * @param lengths     The lengths of the ranges
+     * @param maxGap      The maximum number of bytes between merged ranges
+     * @param maxSpanSize The maximum size of a span that contains more than one range
+     * @return The spans ordered by position
+     */
+    static List<Span> coalesce(long[] positions, int[] lengths, long maxGap, long maxSpanSize) {
+        Integer[] order = new Integer[positions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Long.compare(positions[i1], positions[i2]));
+        List<Span> spans = new ArrayList<>();
+        Span span = null;
+        for (int i : order) {
+            if (lengths[i] == 0) {
+                continue;
+            }
+            long end = positions[i] + lengths[i];
+            if (span != null
+                && positions[i] - span.end <= maxGap
+                && Math.max(end, span.end) - span.start <= maxSpanSize) {
+                span.end = Math.max(end, span.end);
+                span.ranges.add(i);
+            } else {
+                span = new Span(positions[i], end);
+                span.ranges.add(i);
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    private void readSpans(List<Span> spans, long[] positions, ByteBuffer[] buffers) throws IOException {
+        if (spans.isEmpty()) {
+            return;
+        }
+        if (fileSystem.isIoThread()) {
+            // Waiting on the I/O executor for the other spans could exhaust it.
+            for (Span span : spans) {
+                readSpan(span, positions, buffers);
+            }
+            return;
+        }
+        // The first span is read by the calling thread, the others concurrently.
+        List<Future<Void>> futures = new ArrayList<>(spans.size() - 1);
+        for (Span span : spans.subList(1, spans.size())) {
+            futures.add(fileSystem.getExecutor().submit(() -> {
+                readSpan(span, positions, buffers);
+                return null;
+            }));
+        }
+        try {
+            readSpan(spans.get(0), positions, buffers);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void readSpan(Span span, long[] positions, ByteBuffer[] buffers) throws IOException {
+        int length = (int) (span.end - span.start);
+        if (span.ranges.size() == 1 && buffers[span.ranges.get(0)].hasArray()) {
+            // Read straight into the caller's array.
+            ByteBuffer buffer = buffers[span.ranges.get(0)];
+            readRange(span.start, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return;
+        }
+        byte[] data = new byte[length];
+        readRange(span.start, data, 0, length);
+        for (int i : span.ranges) {
+            buffers[i].put(data, (int) (positions[i] - span.start), buffers[i].remaining());
+        }
+    }
+
+    private void readRange(long position, byte[] array, int offset, int length) throws IOException {
+        if (contentLength >= 0) {
+            fileSystem.readObjectRange(url, contentLength, position, array, offset, length);
+        } else {
+            fileSystem.readRange(url, position, array, offset, length);
+        }
+    }
+
+    /**
+     * Requests all spans at once. Ranges not served by the response, e.g. because the server does
+     * not support multiple ranges, are left untouched.
+     *
+     * @return Flags telling which ranges have been read
+     */
+    private boolean[] readMultipart(List<Span> spans, long[] positions, int[] lengths, ByteBuffer[] buffers) throws IOException {
+        boolean[] done = new boolean[buffers.length];
+        StringBuilder rangeSpec = new StringBuilder("bytes=");
+        for (Span span : spans) {
+            if (rangeSpec.length() > 6) {
+                rangeSpec.append(',');
+            }
+            rangeSpec.append(span.start).append('-').append(span.end - 1);
+        }
+        try (ObjectStorageResponse response = fileSystem.getConnectionPool().get(url, Collections.singletonMap("Range", rangeSpec.toString()))) {
+            if (!response.isSuccessful()) {
+                throw new ObjectStorageHttpException(url.toString(), response.getStatusCode(), response.getReasonPhrase());
+            }
+            String boundary = getBoundary(response.getHeaderField("Content-Type"));
+            if (response.getStatusCode() != 206 || boundary == null) {
+                // Server answered with a single range or the whole object.
+                response.abort();
+                return done;
+            }
+            InputStream stream = response.getInputStream();
+            String line;
+            while (!(line = ObjectStorageConnectionPool.readLine(stream)).equals("--" + boundary + "--")) {
+                if (!line.equals("--" + boundary)) {
+                    continue;
+                }
+                long[] partRange = null;
+                while (!(line = ObjectStorageConnectionPool.readLine(stream)).isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Range")) {
+                        partRange = parseContentRange(line.substring(colon + 1).trim());
+                    }
+                }
+                if (partRange == null || partRange[1] - partRange[0] > Integer.MAX_VALUE - 8) {
+                    throw new IOException(url + ": invalid multipart response");
+                }
+                byte[] data = new byte[(int) (partRange[1] - partRange[0])];
+                readFully(stream, data);
+                for (int i = 0; i < buffers.length; i++) {
+                    if (!done[i] && positions[i] >= partRange[0] && positions[i] + lengths[i] <= partRange[1]) {
+                        buffers[i].put(data, (int) (positions[i] - partRange[0]), lengths[i]);
+                        done[i] = true;
+                    }
+                }
+            }
+        }
+        return done;
+    }
+
+    private void readFully(InputStream stream, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int n = stream.read(data, offset, data.length - offset);
+            if (n < 0) {
+                throw new EOFException(url.toString());
+            }
+            offset += n;
+        }
+    }
+
+    /**
+     * @return The boundary of a {@code multipart/byteranges} content type or {@code null}
+     */
+    static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/byteranges")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.toLowerCase().startsWith("boundary=")) {
+                String boundary = parameter.substring("boundary=".length());
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a {@code Content-Range} value like {@code bytes 100-199/1000}.
+     *
+     * @return The start and the exclusive end of the range or {@code null}
+     */
+    static long[] parseContentRange(String contentRange) {
+        if (!contentRange.startsWith("bytes ")) {
+            return null;
+        }
+        String range = contentRange.substring("bytes ".length());
+        int slash = range.indexOf('/');
+        int dash = range.indexOf('-');
+        if (dash < 0 || (slash >= 0 && slash < dash)) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(range.substring(0, dash).trim());
+            long last = Long.parseLong(range.substring(dash + 1, slash >= 0 ? slash : range.length()).trim());
+            return last >= start ? new long[]{start, last + 1} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Coalesced ranges fetched by one request.
+     */
+    static class Span {
+        final long start;
+        long end;
+        final List<Integer> ranges;
+
+        Span(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.ranges = new ArrayList<>();
+        }
+    }
+}
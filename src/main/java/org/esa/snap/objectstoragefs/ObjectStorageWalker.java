@@ -2,9 +2,20 @@ package org.esa.snap.objectstoragefs;
 
 import java.io.IOException;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.List;
+import java.util.stream.Stream;
 
 public interface ObjectStorageWalker {
-    // TODO - return stream instead of fixed-size list
-    List<BasicFileAttributes> walk(String address, String prefix, String delimiter) throws IOException;
+    /**
+     * Lists the objects and common prefixes under a prefix. The entries are fetched lazily, one
+     * page after another as the stream is consumed, so that huge listings are neither held in
+     * memory nor awaited completely. Closing the stream stops fetching the remaining pages.
+     * Failures fetching later pages are thrown as {@link java.io.UncheckedIOException}.
+     *
+     * @param address   The address of the bucket
+     * @param prefix    The prefix
+     * @param delimiter The delimiter grouping keys into common prefixes
+     * @return The stream of entries, which should be closed
+     * @throws IOException If the first page cannot be fetched
+     */
+    Stream<BasicFileAttributes> walk(String address, String prefix, String delimiter) throws IOException;
 }
@@ -3,11 +3,10 @@ package org.esa.snap.objectstoragefs.aws;
 import org.esa.snap.objectstoragefs.ObjectStorageFileSystem;
 import org.esa.snap.objectstoragefs.ObjectStorageFileSystemProvider;
 import org.esa.snap.objectstoragefs.ObjectStorageWalker;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Service-provider class for the AWS S3 object storage system.
@@ -24,12 +23,8 @@ public class S3FileSystemProvider extends ObjectStorageFileSystemProvider {
     }
 
     @Override
-    protected ObjectStorageWalker newObjectStorageWalker() {
-        try {
-            return new S3Walker();
-        } catch (ParserConfigurationException | SAXException e) {
-            throw new IllegalStateException(e);
-        }
+    protected ObjectStorageWalker newObjectStorageWalker(ObjectStorageFileSystem fileSystem, Executor executor) {
+        return new S3Walker(fileSystem.getConnectionPool(), fileSystem.getRetryPolicy(), executor, fileSystem.getConfig());
     }
 
     @Override
@@ -37,6 +32,7 @@ public class S3FileSystemProvider extends ObjectStorageFileSystemProvider {
         Object delimiter = env.get("delimiter");
         return new ObjectStorageFileSystem(this,
                                            address,
-                                           delimiter != null ? delimiter.toString() : "/");
+                                           delimiter != null ? delimiter.toString() : "/",
+                                           env);
     }
 }
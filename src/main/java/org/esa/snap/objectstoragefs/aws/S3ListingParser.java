@@ -0,0 +1,426 @@
+package org.esa.snap.objectstoragefs.aws;
+
+import org.esa.snap.objectstoragefs.ObjectStorageFileAttributes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A streaming parser of ListObjectsV2 responses, i.e. {@code ListBucketResult} documents.
+ * <p>
+ * The parser scans the bytes of the response, tracks the nesting of elements by depth and
+ * decodes only the fields it needs: the key, size and modification time of objects, the
+ * common prefixes, the truncation flag and the continuation token. Element names are matched
+ * against their bytes, the size is accumulated from its digits, and strings are created only
+ * for the values handed out. Other elements, comments and processing instructions are skipped.
+ * Entity and character references in values are decoded and CDATA sections are copied.
+ * <p>
+ * A parser may be reused for several documents, but not concurrently.
+ */
+class S3ListingParser {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] CONTENTS = ascii("Contents");
+    private static final byte[] COMMON_PREFIXES = ascii("CommonPrefixes");
+    private static final byte[] KEY = ascii("Key");
+    private static final byte[] SIZE = ascii("Size");
+    private static final byte[] LAST_MODIFIED = ascii("LastModified");
+    private static final byte[] PREFIX = ascii("Prefix");
+    private static final byte[] IS_TRUNCATED = ascii("IsTruncated");
+    private static final byte[] NEXT_CONTINUATION_TOKEN = ascii("NextContinuationToken");
+    private static final byte[] TRUE = ascii("true");
+
+    // The elements of interest.
+    private static final int NONE = 0;
+    private static final int CONTENTS_ELEMENT = 1;
+    private static final int COMMON_PREFIXES_ELEMENT = 2;
+    private static final int KEY_FIELD = 3;
+    private static final int SIZE_FIELD = 4;
+    private static final int LAST_MODIFIED_FIELD = 5;
+    private static final int PREFIX_FIELD = 6;
+    private static final int IS_TRUNCATED_FIELD = 7;
+    private static final int NEXT_CONTINUATION_TOKEN_FIELD = 8;
+
+    private final byte[] buffer;
+    private InputStream in;
+    private int position;
+    private int limit;
+    private byte[] name;
+    private int nameLength;
+    private byte[] text;
+    private int textLength;
+
+    private boolean truncated;
+    private String nextContinuationToken;
+
+    S3ListingParser() {
+        this.buffer = new byte[BUFFER_SIZE];
+        this.name = new byte[64];
+        this.text = new byte[256];
+    }
+
+    /**
+     * @return Whether the last document parsed is followed by another page
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return The continuation token of the last document parsed or {@code null}
+     */
+    String getNextContinuationToken() {
+        return nextContinuationToken;
+    }
+
+    /**
+     * Parses a document.
+     *
+     * @param in                        The document's bytes
+     * @param items                     The list receiving the objects and common prefixes in document order
+     * @param continuationTokenListener Called with the continuation token as soon as it has been parsed, may be {@code null}
+     * @throws IOException If reading fails or the document is malformed
+     */
+    void parse(InputStream in, List<BasicFileAttributes> items, Consumer<String> continuationTokenListener) throws IOException {
+        this.in = in;
+        this.position = 0;
+        this.limit = 0;
+        this.truncated = false;
+        this.nextContinuationToken = null;
+        try {
+            int depth = 0;
+            int container = NONE;
+            int field = NONE;
+            String key = null;
+            String lastModified = null;
+            long size = 0;
+            int b;
+            while ((b = read()) >= 0) {
+                if (b != '<') {
+                    if (field == SIZE_FIELD) {
+                        if (b >= '0' && b <= '9') {
+                            if (size > (Long.MAX_VALUE - (b - '0')) / 10) {
+                                throw new IOException("Size out of range in listing");
+                            }
+                            size = size * 10 + (b - '0');
+                        } else if (!isWhitespace(b)) {
+                            throw new IOException("invalid Size in listing");
+                        }
+                    } else if (field != NONE) {
+                        if (b == '&') {
+                            appendReference();
+                        } else {
+                            appendText(b);
+                        }
+                    }
+                    continue;
+                }
+                b = readRequired();
+                if (b == '/') {
+                    skipTag();
+                    switch (field) {
+                        case KEY_FIELD:
+                            key = textToString();
+                            break;
+                        case LAST_MODIFIED_FIELD:
+                            lastModified = textToString().trim();
+                            break;
+                        case PREFIX_FIELD:
+                            items.add(ObjectStorageFileAttributes.newDir(textToString()));
+                            break;
+                        case IS_TRUNCATED_FIELD:
+                            truncated = isTrue();
+                            break;
+                        case NEXT_CONTINUATION_TOKEN_FIELD:
+                            nextContinuationToken = textToString().trim();
+                            if (continuationTokenListener != null && !nextContinuationToken.isEmpty()) {
+                                continuationTokenListener.accept(nextContinuationToken);
+                            }
+                            break;
+                        default:
+                            if (depth == 2 && container == CONTENTS_ELEMENT) {
+                                if (key == null || key.isEmpty()) {
+                                    throw new IOException("missing Key in listing");
+                                }
+                                items.add(ObjectStorageFileAttributes.newFile(key, size, lastModified));
+                            }
+                            break;
+                    }
+                    field = NONE;
+                    if (depth == 2) {
+                        container = NONE;
+                    }
+                    depth--;
+                } else if (b == '?') {
+                    skipProcessingInstruction();
+                } else if (b == '!') {
+                    b = readRequired();
+                    if (b == '-') {
+                        readRequired();
+                        skipComment();
+                    } else if (b == '[') {
+                        // <![CDATA[...]]>
+                        for (int i = 0; i < 6; i++) {
+                            readRequired();
+                        }
+                        copyCData(field != NONE && field != SIZE_FIELD);
+                    } else {
+                        skipTag();
+                    }
+                } else {
+                    readName(b);
+                    if (skipTag()) {
+                        // An empty element.
+                        continue;
+                    }
+                    depth++;
+                    textLength = 0;
+                    if (depth == 2) {
+                        if (nameEquals(CONTENTS)) {
+                            container = CONTENTS_ELEMENT;
+                            key = null;
+                            lastModified = null;
+                            size = 0;
+                        } else if (nameEquals(COMMON_PREFIXES)) {
+                            container = COMMON_PREFIXES_ELEMENT;
+                        } else if (nameEquals(IS_TRUNCATED)) {
+                            field = IS_TRUNCATED_FIELD;
+                        } else if (nameEquals(NEXT_CONTINUATION_TOKEN)) {
+                            field = NEXT_CONTINUATION_TOKEN_FIELD;
+                        }
+                    } else if (depth == 3 && container == CONTENTS_ELEMENT) {
+                        if (nameEquals(KEY)) {
+                            field = KEY_FIELD;
+                        } else if (nameEquals(SIZE)) {
+                            field = SIZE_FIELD;
+                            size = 0;
+                        } else if (nameEquals(LAST_MODIFIED)) {
+                            field = LAST_MODIFIED_FIELD;
+                        }
+                    } else if (depth == 3 && container == COMMON_PREFIXES_ELEMENT && nameEquals(PREFIX)) {
+                        field = PREFIX_FIELD;
+                    }
+                }
+            }
+            if (depth != 0) {
+                throw new EOFException("listing ends prematurely");
+            }
+        } finally {
+            this.in = null;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private int readRequired() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException("listing ends prematurely");
+        }
+        return b;
+    }
+
+    /**
+     * Reads an element name starting with the given byte, without its namespace prefix.
+     */
+    private void readName(int b) throws IOException {
+        nameLength = 0;
+        while (b != '>' && b != '/' && !isWhitespace(b)) {
+            if (b == ':') {
+                nameLength = 0;
+            } else {
+                if (nameLength == name.length) {
+                    name = Arrays.copyOf(name, 2 * name.length);
+                }
+                name[nameLength++] = (byte) b;
+            }
+            b = readRequired();
+        }
+        // Let skipTag() see the delimiter.
+        position--;
+    }
+
+    /**
+     * Skips the rest of a tag, including attributes.
+     *
+     * @return {@code true} if the tag closes an empty element
+     */
+    private boolean skipTag() throws IOException {
+        int previous = 0;
+        int b;
+        while ((b = readRequired()) != '>') {
+            if (b == '"' || b == '\'') {
+                int quote = b;
+                while (readRequired() != quote) {
+                    // Attribute values may contain '>'.
+                }
+            }
+            previous = b;
+        }
+        return previous == '/';
+    }
+
+    private void skipProcessingInstruction() throws IOException {
+        int previous = 0;
+        int b;
+        while (!((b = readRequired()) == '>' && previous == '?')) {
+            previous = b;
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int previous2 = 0;
+        int previous = 0;
+        int b;
+        while (!((b = readRequired()) == '>' && previous == '-' && previous2 == '-')) {
+            previous2 = previous;
+            previous = b;
+        }
+    }
+
+    private void copyCData(boolean append) throws IOException {
+        int previous2 = 0;
+        int previous = 0;
+        int b;
+        while (!((b = readRequired()) == '>' && previous == ']' && previous2 == ']')) {
+            if (append) {
+                appendText(b);
+            }
+            previous2 = previous;
+            previous = b;
+        }
+        if (append) {
+            // Remove the "]]" already appended.
+            textLength -= 2;
+        }
+    }
+
+    /**
+     * Decodes an entity or character reference following {@code '&'}.
+     */
+    private void appendReference() throws IOException {
+        int codePoint;
+        int b = readRequired();
+        if (b == '#') {
+            codePoint = 0;
+            int radix = 10;
+            b = readRequired();
+            if (b == 'x') {
+                radix = 16;
+                b = readRequired();
+            }
+            for (; b != ';'; b = readRequired()) {
+                int digit = Character.digit(b, radix);
+                if (digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw new IOException("invalid character reference in listing");
+                }
+                codePoint = codePoint * radix + digit;
+            }
+        } else {
+            int start = textLength;
+            for (; b != ';'; b = readRequired()) {
+                appendText(b);
+                if (textLength - start > 4) {
+                    throw new IOException("invalid entity reference in listing");
+                }
+            }
+            codePoint = getEntity(start, textLength - start);
+            textLength = start;
+        }
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw new IOException("invalid reference in listing");
+        }
+        if (codePoint < 0x80) {
+            appendText(codePoint);
+        } else {
+            for (byte encoded : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                appendText(encoded & 0xff);
+            }
+        }
+    }
+
+    private int getEntity(int start, int length) throws IOException {
+        if (length == 2 && text[start + 1] == 't') {
+            if (text[start] == 'l') {
+                return '<';
+            } else if (text[start] == 'g') {
+                return '>';
+            }
+        } else if (length == 3 && text[start] == 'a' && text[start + 1] == 'm' && text[start + 2] == 'p') {
+            return '&';
+        } else if (length == 4 && text[start] == 'q' && text[start + 1] == 'u' && text[start + 2] == 'o' && text[start + 3] == 't') {
+            return '"';
+        } else if (length == 4 && text[start] == 'a' && text[start + 1] == 'p' && text[start + 2] == 'o' && text[start + 3] == 's') {
+            return '\'';
+        }
+        throw new IOException("unknown entity reference in listing");
+    }
+
+    private void appendText(int b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, 2 * text.length);
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    private String textToString() {
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean isTrue() {
+        int start = 0;
+        int end = textLength;
+        while (start < end && isWhitespace(text[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(text[end - 1])) {
+            end--;
+        }
+        if (end - start != TRUE.length) {
+            return false;
+        }
+        for (int i = 0; i < TRUE.length; i++) {
+            if ((text[start + i] | 0x20) != TRUE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nameEquals(byte[] expected) {
+        if (nameLength != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
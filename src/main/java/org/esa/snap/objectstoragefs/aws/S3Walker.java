@@ -1,28 +1,105 @@
 package org.esa.snap.objectstoragefs.aws;
 
-import org.esa.snap.objectstoragefs.ObjectStorageFileAttributes;
+import org.esa.snap.objectstoragefs.ObjectStorageConfig;
+import org.esa.snap.objectstoragefs.ObjectStorageConnectionPool;
+import org.esa.snap.objectstoragefs.ObjectStorageHttpException;
+import org.esa.snap.objectstoragefs.ObjectStorageResponse;
+import org.esa.snap.objectstoragefs.ObjectStorageRetryPolicy;
 import org.esa.snap.objectstoragefs.ObjectStorageWalker;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * Lists the objects of an S3 bucket with ListObjectsV2 requests.
+ * <p>
+ * Listings larger than a page may be split into lexicographic key ranges that are listed
+ * concurrently. The split points are sampled by single-key requests spread over the key
+ * space following the first page. Each range is a continuation chain of its own, started
+ * after its split point and ended at the next one, and the ranges are returned one after
+ * the other, so that the entries of a partitioned listing are sorted by key.
+ * <p>
+ * Listings are requested gzip-compressed and parsed by an {@link S3ListingParser}.
+ */
 class S3Walker implements ObjectStorageWalker {
 
-    private XMLReader xmlReader;
+    private static final int SAMPLES_PER_PARTITION = 4;
+    private static final char MAX_SAMPLED_CHAR = '~';
+    private static final int MAX_SAMPLE_ROUNDS = 3;
+    private static final Map<String, String> LIST_HEADERS = Collections.singletonMap("Accept-Encoding", "gzip");
+    private static final Comparator<BasicFileAttributes> KEY_ORDER = (a1, a2) -> compareKeys(getKey(a1), getKey(a2));
 
-    S3Walker() throws ParserConfigurationException, SAXException {
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        spf.setNamespaceAware(true);
-        SAXParser saxParser = spf.newSAXParser();
-        xmlReader = saxParser.getXMLReader();
+    private final ObjectStorageConnectionPool connectionPool;
+    private final ObjectStorageRetryPolicy retryPolicy;
+    private final Executor executor;
+    private final int prefetchPages;
+    private final int partitions;
+    private final int partitionPages;
+
+    S3Walker(ObjectStorageConnectionPool connectionPool, ObjectStorageRetryPolicy retryPolicy) {
+        this(connectionPool, retryPolicy, null, 0, 1, 0);
+    }
+
+    /**
+     * Creates a walker that requests pages of a listing ahead of the page being consumed, and
+     * lists large prefixes in concurrent partitions, as configured for a file system.
+     *
+     * @param connectionPool The connection pool
+     * @param retryPolicy    The policy for retrying failed pages
+     * @param executor       The executor requesting pages in the background
+     * @param config         The file system configuration
+     */
+    S3Walker(ObjectStorageConnectionPool connectionPool, ObjectStorageRetryPolicy retryPolicy,
+             Executor executor, ObjectStorageConfig config) {
+        this(connectionPool, retryPolicy, executor, config.getListPrefetchPages(), config.getListPartitions(), config.getListPartitionPages());
+    }
+
+    /**
+     * Creates a walker. The next page is requested as soon as the continuation token of the
+     * current page has been parsed, which S3 sends before the entries of the page.
+     *
+     * @param connectionPool The connection pool
+     * @param retryPolicy    The policy for retrying failed pages
+     * @param executor       The executor requesting pages in the background
+     * @param prefetchPages  The maximum number of pages requested ahead, zero disables prefetching
+     * @param partitions     The number of key ranges listed concurrently, one disables partitioning
+     * @param partitionPages The maximum number of pages each key range requests ahead
+     */
+    S3Walker(ObjectStorageConnectionPool connectionPool, ObjectStorageRetryPolicy retryPolicy,
+             Executor executor, int prefetchPages, int partitions, int partitionPages) {
+        this.connectionPool = connectionPool;
+        this.retryPolicy = retryPolicy;
+        this.executor = executor;
+        this.prefetchPages = executor != null ? prefetchPages : 0;
+        this.partitions = executor != null ? partitions : 1;
+        this.partitionPages = Math.max(1, partitionPages);
     }
 
     private static void addParam(StringBuffer params, String name, String value) throws IOException {
@@ -35,32 +112,548 @@ class S3Walker implements ObjectStorageWalker {
         params.append(name).append("=").append(URLEncoder.encode(value, "UTF8"));
     }
 
-    public List<BasicFileAttributes> walk(String address, String prefix, String delimiter) throws IOException {
+    /**
+     * Compares two keys in the order of S3 listings, which is the order of their UTF-8 bytes,
+     * that is of their code points.
+     */
+    static int compareKeys(String key1, String key2) {
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < key1.length() && i2 < key2.length()) {
+            int c1 = key1.codePointAt(i1);
+            int c2 = key2.codePointAt(i2);
+            if (c1 != c2) {
+                return Integer.compare(c1, c2);
+            }
+            i1 += Character.charCount(c1);
+            i2 += Character.charCount(c2);
+        }
+        return Integer.compare(key1.length() - i1, key2.length() - i2);
+    }
+
+    private static String getKey(BasicFileAttributes attributes) {
+        return (String) attributes.fileKey();
+    }
+
+    public Stream<BasicFileAttributes> walk(String address, String prefix, String delimiter) throws IOException {
         StringBuffer paramBase = new StringBuffer();
+        addParam(paramBase, "list-type", "2");
         addParam(paramBase, "prefix", prefix);
         addParam(paramBase, "delimiter", delimiter);
 
-        ArrayList<BasicFileAttributes> items = new ArrayList<>();
-        String nextContinuationToken = null;
-        S3ResponseHandler handler;
-        do {
-            handler = new S3ResponseHandler(items);
-            xmlReader.setContentHandler(handler);
+        PageIterator first = new PageIterator(address, paramBase, null, partitions > 1 ? partitionPages : prefetchPages);
+        Iterator<BasicFileAttributes> iterator = first;
+        Runnable closer = first::close;
+        try {
+            // The first page is fetched right away, so that failures to list the prefix at all are thrown here.
+            first.fetchFirstPage();
+            if (partitions > 1 && first.hasMorePages()) {
+                List<PageIterator> ranges = partition(address, paramBase, prefix != null ? prefix : "", first);
+                iterator = new ConcatenatingIterator(ranges);
+                closer = () -> ranges.forEach(PageIterator::close);
+            }
+        } catch (IOException e) {
+            first.close();
+            throw e;
+        }
+        Spliterator<BasicFileAttributes> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(closer);
+    }
+
+    /**
+     * Splits the rest of a listing into key ranges and starts listing them.
+     *
+     * @param first The listing of the first range, whose first page has been read
+     * @return The ranges in key order, including the first one
+     */
+    private List<PageIterator> partition(String address, StringBuffer paramBase, String prefix, PageIterator first) throws IOException {
+        List<String> splitPoints = sampleSplitPoints(address, paramBase, prefix, first.getLastKey());
+        List<PageIterator> ranges = new ArrayList<>();
+        ranges.add(first);
+        first.setUpperBound(splitPoints.isEmpty() ? null : splitPoints.get(0));
+        for (int i = 0; i < splitPoints.size(); i++) {
+            PageIterator range = new PageIterator(address, paramBase, splitPoints.get(i), partitionPages);
+            range.setUpperBound(i + 1 < splitPoints.size() ? splitPoints.get(i + 1) : null);
+            ranges.add(range);
+            range.start();
+        }
+        return ranges;
+    }
+
+    /**
+     * Samples keys following the given key by concurrent requests for the first entry after
+     * evenly spaced characters, and picks split points among the distinct keys found. The
+     * characters are sampled at the first position where the following keys differ from the
+     * given key, so that keys sharing a long stem are split as well. If too few keys are found,
+     * the next position of the given key is sampled, up to {@link #MAX_SAMPLE_ROUNDS} times.
+     *
+     * @return Up to {@code partitions - 1} split points in key order
+     */
+    private List<String> sampleSplitPoints(String address, StringBuffer paramBase, String prefix, String lastKey) throws IOException {
+        if (lastKey == null || lastKey.length() <= prefix.length()) {
+            return Collections.emptyList();
+        }
+        TreeSet<String> keys = new TreeSet<>(S3Walker::compareKeys);
+        int position = getStemLength(address, paramBase, prefix, lastKey);
+        for (int round = 0; round < MAX_SAMPLE_ROUNDS && position <= lastKey.length() && keys.size() < partitions - 1; round++, position++) {
+            String stem = lastKey.substring(0, position);
+            char lowest = position < lastKey.length() ? lastKey.charAt(position) : 0;
+            int sampleCount = Math.min(MAX_SAMPLED_CHAR - lowest, (partitions - 1) * SAMPLES_PER_PARTITION);
+            List<CompletableFuture<List<BasicFileAttributes>>> samples = new ArrayList<>();
+            for (int i = 1; i <= sampleCount; i++) {
+                String startAfter = stem + (char) (lowest + (long) (MAX_SAMPLED_CHAR - lowest) * i / sampleCount);
+                samples.add(submit(() -> retryPolicy.execute(() -> listFirstEntry(address, paramBase, startAfter))));
+            }
+            for (CompletableFuture<List<BasicFileAttributes>> sample : samples) {
+                for (BasicFileAttributes attributes : await(sample)) {
+                    if (compareKeys(getKey(attributes), lastKey) > 0) {
+                        keys.add(getKey(attributes));
+                    }
+                }
+            }
+        }
+        List<String> sampledKeys = new ArrayList<>(keys);
+        int splitPointCount = Math.min(partitions - 1, sampledKeys.size());
+        List<String> splitPoints = new ArrayList<>(splitPointCount);
+        for (int i = 0; i < splitPointCount; i++) {
+            splitPoints.add(sampledKeys.get(i * sampledKeys.size() / splitPointCount));
+        }
+        return splitPoints;
+    }
+
+    /**
+     * Finds the length of the longest stem of the given key that all following keys start with,
+     * by a binary search with requests for the first entry after a stem.
+     */
+    private int getStemLength(String address, StringBuffer paramBase, String prefix, String lastKey) throws IOException {
+        int low = prefix.length();
+        int high = lastKey.length();
+        while (low < high) {
+            int length = (low + high + 1) / 2;
+            String stem = lastKey.substring(0, length);
+            List<BasicFileAttributes> items = retryPolicy.execute(() -> listFirstEntry(address, paramBase, stem + MAX_SAMPLED_CHAR));
+            if (items.isEmpty() || getKey(items.get(0)).startsWith(stem)) {
+                low = length;
+            } else {
+                high = length - 1;
+            }
+        }
+        return low;
+    }
+
+    private List<BasicFileAttributes> listFirstEntry(String address, StringBuffer paramBase, String startAfter) throws IOException {
+        StringBuffer params = new StringBuffer(paramBase);
+        addParam(params, "start-after", startAfter);
+        addParam(params, "max-keys", "1");
+        String systemId = address + "?" + params;
+        List<BasicFileAttributes> items = new ArrayList<>();
+        try (ObjectStorageResponse response = connectionPool.get(new URL(systemId), LIST_HEADERS)) {
+            parse(new S3ListingParser(), systemId, response, items, null);
+        }
+        return items;
+    }
+
+    private <T> CompletableFuture<T> submit(ObjectStorageRetryPolicy.Request<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(request.send());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new IOException("file system closed", e));
+        }
+        return future;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void parse(S3ListingParser parser, String systemId, ObjectStorageResponse response,
+                              List<BasicFileAttributes> items, Consumer<String> continuationTokenListener) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new ObjectStorageHttpException(systemId, response.getStatusCode(), response.getReasonPhrase());
+        }
+        InputStream stream = response.getInputStream();
+        if ("gzip".equalsIgnoreCase(response.getHeaderField("Content-Encoding"))) {
+            stream = new GZIPInputStream(stream);
+        }
+        parser.parse(stream, items, continuationTokenListener);
+    }
+
+    /**
+     * Returns the entries of several listings one listing after the other.
+     */
+    private static class ConcatenatingIterator implements Iterator<BasicFileAttributes> {
+        private final Iterator<PageIterator> listings;
+        private PageIterator current;
+
+        ConcatenatingIterator(List<PageIterator> listings) {
+            this.listings = listings.iterator();
+            this.current = this.listings.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!listings.hasNext()) {
+                    return false;
+                }
+                current = listings.next();
+            }
+            return true;
+        }
+
+        @Override
+        public BasicFileAttributes next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    /**
+     * A page requested in the background.
+     */
+    private static class Page {
+        final int number;
+        final CompletableFuture<List<BasicFileAttributes>> entries;
+
+        Page(int number, CompletableFuture<List<BasicFileAttributes>> entries) {
+            this.number = number;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Iterates over the entries of a listing, optionally bounded to a key range. Pages are
+     * requested in the background up to the prefetch depth, otherwise when the current page
+     * is exhausted.
+     */
+    private class PageIterator implements Iterator<BasicFileAttributes> {
+        private final String address;
+        private final StringBuffer paramBase;
+        // Exclusive lower bound of the key range, or null.
+        private final String startAfter;
+        private final int prefetchPages;
+        // Pages requested ahead and not yet consumed, in listing order.
+        private final Deque<Page> requestedPages;
+        // Responses being received and the numbers of their pages, aborted when no longer needed.
+        private final Map<ObjectStorageResponse, Integer> responses;
+        // Inclusive upper bound of the key range, or null.
+        private String upperBound;
+        // Whether entries are filtered by the key range and sorted.
+        private boolean bounded;
+        // The number of the page reaching the upper bound, the last page to be consumed.
+        private int lastPageNumber;
+        private int nextPageNumber;
+        // The token of the page following the requested pages, if not yet requested.
+        private String nextContinuationToken;
+        private boolean closed;
+        private List<BasicFileAttributes> page;
+        private int pageNumber;
+        private int index;
+
+        PageIterator(String address, StringBuffer paramBase, String startAfter, int prefetchPages) {
+            this.address = address;
+            this.paramBase = paramBase;
+            this.startAfter = startAfter;
+            this.bounded = startAfter != null;
+            this.prefetchPages = prefetchPages;
+            this.requestedPages = new ArrayDeque<>();
+            this.responses = new HashMap<>();
+            this.lastPageNumber = Integer.MAX_VALUE;
+            this.page = Collections.emptyList();
+            this.pageNumber = -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index == page.size()) {
+                try {
+                    if (!takeNextPage()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public BasicFileAttributes next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+
+        /**
+         * Stops requesting pages and aborts the pages being received.
+         */
+        void close() {
+            List<ObjectStorageResponse> openResponses;
+            synchronized (this) {
+                closed = true;
+                requestedPages.clear();
+                nextContinuationToken = null;
+                openResponses = new ArrayList<>(responses.keySet());
+                responses.clear();
+            }
+            for (ObjectStorageResponse response : openResponses) {
+                response.abort();
+            }
+            page = Collections.emptyList();
+            index = 0;
+        }
+
+        void fetchFirstPage() throws IOException {
+            int number;
+            synchronized (this) {
+                number = nextPageNumber++;
+            }
+            setPage(number, readPage(number, null));
+        }
+
+        /**
+         * Requests the first page in the background.
+         */
+        synchronized void start() {
+            requestPage(null);
+        }
+
+        /**
+         * Limits the listing to keys not after the given key, and sorts the entries by key.
+         * The entries of a page are otherwise ordered as sent by S3, objects before common prefixes.
+         */
+        void setUpperBound(String upperBound) {
+            synchronized (this) {
+                this.upperBound = upperBound;
+                this.bounded = true;
+            }
+            page = new ArrayList<>(page.subList(index, page.size()));
+            index = 0;
+            setPage(pageNumber, page);
+        }
+
+        synchronized boolean hasMorePages() {
+            return !requestedPages.isEmpty() || nextContinuationToken != null;
+        }
+
+        /**
+         * @return The last key of the current page or {@code null}
+         */
+        String getLastKey() {
+            String lastKey = null;
+            for (BasicFileAttributes attributes : page) {
+                if (lastKey == null || compareKeys(getKey(attributes), lastKey) > 0) {
+                    lastKey = getKey(attributes);
+                }
+            }
+            return lastKey;
+        }
+
+        /**
+         * @return {@code false} at the end of the listing
+         */
+        private boolean takeNextPage() throws IOException {
+            Page requestedPage;
+            String continuationToken = null;
+            int number = -1;
+            synchronized (this) {
+                if (closed || pageNumber >= lastPageNumber) {
+                    return false;
+                }
+                requestedPage = requestedPages.poll();
+                if (requestedPage != null) {
+                    if (nextContinuationToken != null) {
+                        // A slot has become free.
+                        requestPage(nextContinuationToken);
+                        nextContinuationToken = null;
+                    }
+                } else if (nextContinuationToken != null) {
+                    continuationToken = nextContinuationToken;
+                    nextContinuationToken = null;
+                    number = nextPageNumber++;
+                }
+            }
+            if (requestedPage != null) {
+                setPage(requestedPage.number, await(requestedPage.entries));
+                return true;
+            }
+            if (continuationToken != null) {
+                setPage(number, readPage(number, continuationToken));
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Makes the given page the current one, dropping the entries outside of the key range.
+         */
+        private void setPage(int number, List<BasicFileAttributes> entries) {
+            String upperBound;
+            boolean bounded;
+            synchronized (this) {
+                upperBound = this.upperBound;
+                bounded = this.bounded;
+            }
+            if (bounded) {
+                List<BasicFileAttributes> filtered = new ArrayList<>(entries.size());
+                for (BasicFileAttributes attributes : entries) {
+                    String key = getKey(attributes);
+                    if (startAfter != null && compareKeys(key, startAfter) <= 0) {
+                        // E.g. a common prefix containing the start key, sent again.
+                        continue;
+                    }
+                    if (upperBound != null && compareKeys(key, upperBound) > 0) {
+                        endAt(number);
+                        continue;
+                    }
+                    filtered.add(attributes);
+                }
+                filtered.sort(KEY_ORDER);
+                entries = filtered;
+            }
+            page = entries;
+            pageNumber = number;
+            index = 0;
+        }
+
+        /**
+         * Stops the listing after the given page, which reaches the upper bound.
+         */
+        private void endAt(int number) {
+            List<ObjectStorageResponse> unneededResponses = new ArrayList<>();
+            synchronized (this) {
+                if (number >= lastPageNumber) {
+                    return;
+                }
+                lastPageNumber = number;
+                nextContinuationToken = null;
+                requestedPages.removeIf(requestedPage -> requestedPage.number > number);
+                responses.entrySet().removeIf(entry -> {
+                    if (entry.getValue() > number) {
+                        unneededResponses.add(entry.getKey());
+                        return true;
+                    }
+                    return false;
+                });
+            }
+            for (ObjectStorageResponse response : unneededResponses) {
+                response.abort();
+            }
+        }
+
+        /**
+         * Called when the continuation token of a page has been parsed.
+         */
+        private synchronized void onContinuationToken(int number, String continuationToken) {
+            if (closed || number >= lastPageNumber) {
+                return;
+            }
+            if (requestedPages.size() < prefetchPages) {
+                requestPage(continuationToken);
+            } else {
+                nextContinuationToken = continuationToken;
+            }
+        }
+
+        private void requestPage(String continuationToken) {
+            int number = nextPageNumber++;
+            requestedPages.add(new Page(number, submit(() -> readPage(number, continuationToken))));
+        }
+
+        /**
+         * Reads the page with the given continuation token, retrying if it fails.
+         *
+         * @param number            The number of the page within the listing
+         * @param continuationToken The token, {@code null} for the first page
+         * @return The entries of the page
+         */
+        private List<BasicFileAttributes> readPage(int number, String continuationToken) throws IOException {
             StringBuffer params = new StringBuffer(paramBase);
-            addParam(params, "continuation-token", nextContinuationToken);
-            String systemId = address;
-            if (params.length() > 0) {
-                systemId += "?" + params;
+            if (continuationToken != null) {
+                addParam(params, "continuation-token", continuationToken);
+            } else {
+                addParam(params, "start-after", startAfter);
+            }
+            String systemId = address + "?" + params;
+            S3ListingParser parser = new S3ListingParser();
+            // A failed page is requested again with the same continuation token, the next page only once.
+            AtomicBoolean nextPageRequested = new AtomicBoolean();
+            List<BasicFileAttributes> entries = retryPolicy.execute(() -> {
+                List<BasicFileAttributes> pageItems = new ArrayList<>();
+                readPage(number, parser, systemId, pageItems, nextToken -> {
+                    if (nextPageRequested.compareAndSet(false, true)) {
+                        onContinuationToken(number, nextToken);
+                    }
+                });
+                return pageItems;
+            });
+            String upperBound;
+            synchronized (this) {
+                upperBound = this.upperBound;
+            }
+            if (upperBound != null) {
+                for (BasicFileAttributes attributes : entries) {
+                    if (compareKeys(getKey(attributes), upperBound) > 0) {
+                        // Stop requesting pages of the next key range.
+                        endAt(number);
+                        break;
+                    }
+                }
+            }
+            return entries;
+        }
+
+        private void readPage(int number, S3ListingParser parser, String systemId,
+                              List<BasicFileAttributes> pageItems, Consumer<String> continuationTokenListener) throws IOException {
+            ensureNeeded(number);
+            ObjectStorageResponse response = connectionPool.get(new URL(systemId), LIST_HEADERS);
+            synchronized (this) {
+                if (closed || number > lastPageNumber) {
+                    response.abort();
+                } else {
+                    responses.put(response, number);
+                }
             }
-            // System.out.println("systemId = " + systemId);
             try {
-                xmlReader.parse(systemId);
-            } catch (SAXException e) {
-                throw new IOException(e);
+                ensureNeeded(number);
+                parse(parser, systemId, response, pageItems, continuationTokenListener);
+            } catch (IOException e) {
+                // Do not retry a page aborted because it is no longer needed.
+                ensureNeeded(number);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    responses.remove(response);
+                }
+                response.close();
             }
-            nextContinuationToken = handler.getNextContinuationToken();
-        } while (handler.getIsTruncated());
+        }
 
-        return items;
+        private synchronized void ensureNeeded(int number) throws InterruptedIOException {
+            if (closed || number > lastPageNumber) {
+                throw new InterruptedIOException("listing closed");
+            }
+        }
     }
 }
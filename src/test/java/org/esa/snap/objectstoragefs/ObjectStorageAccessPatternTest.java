@@ -0,0 +1,94 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import static org.esa.snap.objectstoragefs.ObjectStorageAccessPattern.Mode.RANDOM;
+import static org.esa.snap.objectstoragefs.ObjectStorageAccessPattern.Mode.SEQUENTIAL;
+import static org.esa.snap.objectstoragefs.ObjectStorageAccessPattern.Mode.TAIL;
+import static org.junit.Assert.*;
+
+public class ObjectStorageAccessPatternTest {
+
+    @Test
+    public void testSequentialAndRandom() throws Exception {
+        ObjectStorageAccessPattern pattern = new ObjectStorageAccessPattern(null, 100000000L, 0);
+        assertEquals(SEQUENTIAL, pattern.getMode());
+        long position = 0;
+        for (int i = 0; i < 8; i++) {
+            assertEquals(SEQUENTIAL, pattern.recordRead(position, 1000));
+            // Small forward gaps are still sequential.
+            position += 1000 + 100;
+        }
+        for (int i = 1; i <= 4; i++) {
+            pattern.recordRead(i * 10000000L, 1000);
+        }
+        assertEquals(SEQUENTIAL, pattern.getMode());
+        assertEquals(RANDOM, pattern.recordRead(50000000L, 1000));
+        assertEquals(RANDOM, pattern.recordRead(5000L, 1000));
+
+        position = 60000000L;
+        for (int i = 0; i < 8; i++) {
+            pattern.recordRead(position, 1000);
+            position += 1000;
+        }
+        assertEquals(SEQUENTIAL, pattern.getMode());
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        ObjectStorageAccessPattern pattern = new ObjectStorageAccessPattern(null, 1000000L, 65536);
+        assertEquals(TAIL, pattern.recordRead(1000000L - 8, 8));
+        assertEquals(TAIL, pattern.recordRead(1000000L - 20000, 19992));
+        assertEquals(RANDOM, pattern.recordRead(0, 100));
+        // A sequential scan reaching the tail is not a jump into the tail.
+        assertEquals(SEQUENTIAL, pattern.recordRead(100, 1000000 - 100));
+    }
+
+    @Test
+    public void testHint() throws Exception {
+        ObjectStorageAccessPattern pattern = new ObjectStorageAccessPattern(ObjectStorageOpenOption.RANDOM, 100000000L, 0);
+        assertEquals(RANDOM, pattern.getMode());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(RANDOM, pattern.recordRead(i * 1000, 1000));
+        }
+        pattern = new ObjectStorageAccessPattern(ObjectStorageOpenOption.SEQUENTIAL, 100000000L, 0);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(SEQUENTIAL, pattern.recordRead(i * 1000000L, 1000));
+        }
+    }
+
+    @Test
+    public void testBlockSize() throws Exception {
+        ObjectStorageAccessPattern pattern = new ObjectStorageAccessPattern(null, 100000000L, 0);
+        assertEquals(4096, pattern.getBlockSize(4096, 1 << 20));
+        pattern.recordRead(1000000L, 10000);
+        pattern.recordRead(3000000L, 30000);
+        assertEquals(32768, pattern.getBlockSize(4096, 1 << 20));
+        assertEquals(16384, pattern.getBlockSize(4096, 16384));
+
+        // 10 ms per request at 100 MB/s: half a request's time is worth 500 kB.
+        pattern.recordLatency(10000000L);
+        pattern.recordTransfer(100000000L, 1000000000L);
+        assertEquals(524288, pattern.getBlockSize(4096, 1 << 20));
+    }
+
+    @Test
+    public void testPrefetchDepth() throws Exception {
+        ObjectStorageAccessPattern pattern = new ObjectStorageAccessPattern(null, 100000000L, 0);
+        // Without measurements, the maximum depth is used.
+        assertEquals(8, pattern.getPrefetchDepth(1 << 20, 8));
+        pattern.recordRead(0, 1 << 20);
+        pattern.recordReadEnd();
+        Thread.sleep(20);
+        pattern.recordRead(1 << 20, 1 << 20);
+        pattern.recordReadEnd();
+        // The reader needs at least 20 ms per buffer, a fetch takes 1 ms.
+        pattern.recordFetch(1000000L);
+        assertEquals(2, pattern.getPrefetchDepth(1 << 20, 8));
+        // Fetches taking one second need the full window.
+        for (int i = 0; i < 20; i++) {
+            pattern.recordFetch(1000000000L);
+        }
+        assertEquals(8, pattern.getPrefetchDepth(1 << 20, 8));
+    }
+}
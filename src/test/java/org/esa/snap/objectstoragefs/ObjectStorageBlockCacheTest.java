@@ -0,0 +1,116 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class ObjectStorageBlockCacheTest {
+
+    @Parameterized.Parameters(name = "offHeap={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[]{false}, new Object[]{true});
+    }
+
+    @Parameterized.Parameter
+    public boolean offHeap;
+
+    private URL url;
+    private byte[] data;
+    private int numRequests;
+    private ObjectStorageRangeReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        url = new URL("http://localhost/test.bin");
+        data = new byte[1000];
+        new Random(1).nextBytes(data);
+        numRequests = 0;
+        reader = (url, position, array, offset, length) -> {
+            numRequests++;
+            System.arraycopy(data, (int) position, array, offset, length);
+        };
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        ObjectStorageBlockCache cache = newCache(1000, 100);
+
+        byte[] actual = new byte[250];
+        cache.read(url, data.length, 130, actual, 0, 250, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 130, 380), actual);
+        assertEquals(1, numRequests);
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        actual = new byte[50];
+        cache.read(url, data.length, 310, actual, 0, 50, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 310, 360), actual);
+        assertEquals(1, numRequests);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testReadLastBlock() throws Exception {
+        ObjectStorageBlockCache cache = newCache(1000, 300);
+
+        byte[] actual = new byte[200];
+        cache.read(url, data.length, 800, actual, 0, 200, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 800, 1000), actual);
+
+        actual = new byte[10];
+        cache.read(url, data.length, 990, actual, 0, 10, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 990, 1000), actual);
+        assertEquals(1, numRequests);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ObjectStorageBlockCache cache = newCache(200, 100);
+
+        byte[] actual = new byte[1000];
+        cache.read(url, data.length, 0, actual, 0, 1000, reader);
+        assertArrayEquals(data, actual);
+        assertEquals(1, numRequests);
+
+        cache.read(url, data.length, 0, actual, 0, 1000, reader);
+        assertArrayEquals(data, actual);
+        assertTrue(numRequests > 1);
+    }
+
+    @Test
+    public void testManyObjects() throws Exception {
+        ObjectStorageBlockCache cache = newCache(1000, 100);
+
+        // Blocks of different objects are told apart, also after their slots have been reused.
+        for (int i = 0; i < 1000; i++) {
+            URL objectUrl = new URL("http://localhost/test" + i + ".bin");
+            int shift = i % 100;
+            ObjectStorageRangeReader shiftedReader = (u, position, array, offset, length) -> {
+                for (int j = 0; j < length; j++) {
+                    array[offset + j] = data[(int) ((position + j + shift) % data.length)];
+                }
+            };
+            byte[] actual = new byte[10];
+            cache.read(objectUrl, data.length, 500, actual, 0, 10, shiftedReader);
+            assertArrayEquals(Arrays.copyOfRange(data, 500 + shift, 510 + shift), actual);
+            cache.read(objectUrl, data.length, 500, actual, 0, 10, reader);
+            assertArrayEquals(Arrays.copyOfRange(data, 500 + shift, 510 + shift), actual);
+        }
+    }
+
+    private ObjectStorageBlockCache newCache(long capacity, int blockSize) {
+        if (offHeap) {
+            return new ObjectStorageOffHeapBlockCache(capacity, blockSize);
+        }
+        return new ObjectStorageHeapBlockCache(capacity, blockSize);
+    }
+}
@@ -0,0 +1,150 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private URL url;
+    private byte[] data;
+    private int numRequests;
+    private ObjectStorageRangeReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        url = new URL("http://localhost/test.bin");
+        data = new byte[1000];
+        new Random(2).nextBytes(data);
+        numRequests = 0;
+        reader = (url, position, array, offset, length) -> {
+            numRequests++;
+            System.arraycopy(data, (int) position, array, offset, length);
+        };
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        ObjectStorageDiskCache cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        byte[] actual = new byte[300];
+        cache.read(url, data.length, 650, actual, 0, 300, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 650, 950), actual);
+        assertEquals(1, numRequests);
+        cache.close();
+
+        cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        actual = new byte[100];
+        cache.read(url, data.length, 700, actual, 0, 100, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 700, 800), actual);
+        assertEquals(1, numRequests);
+        cache.close();
+    }
+
+    @Test
+    public void testUnflushedBlocksNotPersisted() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        ObjectStorageDiskCache cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        byte[] actual = new byte[100];
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertEquals(1, numRequests);
+
+        // As after a crash, the blocks written so far are not marked in the index file.
+        ObjectStorageDiskCache otherCache = new ObjectStorageDiskCache(directory, 64, 4);
+        otherCache.validate(url, data.length, "\"1\"", null);
+        otherCache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 100), actual);
+        assertEquals(2, numRequests);
+        otherCache.close();
+        cache.close();
+
+        // Closing flushes the index.
+        cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertEquals(2, numRequests);
+        cache.close();
+    }
+
+    @Test
+    public void testVersionChange() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        ObjectStorageDiskCache cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, null, "2016-07-13T17:24:10.000Z");
+        byte[] actual = new byte[100];
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertEquals(1, numRequests);
+
+        cache.validate(url, data.length, null, "2016-07-14T09:00:00.000Z");
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 100), actual);
+        assertEquals(2, numRequests);
+        cache.close();
+    }
+
+    @Test
+    public void testTruncatedDataFile() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        ObjectStorageDiskCache cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        byte[] actual = new byte[300];
+        cache.read(url, data.length, 600, actual, 0, 300, reader);
+        assertEquals(1, numRequests);
+        cache.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".data")) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.truncate(700);
+                    }
+                }
+            }
+        }
+
+        // The lost blocks are fetched again instead of failing.
+        cache = new ObjectStorageDiskCache(directory, 64, 4);
+        cache.validate(url, data.length, "\"1\"", null);
+        cache.read(url, data.length, 600, actual, 0, 300, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 600, 900), actual);
+        assertEquals(2, numRequests);
+        cache.read(url, data.length, 600, actual, 0, 300, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 600, 900), actual);
+        assertEquals(2, numRequests);
+        cache.close();
+    }
+
+    @Test
+    public void testNoVersion() throws Exception {
+        ObjectStorageDiskCache cache = new ObjectStorageDiskCache(temporaryFolder.getRoot().toPath(), 64, 4);
+        byte[] actual = new byte[100];
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        cache.read(url, data.length, 0, actual, 0, 100, reader);
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 100), actual);
+        assertEquals(2, numRequests);
+        cache.close();
+    }
+}
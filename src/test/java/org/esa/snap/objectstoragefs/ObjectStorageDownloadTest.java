@@ -0,0 +1,20 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageDownloadTest {
+
+    @Test
+    public void testPartSize() throws Exception {
+        // Configured sizes are used as given.
+        assertEquals(5000, ObjectStorageDownload.getPartSize(1L << 30, 5000, 8));
+        // Each worker transfers about four parts.
+        assertEquals(32L << 20, ObjectStorageDownload.getPartSize(1L << 30, 0, 8));
+        assertEquals(4L << 20, ObjectStorageDownload.getPartSize(100L << 20, 0, 8));
+        // Small objects use the minimum, huge objects the maximum part size.
+        assertEquals(ObjectStorageDownload.MIN_PART_SIZE, ObjectStorageDownload.getPartSize(100000, 0, 8));
+        assertEquals(ObjectStorageDownload.MAX_PART_SIZE, ObjectStorageDownload.getPartSize(1L << 40, 0, 8));
+    }
+}
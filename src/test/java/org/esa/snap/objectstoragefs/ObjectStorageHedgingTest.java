@@ -0,0 +1,87 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageHedgingTest {
+
+    @Test
+    public void testLatencyTracker() throws Exception {
+        ObjectStorageHedging.LatencyTracker tracker = new ObjectStorageHedging.LatencyTracker();
+        for (int i = 1; i < 20; i++) {
+            tracker.add(i * 1000);
+        }
+        // Too few samples.
+        assertEquals(-1, tracker.getPercentile(50));
+        for (int i = 20; i <= 100; i++) {
+            tracker.add(i * 1000);
+        }
+        assertEquals(50000, tracker.getPercentile(50));
+        assertEquals(95000, tracker.getPercentile(95));
+        assertEquals(100000, tracker.getPercentile(100));
+        assertEquals(1000, tracker.getPercentile(0));
+    }
+
+    @Test
+    public void testBudgetExhausted() throws Exception {
+        URL url = new URL("http://localhost/index.html");
+        AtomicInteger sendCount = new AtomicInteger();
+        int[] delay = {0};
+        ObjectStorageHedging.Sender sender = (method, u, headers, exchange) -> {
+            sendCount.incrementAndGet();
+            try {
+                Thread.sleep(delay[0]);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return newResponse();
+        };
+        // No tokens are earned, so only the initial token may be spent.
+        ObjectStorageHedging hedging = new ObjectStorageHedging(50, 1, 0);
+        try {
+            for (int i = 0; i < 20; i++) {
+                hedging.send("GET", url, Collections.emptyMap(), sender).close();
+            }
+            assertEquals(0, hedging.getHedgedRequestCount());
+            assertEquals(20, sendCount.get());
+
+            delay[0] = 200;
+            hedging.send("GET", url, Collections.emptyMap(), sender).close();
+            assertEquals(1, hedging.getHedgedRequestCount());
+
+            // The budget is exhausted, so the late request is not duplicated.
+            sendCount.set(0);
+            hedging.send("GET", url, Collections.emptyMap(), sender).close();
+            assertEquals(1, hedging.getHedgedRequestCount());
+            assertEquals(1, sendCount.get());
+        } finally {
+            hedging.close();
+        }
+    }
+
+    private static ObjectStorageResponse newResponse() throws IOException {
+        HttpURLConnection connection = new HttpURLConnection(null) {
+            @Override
+            public void connect() {
+            }
+
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+        };
+        return new ObjectStorageResponse(connection, 200, "OK", Collections.emptyMap(), false);
+    }
+}
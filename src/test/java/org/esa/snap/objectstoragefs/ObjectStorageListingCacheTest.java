@@ -0,0 +1,76 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageListingCacheTest {
+
+    private static final String[] PREFIXES = {"", "a/", "a/b/", "a/b/c/", "a/bc/"};
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ObjectStorageListingCache cache = newCache();
+
+        // The parent listing and the listings under "a/b/", but not those of "a/bc/" or "".
+        cache.invalidate("a/b");
+        assertEquals(listOf("", "a/bc/"), getCachedPrefixes(cache));
+
+        cache = newCache();
+        cache.invalidate("a/b/");
+        assertEquals(listOf("", "a/bc/"), getCachedPrefixes(cache));
+
+        cache = newCache();
+        cache.invalidate("a/bc/x.txt");
+        assertEquals(listOf("", "a/", "a/b/", "a/b/c/"), getCachedPrefixes(cache));
+
+        cache = newCache();
+        cache.invalidate("x.txt");
+        assertEquals(listOf("a/", "a/b/", "a/b/c/", "a/bc/"), getCachedPrefixes(cache));
+
+        cache = newCache();
+        cache.invalidate("");
+        assertEquals(listOf(), getCachedPrefixes(cache));
+    }
+
+    @Test
+    public void testInvalidateDiscardsPendingLoads() throws Exception {
+        ObjectStorageListingCache cache = newCache();
+        long generation = cache.getGeneration();
+        cache.invalidate("x.txt");
+        cache.put("x/", "/", Collections.emptyList(), generation);
+        assertNull(cache.get("x/", "/"));
+    }
+
+    private static ObjectStorageListingCache newCache() {
+        ObjectStorageListingCache cache = new ObjectStorageListingCache(
+                new ObjectStorageConfig(Collections.singletonMap(ObjectStorageConfig.LIST_CACHE_TTL, 60000)));
+        for (String prefix : PREFIXES) {
+            List<BasicFileAttributes> entries = new ArrayList<>();
+            entries.add(ObjectStorageFileAttributes.newFile(prefix + "file.txt", 1, "2016-07-13T17:24:10.000Z"));
+            cache.put(prefix, "/", entries, cache.getGeneration());
+        }
+        return cache;
+    }
+
+    private static List<String> getCachedPrefixes(ObjectStorageListingCache cache) {
+        List<String> prefixes = new ArrayList<>();
+        for (String prefix : PREFIXES) {
+            if (cache.get(prefix, "/") != null) {
+                prefixes.add(prefix);
+            }
+        }
+        return prefixes;
+    }
+
+    private static List<String> listOf(String... prefixes) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, prefixes);
+        return list;
+    }
+}
@@ -0,0 +1,66 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageLongIntMapTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        ObjectStorageLongIntMap map = new ObjectStorageLongIntMap(4);
+        assertEquals(0, map.size());
+        assertEquals(ObjectStorageLongIntMap.NO_VALUE, map.get(7L));
+
+        map.put(7L, 70);
+        map.put(1L << 32 | 7L, 71);
+        map.put(0L, 0);
+        assertEquals(3, map.size());
+        assertEquals(70, map.get(7L));
+        assertEquals(71, map.get(1L << 32 | 7L));
+        assertEquals(0, map.get(0L));
+
+        map.put(7L, 72);
+        assertEquals(3, map.size());
+        assertEquals(72, map.get(7L));
+
+        assertEquals(72, map.remove(7L));
+        assertEquals(ObjectStorageLongIntMap.NO_VALUE, map.remove(7L));
+        assertEquals(2, map.size());
+        assertEquals(ObjectStorageLongIntMap.NO_VALUE, map.get(7L));
+        assertEquals(71, map.get(1L << 32 | 7L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() throws Exception {
+        ObjectStorageLongIntMap map = new ObjectStorageLongIntMap(2);
+        map.put(1L, 1);
+        map.put(2L, 2);
+        map.put(3L, 3);
+    }
+
+    @Test
+    public void testRandomOperations() throws Exception {
+        ObjectStorageLongIntMap map = new ObjectStorageLongIntMap(1000);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            long key = (long) random.nextInt(8) << 32 | random.nextInt(400);
+            if (random.nextBoolean() && expected.size() < 1000) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                Integer value = expected.remove(key);
+                assertEquals(value != null ? value : ObjectStorageLongIntMap.NO_VALUE, map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
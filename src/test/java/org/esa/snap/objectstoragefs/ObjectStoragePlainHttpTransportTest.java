@@ -0,0 +1,123 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ObjectStoragePlainHttpTransportTest {
+
+    private static final byte[] DATA = new byte[100000];
+
+    static {
+        new Random(1).nextBytes(DATA);
+    }
+
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+    private AtomicInteger acceptedCount;
+    private volatile boolean chunked;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        acceptedCount = new AtomicInteger();
+        serverThread = new Thread(this::serve);
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        serverThread.join();
+    }
+
+    @Test
+    public void testAccepts() throws Exception {
+        URL url = new URL("http://localhost/bucket/key");
+        assertTrue(ObjectStoragePlainHttpTransport.accepts("GET", url, Collections.singletonMap("Range", "bytes=0-9")));
+        assertTrue(ObjectStoragePlainHttpTransport.accepts("HEAD", url, Collections.emptyMap()));
+        // Listings may be chunked or compressed.
+        assertFalse(ObjectStoragePlainHttpTransport.accepts("GET", url, Collections.emptyMap()));
+        assertFalse(ObjectStoragePlainHttpTransport.accepts("GET", new URL("https://localhost/bucket/key"),
+                                                             Collections.singletonMap("Range", "bytes=0-9")));
+    }
+
+    @Test
+    public void testReadIntoDirectBuffer() throws Exception {
+        ObjectStoragePlainHttpTransport transport = new ObjectStoragePlainHttpTransport(1000, 5000, 30000, 4);
+        URL url = new URL("http://localhost:" + serverSocket.getLocalPort() + "/key");
+        Semaphore permits = new Semaphore(0);
+        for (int i = 0; i < 3; i++) {
+            ObjectStorageResponse response = transport.send("GET", url, Collections.singletonMap("Range", "bytes=0-99999"), permits, null);
+            assertNotNull(response);
+            assertEquals(206, response.getStatusCode());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(DATA.length + 10);
+            while (response.read(buffer) >= 0) {
+            }
+            assertEquals(DATA.length, buffer.position());
+            buffer.flip();
+            assertEquals(ByteBuffer.wrap(DATA), buffer);
+            response.close();
+            assertEquals(i + 1, permits.availablePermits());
+        }
+        // The connection is reused.
+        assertEquals(1, acceptedCount.get());
+        transport.close();
+    }
+
+    @Test
+    public void testChunkedResponseLeftToUrlConnection() throws Exception {
+        chunked = true;
+        ObjectStoragePlainHttpTransport transport = new ObjectStoragePlainHttpTransport(1000, 5000, 30000, 4);
+        URL url = new URL("http://localhost:" + serverSocket.getLocalPort() + "/key");
+        assertNull(transport.send("GET", url, Collections.singletonMap("Range", "bytes=0-99999"), new Semaphore(0), null));
+        transport.close();
+    }
+
+    private void serve() {
+        while (true) {
+            try (Socket socket = serverSocket.accept()) {
+                acceptedCount.incrementAndGet();
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+                while (skipRequest(input)) {
+                    String head = chunked
+                            ? "HTTP/1.1 206 Partial Content\r\nTransfer-Encoding: chunked\r\n\r\n"
+                            : "HTTP/1.1 206 Partial Content\r\nContent-Length: " + DATA.length + "\r\n\r\n";
+                    output.write(head.getBytes(StandardCharsets.ISO_8859_1));
+                    output.write(DATA);
+                    output.flush();
+                }
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean skipRequest(InputStream input) {
+        try {
+            while (!ObjectStorageConnectionPool.readLine(input).isEmpty()) {
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageRetryPolicyTest {
+
+    @Test
+    public void testIsRetryable() throws Exception {
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new ConnectException("Connection refused")));
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new ObjectStorageHttpException("x", 503, "Service Unavailable")));
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new ObjectStorageHttpException("x", 500, "Internal Server Error")));
+        assertTrue(ObjectStorageRetryPolicy.isRetryable(new ObjectStorageHttpException("x", 429, "Too Many Requests")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new ObjectStorageHttpException("x", 403, "Forbidden")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new ObjectStorageHttpException("x", 412, "Precondition Failed")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new NoSuchFileException("x")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new EOFException()));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new InterruptedIOException()));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new UnknownHostException("x")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new MalformedURLException("x")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new SSLHandshakeException("x")));
+        assertFalse(ObjectStorageRetryPolicy.isRetryable(new IOException("connection pool is closed")));
+    }
+
+    @Test
+    public void testGetDelay() throws Exception {
+        ObjectStorageRetryPolicy policy = new ObjectStorageRetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getDelay(0) <= 100);
+            assertTrue(policy.getDelay(2) <= 400);
+            assertTrue(policy.getDelay(9) <= 1000);
+            assertTrue(policy.getDelay(100) <= 1000);
+            assertTrue(policy.getDelay(100) >= 0);
+        }
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        ObjectStorageRetryPolicy policy = new ObjectStorageRetryPolicy(3, 1, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals("ok", policy.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new SocketException("Connection reset");
+            }
+            return "ok";
+        }));
+        assertEquals(3, attempts.get());
+
+        attempts.set(0);
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new ObjectStorageHttpException("x", 503, "Service Unavailable");
+            });
+            fail();
+        } catch (ObjectStorageHttpException expected) {
+            assertEquals(503, expected.getStatusCode());
+        }
+        assertEquals(4, attempts.get());
+
+        attempts.set(0);
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new NoSuchFileException("x");
+            });
+            fail();
+        } catch (NoSuchFileException expected) {
+            // ok
+        }
+        assertEquals(1, attempts.get());
+    }
+}
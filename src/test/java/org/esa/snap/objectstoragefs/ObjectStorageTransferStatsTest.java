@@ -0,0 +1,39 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageTransferStatsTest {
+
+    @Test
+    public void testMaxSkipDistance() throws Exception {
+        ObjectStorageTransferStats stats = new ObjectStorageTransferStats();
+        assertEquals(-1, stats.getLatency(), 0);
+        assertEquals(-1, stats.getBandwidth(), 0);
+        assertEquals(16384, stats.getMaxSkipDistance(16384));
+
+        // 100 ms latency, 10 MB/s.
+        for (int i = 0; i < 20; i++) {
+            stats.recordLatency(100000000L);
+            stats.recordTransfer(1000000, 100000000L);
+        }
+        assertEquals(20, stats.getRequestCount());
+        assertEquals(20000000, stats.getTransferredBytes());
+        assertEquals(100, stats.getLatency(), 1e-6);
+        assertEquals(10000000, stats.getBandwidth(), 1);
+        assertEquals(1000000, stats.getMaxSkipDistance(16384), 1);
+
+        // Transfers from socket buffers do not dominate the bandwidth.
+        for (int i = 0; i < 10; i++) {
+            stats.recordTransfer(16384, 1000);
+        }
+        assertTrue(stats.getBandwidth() < 20000000);
+
+        // A fast network makes a reconnect cheaper than skipping.
+        for (int i = 0; i < 50; i++) {
+            stats.recordLatency(100000);
+        }
+        assertEquals(16384, stats.getMaxSkipDistance(16384));
+    }
+}
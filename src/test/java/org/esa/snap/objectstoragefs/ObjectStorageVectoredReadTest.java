@@ -0,0 +1,49 @@
+package org.esa.snap.objectstoragefs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectStorageVectoredReadTest {
+
+    @Test
+    public void testCoalesce() throws Exception {
+        long[] positions = {5000, 0, 1100, 100000, 2000, 100500};
+        int[] lengths = {100, 1000, 500, 1000, 0, 200};
+        List<ObjectStorageVectoredRead.Span> spans = ObjectStorageVectoredRead.coalesce(positions, lengths, 4096, 1 << 20);
+        assertEquals(2, spans.size());
+        assertEquals(0, spans.get(0).start);
+        assertEquals(5100, spans.get(0).end);
+        assertEquals(Arrays.asList(1, 2, 0), spans.get(0).ranges);
+        assertEquals(100000, spans.get(1).start);
+        assertEquals(101000, spans.get(1).end);
+        assertEquals(Arrays.asList(3, 5), spans.get(1).ranges);
+
+        spans = ObjectStorageVectoredRead.coalesce(positions, lengths, 0, 1 << 20);
+        assertEquals(4, spans.size());
+
+        // Spans do not grow beyond the maximum size.
+        spans = ObjectStorageVectoredRead.coalesce(positions, lengths, 1 << 20, 10000);
+        assertEquals(2, spans.size());
+        assertEquals(5100, spans.get(0).end);
+    }
+
+    @Test
+    public void testGetBoundary() throws Exception {
+        assertEquals("3d6b6a416f9b5", ObjectStorageVectoredRead.getBoundary("multipart/byteranges; boundary=3d6b6a416f9b5"));
+        assertEquals("a b", ObjectStorageVectoredRead.getBoundary("multipart/byteranges; boundary=\"a b\"; charset=utf-8"));
+        assertNull(ObjectStorageVectoredRead.getBoundary("application/octet-stream"));
+        assertNull(ObjectStorageVectoredRead.getBoundary(null));
+    }
+
+    @Test
+    public void testParseContentRange() throws Exception {
+        assertArrayEquals(new long[]{100, 200}, ObjectStorageVectoredRead.parseContentRange("bytes 100-199/1000"));
+        assertArrayEquals(new long[]{0, 1}, ObjectStorageVectoredRead.parseContentRange("bytes 0-0/*"));
+        assertNull(ObjectStorageVectoredRead.parseContentRange("bytes */1000"));
+        assertNull(ObjectStorageVectoredRead.parseContentRange("items 1-2/3"));
+    }
+}
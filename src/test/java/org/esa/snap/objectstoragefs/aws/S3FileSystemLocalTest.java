@@ -1,16 +1,51 @@
 package org.esa.snap.objectstoragefs.aws;
 
-import org.esa.snap.objectstoragefs.ObjectStorageFileAttributes;
+import org.esa.snap.objectstoragefs.ObjectStorageByteChannel;
+import org.esa.snap.objectstoragefs.ObjectStorageConfig;
+import org.esa.snap.objectstoragefs.ObjectStorageFileSystem;
+import org.esa.snap.objectstoragefs.ObjectStorageHttpException;
+import org.esa.snap.objectstoragefs.ObjectStorageOpenOption;
+import org.esa.snap.objectstoragefs.ObjectStorageTransferStats;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -69,8 +104,9 @@ public class S3FileSystemLocalTest extends S3FileSystemTest {
     @Test
     public void testScanner() throws Exception {
         List<BasicFileAttributes> items;
+        int compressedListResponseCount = apiMock.getCompressedListResponseCount();
 
-        items = new S3Walker().walk(getAddress(), "", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "", "/").collect(Collectors.toList());
         assertEquals(5, items.size());
         assertEquals("GENERAL_QUALITY.xml", items.get(0).fileKey());
         assertTrue(items.get(0).isRegularFile());
@@ -83,7 +119,7 @@ public class S3FileSystemLocalTest extends S3FileSystemTest {
         assertEquals("tiles/", items.get(4).fileKey());
         assertTrue(items.get(4).isDirectory());
 
-        items = new S3Walker().walk(getAddress(), "products/", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "products/", "/").collect(Collectors.toList());
         assertEquals(3, items.size());
         assertEquals("products/2015/", items.get(0).fileKey());
         assertTrue(items.get(0).isDirectory());
@@ -92,7 +128,7 @@ public class S3FileSystemLocalTest extends S3FileSystemTest {
         assertEquals("products/2017/", items.get(2).fileKey());
         assertTrue(items.get(2).isDirectory());
 
-        items = new S3Walker().walk(getAddress(), "tiles/", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "tiles/", "/").collect(Collectors.toList());
         assertEquals(3, items.size());
         assertEquals("tiles/1/", items.get(0).fileKey());
         assertTrue(items.get(0).isDirectory());
@@ -100,5 +136,1131 @@ public class S3FileSystemLocalTest extends S3FileSystemTest {
         assertTrue(items.get(1).isDirectory());
         assertEquals("tiles/3/", items.get(2).fileKey());
         assertTrue(items.get(2).isDirectory());
+        // Listings are transferred gzip-compressed.
+        assertEquals(compressedListResponseCount + 3, apiMock.getCompressedListResponseCount());
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.READ_AHEAD_WINDOW_SIZE, 4);
+        env.put(ObjectStorageConfig.READ_AHEAD_CONCURRENCY, 2);
+        env.put(ObjectStorageConfig.READ_AHEAD_BUFFER_SIZE, "64k");
+        reopenFileSystem(env);
+
+        String key = "tiles/2/C/CV/2015/12/25/3/B02.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            assertEquals(expected.length, channel.size());
+
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            assertEquals(expected.length, channel.read(buffer));
+            assertArrayEquals(expected, buffer.array());
+
+            channel.position(300000);
+            buffer = ByteBuffer.allocateDirect(100000);
+            assertEquals(100000, channel.read(buffer));
+            assertEquals(400000, channel.position());
+            byte[] actual = new byte[100000];
+            buffer.flip();
+            buffer.get(actual);
+            assertArrayEquals(Arrays.copyOfRange(expected, 300000, 400000), actual);
+        }
+    }
+
+    @Test
+    public void testBlockCache() throws Exception {
+        testBlockCache(false);
+    }
+
+    @Test
+    public void testOffHeapBlockCache() throws Exception {
+        testBlockCache(true);
+    }
+
+    private void testBlockCache(boolean offHeap) throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.BLOCK_CACHE_SIZE, "4m");
+        env.put(ObjectStorageConfig.BLOCK_CACHE_BLOCK_SIZE, "16k");
+        env.put(ObjectStorageConfig.BLOCK_CACHE_OFF_HEAP, offHeap);
+        reopenFileSystem(env);
+
+        String key = "tiles/3/C/CV/2015/12/25/1/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        for (int i = 0; i < 2; i++) {
+            try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+                channel.position(500000);
+                ByteBuffer buffer = ByteBuffer.allocate(40000);
+                assertEquals(40000, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(expected, 500000, 540000), buffer.array());
+
+                channel.position(expected.length - 100);
+                buffer = ByteBuffer.allocate(100);
+                assertEquals(100, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 100, expected.length), buffer.array());
+            }
+        }
+    }
+
+    @Test
+    public void testDiskCache() throws Exception {
+        Path cacheDir = Files.createTempDirectory("objectstoragefs-test");
+        try {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.DISK_CACHE_DIR, cacheDir.toString());
+            env.put(ObjectStorageConfig.DISK_CACHE_BLOCK_SIZE, "32k");
+
+            String key = "tiles/1/C/CV/2015/12/25/7/B03.jp2";
+            byte[] expected = apiMock.getFileData(key);
+            for (int i = 0; i < 2; i++) {
+                reopenFileSystem(new HashMap<>(env));
+                int getRequestCount = apiMock.getGetRequestCount(key);
+                try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+                    channel.position(200000);
+                    ByteBuffer buffer = ByteBuffer.allocate(100000);
+                    assertEquals(100000, channel.read(buffer));
+                    assertArrayEquals(Arrays.copyOfRange(expected, 200000, 300000), buffer.array());
+                }
+                if (i == 0) {
+                    assertTrue(apiMock.getGetRequestCount(key) > getRequestCount);
+                } else {
+                    assertEquals(getRequestCount, apiMock.getGetRequestCount(key));
+                }
+            }
+        } finally {
+            fs.close();
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(cacheDir);
+        }
+    }
+
+    @Test
+    public void testDiskCachePositionalRead() throws Exception {
+        Path cacheDir = Files.createTempDirectory("objectstoragefs-test");
+        try {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.DISK_CACHE_DIR, cacheDir.toString());
+            env.put(ObjectStorageConfig.DISK_CACHE_BLOCK_SIZE, "32k");
+
+            // Positional reads fill and use the persistent cache without a byte channel.
+            String key = "tiles/1/C/CV/2015/12/25/6/B03.jp2";
+            byte[] expected = apiMock.getFileData(key);
+            for (int i = 0; i < 2; i++) {
+                reopenFileSystem(new HashMap<>(env));
+                int getRequestCount = apiMock.getGetRequestCount(key);
+                ByteBuffer buffer = ByteBuffer.allocate(100000);
+                fs.readFully(fs.getPath("/" + key), 200000, buffer);
+                assertArrayEquals(Arrays.copyOfRange(expected, 200000, 300000), buffer.array());
+                if (i == 0) {
+                    assertTrue(apiMock.getGetRequestCount(key) > getRequestCount);
+                } else {
+                    assertEquals(getRequestCount, apiMock.getGetRequestCount(key));
+                }
+            }
+        } finally {
+            fs.close();
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(cacheDir);
+        }
+    }
+
+    @Test
+    public void testBoundedRangeRequests() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.RANGE_REQUEST_INITIAL_SIZE, "1k");
+        env.put(ObjectStorageConfig.RANGE_REQUEST_MAX_SIZE, "64k");
+        reopenFileSystem(env);
+
+        String key = "tiles/3/C/CV/2015/12/25/4/B02.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            assertEquals(expected.length, channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(100, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, 0, 100), buffer.array());
+        }
+        // The header read is served by the first, small range.
+        assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+
+        getRequestCount = apiMock.getGetRequestCount(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            while (buffer.hasRemaining()) {
+                ByteBuffer chunk = buffer.slice();
+                chunk.limit(Math.min(chunk.remaining(), 3000));
+                channel.read(chunk);
+                buffer.position(buffer.position() + chunk.position());
+            }
+            assertArrayEquals(expected, buffer.array());
+
+            channel.position(1000);
+            buffer = ByteBuffer.allocate(5000);
+            assertEquals(5000, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, 1000, 6000), buffer.array());
+        }
+        // Range sizes double while reading sequentially: 1k, 2k, 4k, ..., 64k, 64k, ...
+        int rangeCount = 0;
+        for (long position = 0, rangeSize = 1024; position < expected.length; position += rangeSize, rangeSize = Math.min(2 * rangeSize, 65536)) {
+            rangeCount++;
+        }
+        assertTrue(apiMock.getGetRequestCount(key) - getRequestCount <= rangeCount + 2);
+    }
+
+    @Test
+    public void testDirectBufferRead() throws Exception {
+        String key = "tiles/2/C/CV/2015/12/25/6/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+            assertEquals(100, channel.read(buffer));
+            ByteBuffer largeBuffer = ByteBuffer.allocateDirect(expected.length - 100);
+            assertEquals(expected.length - 100, channel.read(largeBuffer));
+            assertEquals(expected.length, channel.position());
+
+            byte[] actual = new byte[expected.length];
+            buffer.flip();
+            buffer.get(actual, 0, 100);
+            largeBuffer.flip();
+            largeBuffer.get(actual, 100, expected.length - 100);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testAccessHints() throws Exception {
+        String key = "tiles/3/C/CV/2015/12/25/5/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        for (ObjectStorageOpenOption hint : ObjectStorageOpenOption.values()) {
+            try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key), StandardOpenOption.READ, hint)) {
+                for (int position : new int[]{700000, 100, 300000, 300000 + 5000}) {
+                    channel.position(position);
+                    ByteBuffer buffer = ByteBuffer.allocate(20000);
+                    assertEquals(20000, channel.read(buffer));
+                    assertArrayEquals(Arrays.copyOfRange(expected, position, position + 20000), buffer.array());
+                }
+            }
+        }
+        try {
+            Files.newByteChannel(fs.getPath("/" + key), ObjectStorageOpenOption.SEQUENTIAL, ObjectStorageOpenOption.RANDOM);
+            fail();
+        } catch (IllegalArgumentException expectedException) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testTailCache() throws Exception {
+        String key = "tiles/1/C/CV/2015/12/25/6/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            // Footer-first access: the length of the index, then the index, both served by a single request.
+            channel.position(expected.length - 8);
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            assertEquals(8, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 8, expected.length), buffer.array());
+            channel.position(expected.length - 30000);
+            buffer = ByteBuffer.allocateDirect(29992);
+            assertEquals(29992, channel.read(buffer));
+            byte[] actual = new byte[29992];
+            buffer.flip();
+            buffer.get(actual);
+            assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 30000, expected.length - 8), actual);
+            int tailRequestCount = apiMock.getGetRequestCount(key);
+
+            channel.position(1000);
+            buffer = ByteBuffer.allocate(1000);
+            assertEquals(1000, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, 1000, 2000), buffer.array());
+            assertEquals(getRequestCount + 2, tailRequestCount);
+        }
+    }
+
+    @Test
+    public void testLazyOpen() throws Exception {
+        String key = "tiles/2/C/CV/2015/12/25/8/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        Path listedPath = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/tiles/2/C/CV/2015/12/25/8/"))) {
+            for (Path path : stream) {
+                if (path.toString().equals("/" + key)) {
+                    listedPath = path;
+                }
+            }
+        }
+        assertNotNull(listedPath);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        int headRequestCount = apiMock.getHeadRequestCount(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(listedPath)) {
+            // The size is known from the listing.
+            assertEquals(expected.length, channel.size());
+            channel.position(expected.length - 100);
+            assertEquals(getRequestCount, apiMock.getGetRequestCount(key));
+
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(100, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 100, expected.length), buffer.array());
+        }
+        assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+        assertEquals(headRequestCount, apiMock.getHeadRequestCount(key));
+
+        // Without known attributes, the first range request tells the size.
+        getRequestCount = apiMock.getGetRequestCount(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            channel.position(500000);
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            assertEquals(1000, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, 500000, 501000), buffer.array());
+            assertEquals(expected.length, channel.size());
+        }
+        assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+        assertEquals(headRequestCount, apiMock.getHeadRequestCount(key));
+    }
+
+    @Test
+    public void testReadRanges() throws Exception {
+        String key = "tiles/1/C/CV/2015/12/25/3/B02.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        long[] positions = {900000, 1000, 3000, 500000, 5000, 505000, 0};
+        int[] lengths = {20000, 1500, 1000, 4000, 100, 3000, 0};
+
+        for (boolean multipart : new boolean[]{false, true}) {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.RANGE_COALESCE_GAP, "8k");
+            env.put(ObjectStorageConfig.MULTIPART_RANGE_REQUESTS, multipart);
+            reopenFileSystem(env);
+
+            ByteBuffer[] buffers = new ByteBuffer[positions.length];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = i % 2 == 0 ? ByteBuffer.allocate(lengths[i]) : ByteBuffer.allocateDirect(lengths[i]);
+            }
+            int getRequestCount = apiMock.getGetRequestCount(key);
+            ((ObjectStorageFileSystem) fs).readRanges(fs.getPath("/" + key), positions, buffers);
+            // Three spans: [0, 5100), [500000, 508000) and [900000, 920000).
+            assertEquals(getRequestCount + (multipart ? 1 : 3), apiMock.getGetRequestCount(key));
+            for (int i = 0; i < buffers.length; i++) {
+                assertFalse(buffers[i].hasRemaining());
+                buffers[i].flip();
+                byte[] actual = new byte[lengths[i]];
+                buffers[i].get(actual);
+                assertArrayEquals(Arrays.copyOfRange(expected, (int) positions[i], (int) positions[i] + lengths[i]), actual);
+            }
+        }
+
+        try {
+            ((ObjectStorageFileSystem) fs).readRanges(fs.getPath("/" + key), new long[]{expected.length - 10}, new ByteBuffer[]{ByteBuffer.allocate(20)});
+            fail();
+        } catch (EOFException expectedException) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testCopyToLocalFile() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.DOWNLOAD_PART_SIZE, "100k");
+        env.put(ObjectStorageConfig.DOWNLOAD_CONCURRENCY, 4);
+        reopenFileSystem(env);
+
+        String key = "tiles/2/C/CV/2015/12/25/1/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        Path source = fs.getPath("/" + key);
+        Path dir = Files.createTempDirectory("objectstoragefs-test");
+        Path target = dir.resolve("B01.jp2");
+        try {
+            int getRequestCount = apiMock.getGetRequestCount(key);
+            fs.provider().copy(source, target);
+            assertArrayEquals(expected, Files.readAllBytes(target));
+            assertEquals(getRequestCount + (expected.length + 102399) / 102400, apiMock.getGetRequestCount(key));
+
+            try {
+                fs.provider().copy(source, target);
+                fail();
+            } catch (FileAlreadyExistsException expectedException) {
+                // ok
+            }
+            Files.write(target, new byte[2 * expected.length]);
+            fs.provider().copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            assertArrayEquals(expected, Files.readAllBytes(target));
+
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.position(10);
+                assertEquals(300000, ((ObjectStorageFileSystem) fs).transferTo(source, 500000, 300000, channel));
+                assertEquals(300010, channel.position());
+                assertEquals(expected.length - 1000000, ((ObjectStorageFileSystem) fs).transferTo(source, 1000000, 1000000, channel));
+            }
+            byte[] actual = Files.readAllBytes(target);
+            assertEquals(300010 + expected.length - 1000000, actual.length);
+            assertArrayEquals(Arrays.copyOfRange(expected, 500000, 800000), Arrays.copyOfRange(actual, 10, 300010));
+            assertArrayEquals(Arrays.copyOfRange(expected, 1000000, expected.length), Arrays.copyOfRange(actual, 300010, actual.length));
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            assertEquals(expected.length - 100, ((ObjectStorageFileSystem) fs).transferTo(source, 100, Long.MAX_VALUE, Channels.newChannel(stream)));
+            assertArrayEquals(Arrays.copyOfRange(expected, 100, expected.length), stream.toByteArray());
+        } finally {
+            Files.deleteIfExists(target);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testReadRangesOnIoThreads() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.IO_THREADS, 2);
+        env.put(ObjectStorageConfig.RANGE_COALESCE_GAP, 0);
+        reopenFileSystem(env);
+        ObjectStorageFileSystem objectStorageFs = (ObjectStorageFileSystem) fs;
+
+        String[] keys = {"tiles/3/C/CV/2015/12/25/2/B01.jp2", "tiles/3/C/CV/2015/12/25/2/B02.jp2"};
+        List<CompletableFuture<ByteBuffer[]>> futures = new ArrayList<>();
+        // The delayed requests let the vectored reads run on the I/O threads completing them.
+        apiMock.delayRequests(keys.length, 300);
+        try {
+            for (String key : keys) {
+                Path path = fs.getPath("/" + key);
+                futures.add(objectStorageFs.readAttributesAsync(path).thenApply(attributes -> {
+                    // Each range is requested separately, so the read fans out.
+                    long[] positions = new long[8];
+                    ByteBuffer[] buffers = new ByteBuffer[positions.length];
+                    for (int i = 0; i < positions.length; i++) {
+                        positions[i] = i * 100000L;
+                        buffers[i] = ByteBuffer.allocate(1000);
+                    }
+                    try {
+                        objectStorageFs.readRanges(path, positions, buffers);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return buffers;
+                }));
+            }
+            for (int k = 0; k < keys.length; k++) {
+                byte[] expected = apiMock.getFileData(keys[k]);
+                ByteBuffer[] buffers = futures.get(k).get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < buffers.length; i++) {
+                    assertArrayEquals(Arrays.copyOfRange(expected, i * 100000, i * 100000 + 1000), buffers[i].array());
+                }
+            }
+        } finally {
+            apiMock.delayRequests(0, 0);
+        }
+    }
+
+    @Test
+    public void testReadAsync() throws Exception {
+        String key = "tiles/3/C/CV/2015/12/25/2/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        ObjectStorageFileSystem objectStorageFs = (ObjectStorageFileSystem) fs;
+        Path path = fs.getPath("/" + key);
+
+        BasicFileAttributes attributes = objectStorageFs.readAttributesAsync(path).get();
+        assertEquals(expected.length, attributes.size());
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        try (ObjectStorageByteChannel channel = (ObjectStorageByteChannel) Files.newByteChannel(path)) {
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer buffer = ByteBuffer.allocate(10000);
+                buffers.add(buffer);
+                futures.add(channel.readAsync(buffer, i * 10000L));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            assertEquals(0, channel.position());
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(10000, (int) futures.get(i).get());
+            assertArrayEquals(Arrays.copyOfRange(expected, i * 10000, (i + 1) * 10000), buffers.get(i).array());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1000);
+        assertEquals(100, (int) objectStorageFs.readAsync(path, buffer, expected.length - 100).get());
+        assertEquals(100, buffer.position());
+        assertEquals(-1, (int) objectStorageFs.readAsync(path, buffer, expected.length).get());
+
+        try {
+            objectStorageFs.readAttributesAsync(fs.getPath("/tiles/missing.jp2")).get();
+            fail();
+        } catch (ExecutionException expectedException) {
+            assertTrue(expectedException.getCause() instanceof NoSuchFileException);
+        }
+    }
+
+    @Test
+    public void testFileChannel() throws Exception {
+        Path dir = Files.createTempDirectory("objectstoragefs-test");
+        try {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.DISK_CACHE_DIR, dir);
+            env.put(ObjectStorageConfig.FILE_CHANNEL_BLOCK_SIZE, "64k");
+            reopenFileSystem(env);
+
+            String key = "tiles/1/C/CV/2015/12/25/7/B03.jp2";
+            byte[] expected = apiMock.getFileData(key);
+            try (FileChannel channel = FileChannel.open(fs.getPath("/" + key))) {
+                assertEquals(expected.length, channel.size());
+                int getRequestCount = apiMock.getGetRequestCount(key);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 300000, 100000);
+                byte[] actual = new byte[100000];
+                mapped.get(actual);
+                assertArrayEquals(Arrays.copyOfRange(expected, 300000, 400000), actual);
+                // Only the blocks of the mapped region are downloaded, by a single request.
+                assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+
+                ByteBuffer buffer = ByteBuffer.allocate(1000);
+                assertEquals(1000, channel.read(buffer, 350000));
+                assertArrayEquals(Arrays.copyOfRange(expected, 350000, 351000), buffer.array());
+                assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+
+                channel.position(expected.length - 500);
+                buffer = ByteBuffer.allocate(1000);
+                assertEquals(500, channel.read(buffer));
+                assertEquals(-1, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 500, expected.length), Arrays.copyOf(buffer.array(), 500));
+
+                try {
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, 100);
+                    fail();
+                } catch (NonWritableChannelException expectedException) {
+                    // ok
+                }
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                // The local file is deleted when the channel is closed.
+                assertEquals(0, files.count());
+            }
+        } finally {
+            fs.close();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testInputStream() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.INPUT_STREAM_BUFFER_SIZE, "10k");
+        reopenFileSystem(env);
+
+        String key = "tiles/2/C/CV/2015/12/25/4/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream stream = Files.newInputStream(fs.getPath("/" + key))) {
+            byte[] buffer = new byte[7000];
+            actual.write(stream.read());
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                actual.write(buffer, 0, n);
+            }
+            assertEquals(-1, stream.read());
+        }
+        assertArrayEquals(expected, actual.toByteArray());
+        assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+
+        try (InputStream stream = Files.newInputStream(fs.getPath("/" + key))) {
+            byte[] buffer = new byte[100];
+            assertEquals(100, stream.read(buffer));
+            assertArrayEquals(Arrays.copyOf(expected, 100), buffer);
+        }
+
+        try (InputStream stream = Files.newInputStream(fs.getPath("/index.html"))) {
+            byte[] buffer = new byte[100];
+            assertEquals(7, stream.read(buffer));
+            assertEquals(-1, stream.read(buffer));
+        }
+
+        try (InputStream stream = Files.newInputStream(fs.getPath("/tiles/missing.jp2"))) {
+            stream.read();
+            fail();
+        } catch (NoSuchFileException expectedException) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testHedgedRequests() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.HEDGE_PERCENTILE, 90);
+        env.put(ObjectStorageConfig.HEDGE_MIN_DELAY, 50);
+        env.put(ObjectStorageConfig.HEDGE_BUDGET, 0.5);
+        reopenFileSystem(env);
+
+        String key = "tiles/3/C/CV/2015/12/25/9/B02.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        Path path = fs.getPath("/" + key);
+        for (int i = 0; i < 30; i++) {
+            try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+                channel.position(i * 1000);
+                channel.read(ByteBuffer.allocate(100));
+            }
+        }
+        assertEquals(0, fs.getConnectionPool().getHedgedRequestCount());
+
+        apiMock.delayRequests(1, 3000);
+        long startTime = System.currentTimeMillis();
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            channel.position(500000);
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(100, channel.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(expected, 500000, 500100), buffer.array());
+        } finally {
+            apiMock.delayRequests(0, 0);
+        }
+        // The duplicate request has been answered first.
+        assertTrue(System.currentTimeMillis() - startTime < 3000);
+        assertEquals(1, fs.getConnectionPool().getHedgedRequestCount());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.RETRY_INITIAL_DELAY, 1);
+        // Let small reads hit the connection.
+        env.put(ObjectStorageConfig.CHANNEL_BUFFER_SIZE, 0);
+        reopenFileSystem(env);
+
+        String key = "tiles/2/C/CV/2015/12/25/6/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        Path path = fs.getPath("/" + key);
+
+        // A stream interrupted in the middle is resumed at the current position.
+        apiMock.truncateResponses(2, 5000);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.position() < channel.size()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), channel.size() - channel.position()));
+                channel.read(buffer);
+                actual.write(buffer.array(), 0, buffer.position());
+            }
+        }
+        assertArrayEquals(expected, actual.toByteArray());
+
+        apiMock.truncateResponses(1, 3000);
+        ByteBuffer[] buffers = {ByteBuffer.allocate(10000)};
+        ((ObjectStorageFileSystem) fs).readRanges(path, new long[]{20000}, buffers);
+        assertArrayEquals(Arrays.copyOfRange(expected, 20000, 30000), buffers[0].array());
+
+        apiMock.truncateResponses(1, 3000);
+        actual.reset();
+        try (InputStream stream = Files.newInputStream(path)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                actual.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(expected, actual.toByteArray());
+
+        // Listing pages failing with "503 Service Unavailable" are requested again.
+        apiMock.failListRequests(2);
+        List<BasicFileAttributes> items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "tiles/", "/").collect(Collectors.toList());
+        assertEquals(3, items.size());
+
+        // The object is not resumed if it has changed in the meantime.
+        byte[] data = Arrays.copyOf(expected, 20000);
+        apiMock.addFile("retry/changing.bin", "2016-07-13T17:24:10.000Z", "application/binary", data);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/retry/changing.bin"))) {
+            apiMock.truncateResponses(1, 1000);
+            channel.read(ByteBuffer.allocate(500));
+            apiMock.addFile("retry/changing.bin", "2016-07-13T17:24:11.000Z", "application/binary", Arrays.copyOf(expected, 19000));
+            channel.read(ByteBuffer.allocate(2000));
+            fail();
+        } catch (ObjectStorageHttpException expectedException) {
+            assertEquals(412, expectedException.getStatusCode());
+        } finally {
+            apiMock.truncateResponses(0, 0);
+            apiMock.removeFile("retry/changing.bin");
+        }
+    }
+
+    @Test
+    public void testPositionalRead() throws Exception {
+        String key = "tiles/3/C/CV/2015/12/25/2/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        Path path = fs.getPath("/" + key);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        try (ObjectStorageByteChannel channel = (ObjectStorageByteChannel) Files.newByteChannel(path)) {
+            List<Future<?>> futures = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                for (int i = 0; i < 8; i++) {
+                    int thread = i;
+                    futures.add(executor.submit(() -> {
+                        for (int j = 0; j < 10; j++) {
+                            int position = (thread * 10 + j) * 12000;
+                            ByteBuffer buffer = j % 2 == 0 ? ByteBuffer.allocate(5000) : ByteBuffer.allocateDirect(5000);
+                            assertEquals(5000, channel.read(buffer, position));
+                            buffer.flip();
+                            byte[] actual = new byte[5000];
+                            buffer.get(actual);
+                            assertArrayEquals(Arrays.copyOfRange(expected, position, position + 5000), actual);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(0, channel.position());
+            assertEquals(getRequestCount + 80, apiMock.getGetRequestCount(key));
+
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(10, channel.read(buffer, expected.length - 10));
+            assertEquals(-1, channel.read(buffer, expected.length));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1000);
+        ((ObjectStorageFileSystem) fs).readFully(path, 2000, buffer);
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(Arrays.copyOfRange(expected, 2000, 3000), buffer.array());
+        try {
+            ((ObjectStorageFileSystem) fs).readFully(path, expected.length - 10, ByteBuffer.allocate(20));
+            fail();
+        } catch (EOFException expectedException) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testChannelCursors() throws Exception {
+        String key = "tiles/1/C/CV/2015/12/25/7/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int[] getRequestCounts = new int[2];
+        for (int maxCursors = 1; maxCursors <= 2; maxCursors++) {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.CHANNEL_CURSORS, maxCursors);
+            env.put(ObjectStorageConfig.CHANNEL_BUFFER_SIZE, 0);
+            reopenFileSystem(env);
+
+            int getRequestCount = apiMock.getGetRequestCount(key);
+            try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+                // Alternate between two regions of the object, reading each sequentially.
+                for (int i = 0; i < 40; i++) {
+                    int position = (i % 2 == 0 ? 100000 : 700000) + (i / 2) * 500;
+                    ByteBuffer buffer = ByteBuffer.allocate(500);
+                    channel.position(position);
+                    channel.read(buffer);
+                    assertArrayEquals(Arrays.copyOfRange(expected, position, position + 500), buffer.array());
+                }
+            }
+            getRequestCounts[maxCursors - 1] = apiMock.getGetRequestCount(key) - getRequestCount;
+        }
+        // With a single cursor, every switch between the regions requests a new range.
+        assertEquals(40, getRequestCounts[0]);
+        assertTrue(getRequestCounts[1] < 10);
+    }
+
+    @Test
+    public void testChannelCursorLimit() throws Exception {
+        String key = "tiles/1/C/CV/2015/12/25/7/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int[] getRequestCounts = new int[2];
+        for (int cursorLimit = 1; cursorLimit <= 2; cursorLimit++) {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.CHANNEL_CURSOR_LIMIT, cursorLimit);
+            env.put(ObjectStorageConfig.CHANNEL_BUFFER_SIZE, 0);
+            reopenFileSystem(env);
+
+            int getRequestCount = apiMock.getGetRequestCount(key);
+            try (SeekableByteChannel channel1 = Files.newByteChannel(fs.getPath("/" + key));
+                 SeekableByteChannel channel2 = Files.newByteChannel(fs.getPath("/" + key))) {
+                // Alternate between two channels, each reading sequentially.
+                for (int i = 0; i < 20; i++) {
+                    SeekableByteChannel channel = i % 2 == 0 ? channel1 : channel2;
+                    int position = (i / 2) * 500;
+                    ByteBuffer buffer = ByteBuffer.allocate(500);
+                    channel.read(buffer);
+                    assertArrayEquals(Arrays.copyOfRange(expected, position, position + 500), buffer.array());
+                }
+            }
+            getRequestCounts[cursorLimit - 1] = apiMock.getGetRequestCount(key) - getRequestCount;
+        }
+        // With a single idle cursor, each channel closes the other channel's range.
+        assertEquals(20, getRequestCounts[0]);
+        assertTrue(getRequestCounts[1] < 10);
+    }
+
+    @Test
+    public void testForwardSkip() throws Exception {
+        reopenFileSystem(new HashMap<>());
+        String key = "tiles/2/C/CV/2015/12/25/8/B01.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        int getRequestCount = apiMock.getGetRequestCount(key);
+        // A slow request makes skipping far ahead on the open response cheaper than a new request.
+        apiMock.delayRequests(1, 200);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key), ObjectStorageOpenOption.SEQUENTIAL)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            channel.read(buffer);
+            channel.position(300000);
+            buffer.clear();
+            channel.read(buffer);
+            assertArrayEquals(Arrays.copyOfRange(expected, 300000, 301000), buffer.array());
+        }
+        assertEquals(getRequestCount + 1, apiMock.getGetRequestCount(key));
+
+        ObjectStorageTransferStats stats = ((ObjectStorageFileSystem) fs).getTransferStats();
+        assertEquals(1, stats.getRequestCount());
+        assertTrue(stats.getLatency() >= 200);
+        assertTrue(stats.getBandwidth() > 0);
+        assertTrue(stats.getTransferredBytes() >= 301000);
+    }
+
+    @Test
+    public void testSmallReads() throws Exception {
+        String key = "tiles/3/C/CV/2015/12/25/5/B03.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        for (int bufferSize : new int[]{0, 256 * 1024}) {
+            Map<String, Object> env = new HashMap<>();
+            env.put(ObjectStorageConfig.CHANNEL_BUFFER_SIZE, bufferSize);
+            reopenFileSystem(env);
+
+            int getRequestCount = apiMock.getGetRequestCount(key);
+            try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+                ByteBuffer small = ByteBuffer.allocate(8);
+                for (int position = 0; position < 300000; position += 8) {
+                    small.clear();
+                    channel.read(small);
+                    assertArrayEquals(Arrays.copyOfRange(expected, position, position + 8), small.array());
+                }
+                if (bufferSize > 0) {
+                    // Two refills of the buffer.
+                    assertEquals(getRequestCount + 2, apiMock.getGetRequestCount(key));
+                }
+                // Large reads bypass the buffer.
+                channel.position(900000);
+                ByteBuffer large = ByteBuffer.allocate(100000);
+                channel.read(large);
+                assertArrayEquals(Arrays.copyOfRange(expected, 900000, 1000000), large.array());
+                // Seeks back into the buffer are served from memory.
+                int count = apiMock.getGetRequestCount(key);
+                channel.position(299990);
+                small.clear();
+                channel.read(small);
+                assertArrayEquals(Arrays.copyOfRange(expected, 299990, 299998), small.array());
+                if (bufferSize > 0) {
+                    assertEquals(count, apiMock.getGetRequestCount(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testListingPages() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_PREFETCH_PAGES, 0);
+        reopenFileSystem(env);
+        Path dir = fs.getPath("/tiles/1/C/CV/2015/12/25/");
+        apiMock.setMaxKeys(3);
+        try {
+            // The listing is spread over four pages.
+            int listRequestCount = apiMock.getListRequestCount();
+            List<String> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    entries.add(entry.toString());
+                }
+            }
+            assertEquals(10, entries.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("/tiles/1/C/CV/2015/12/25/" + i + "/", entries.get(i));
+            }
+            assertEquals(listRequestCount + 4, apiMock.getListRequestCount());
+
+            // Closing the stream early does not fetch the remaining pages.
+            listRequestCount = apiMock.getListRequestCount();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                Iterator<Path> iterator = stream.iterator();
+                assertEquals("/tiles/1/C/CV/2015/12/25/0/", iterator.next().toString());
+                assertEquals("/tiles/1/C/CV/2015/12/25/1/", iterator.next().toString());
+            }
+            assertEquals(listRequestCount + 1, apiMock.getListRequestCount());
+        } finally {
+            apiMock.setMaxKeys(1000);
+        }
+    }
+
+    @Test
+    public void testListingPrefetch() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_PREFETCH_PAGES, 2);
+        reopenFileSystem(env);
+        Path dir = fs.getPath("/tiles/1/C/CV/2015/12/25/");
+        apiMock.setMaxKeys(3);
+        try {
+            int listRequestCount = apiMock.getListRequestCount();
+            List<String> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                Iterator<Path> iterator = stream.iterator();
+                entries.add(iterator.next().toString());
+                // While the first page is consumed, the next two pages are requested, but not the last one.
+                for (int i = 0; i < 100 && apiMock.getListRequestCount() < listRequestCount + 3; i++) {
+                    Thread.sleep(20);
+                }
+                Thread.sleep(100);
+                assertEquals(listRequestCount + 3, apiMock.getListRequestCount());
+                while (iterator.hasNext()) {
+                    entries.add(iterator.next().toString());
+                }
+            }
+            assertEquals(10, entries.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("/tiles/1/C/CV/2015/12/25/" + i + "/", entries.get(i));
+            }
+            assertEquals(listRequestCount + 4, apiMock.getListRequestCount());
+        } finally {
+            apiMock.setMaxKeys(1000);
+        }
+    }
+
+    @Test
+    public void testPartitionedListing() throws Exception {
+        List<String> expected;
+        try (Stream<Path> paths = Files.walk(fs.getPath("/tiles/"))) {
+            expected = paths.map(Path::toString).sorted().collect(Collectors.toList());
+        }
+
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_PARTITIONS, 4);
+        reopenFileSystem(env);
+        apiMock.setMaxKeys(3);
+        try {
+            // The entries of the key ranges are merged in key order, directories included.
+            List<String> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/"))) {
+                for (Path entry : stream) {
+                    entries.add(entry.toString());
+                }
+            }
+            assertEquals(Arrays.asList("/GENERAL_QUALITY.xml", "/index.html", "/products/", "/style.css", "/tiles/"), entries);
+
+            entries.clear();
+            int listRequestCount = apiMock.getListRequestCount();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/tiles/1/C/CV/2015/12/25/"))) {
+                for (Path entry : stream) {
+                    entries.add(entry.toString());
+                }
+            }
+            // Besides the pages, split points have been sampled.
+            assertTrue(apiMock.getListRequestCount() > listRequestCount + 4);
+            assertEquals(10, entries.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("/tiles/1/C/CV/2015/12/25/" + i + "/", entries.get(i));
+            }
+
+            try (Stream<Path> paths = Files.walk(fs.getPath("/tiles/"))) {
+                assertEquals(expected, paths.map(Path::toString).sorted().collect(Collectors.toList()));
+            }
+        } finally {
+            apiMock.setMaxKeys(1000);
+        }
+    }
+
+    @Test
+    public void testPartitionedListingWithLongStem() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String key = String.format("stem/S2A_MSIL1C_20200101T%06d_N0208_R008.zip", i * 37);
+            apiMock.addFile(key, "2016-07-13T17:24:10.000Z", "application/binary", new byte[10]);
+            expected.add("/" + key);
+        }
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_PARTITIONS, 4);
+        reopenFileSystem(env);
+        apiMock.setMaxKeys(10);
+        try {
+            List<String> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/stem/"))) {
+                for (Path entry : stream) {
+                    entries.add(entry.toString());
+                }
+            }
+            assertEquals(expected, entries);
+            // Key ranges other than the first have been listed.
+            assertTrue(apiMock.getStartAfterListRequestCount() > 0);
+        } finally {
+            apiMock.setMaxKeys(1000);
+            for (int i = 0; i < 200; i++) {
+                apiMock.removeFile(String.format("stem/S2A_MSIL1C_20200101T%06d_N0208_R008.zip", i * 37));
+            }
+        }
+    }
+
+    @Test
+    public void testListingCache() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_CACHE_TTL, 60000);
+        reopenFileSystem(env);
+        Path dir = fs.getPath("/tiles/1/C/CV/2015/12/25/0/");
+        String newKey = "tiles/1/C/CV/2015/12/25/0/B04.jp2";
+        try {
+            int listRequestCount = apiMock.getListRequestCount();
+            List<String> entries = listDir(dir);
+            assertEquals(5, entries.size());
+            assertEquals(entries, listDir(dir));
+            assertEquals(listRequestCount + 1, apiMock.getListRequestCount());
+
+            fs.getRootDirectories();
+            fs.getRootDirectories();
+            assertEquals(listRequestCount + 2, apiMock.getListRequestCount());
+
+            // The listed attributes save the HEAD request.
+            String key = "tiles/1/C/CV/2015/12/25/0/B01.jp2";
+            int headRequestCount = apiMock.getHeadRequestCount(key);
+            assertEquals(1024 * 1024, Files.size(fs.getPath("/" + key)));
+            assertEquals(headRequestCount, apiMock.getHeadRequestCount(key));
+
+            // A listing closed early is not cached.
+            Path otherDir = fs.getPath("/tiles/1/C/CV/2015/12/25/1/");
+            listRequestCount = apiMock.getListRequestCount();
+            try (Stream<Path> stream = Files.list(otherDir)) {
+                assertTrue(stream.findFirst().isPresent());
+            }
+            assertEquals(5, listDir(otherDir).size());
+            assertEquals(5, listDir(otherDir).size());
+            assertEquals(listRequestCount + 2, apiMock.getListRequestCount());
+
+            // New objects are listed once the affected listings have been invalidated.
+            apiMock.addFile(newKey, "2016-07-13T17:24:10.000Z", "application/binary", new byte[10]);
+            assertEquals(5, listDir(dir).size());
+            fs.invalidateListings(fs.getPath("/" + newKey));
+            assertEquals(6, listDir(dir).size());
+            // Listings of other directories are kept.
+            listRequestCount = apiMock.getListRequestCount();
+            assertEquals(5, listDir(otherDir).size());
+            assertEquals(listRequestCount, apiMock.getListRequestCount());
+        } finally {
+            apiMock.removeFile(newKey);
+        }
+    }
+
+    @Test
+    public void testListingCacheRefresh() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.LIST_CACHE_TTL, 1);
+        env.put(ObjectStorageConfig.LIST_CACHE_STALE_TIME, 60000);
+        reopenFileSystem(env);
+        Path dir = fs.getPath("/tiles/2/C/CV/2015/12/25/0/");
+        String newKey = "tiles/2/C/CV/2015/12/25/0/B04.jp2";
+        try {
+            assertEquals(5, listDir(dir).size());
+            Thread.sleep(10);
+            apiMock.addFile(newKey, "2016-07-13T17:24:10.000Z", "application/binary", new byte[10]);
+
+            // The stale listing is served while it is refreshed in the background.
+            int listRequestCount = apiMock.getListRequestCount();
+            assertEquals(5, listDir(dir).size());
+            List<String> entries = listDir(dir);
+            for (int i = 0; i < 100 && entries.size() < 6; i++) {
+                Thread.sleep(20);
+                entries = listDir(dir);
+            }
+            assertEquals(6, entries.size());
+            assertTrue(entries.contains("/" + newKey));
+            assertTrue(apiMock.getListRequestCount() > listRequestCount);
+        } finally {
+            apiMock.removeFile(newKey);
+        }
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.BLOCK_CACHE_SIZE, "1m");
+        env.put(ObjectStorageConfig.BLOCK_CACHE_BLOCK_SIZE, "8k");
+        reopenFileSystem(env);
+
+        long openedConnectionCount = apiMock.getOpenedConnectionCount();
+        String key = "tiles/2/C/CV/2015/12/25/3/B02.jp2";
+        byte[] expected = apiMock.getFileData(key);
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+            for (int position = 0; position + 1000 <= expected.length; position += 50000) {
+                channel.position(position);
+                ByteBuffer buffer = ByteBuffer.allocate(1000);
+                assertEquals(1000, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(expected, position, position + 1000), buffer.array());
+            }
+        }
+        // A single thread sends its HEAD and ranged GET requests over the same connection,
+        // which may also be left over from a previous test.
+        assertTrue(apiMock.getOpenedConnectionCount() - openedConnectionCount <= 1);
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.MAX_CONNECTIONS_PER_HOST, 2);
+        reopenFileSystem(env);
+
+        String[] keys = new String[8];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "tiles/2/C/CV/2015/12/25/" + i + "/B02.jp2";
+        }
+        // Delayed requests of previous tests may still be pending.
+        for (int i = 0; i < 100 && apiMock.getPendingDelayedRequestCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        apiMock.delayRequests(2 * keys.length, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(keys.length);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (String key : keys) {
+                // Each channel holds its response open until it is closed.
+                results.add(executor.submit(() -> {
+                    try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath("/" + key))) {
+                        ByteBuffer buffer = ByteBuffer.allocate(1000);
+                        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                        }
+                        return buffer.array();
+                    }
+                }));
+            }
+            for (int i = 0; i < keys.length; i++) {
+                assertArrayEquals(Arrays.copyOf(apiMock.getFileData(keys[i]), 1000), results.get(i).get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(2, apiMock.getMaxPendingDelayedRequestCount());
+        } finally {
+            executor.shutdownNow();
+            apiMock.delayRequests(0, 0);
+        }
+    }
+
+    @Test
+    public void testConnectionPrewarm() throws Exception {
+        Map<String, Object> env = new HashMap<>();
+        env.put(ObjectStorageConfig.CONNECTION_PREWARM, 3);
+        reopenFileSystem(env);
+
+        for (int i = 0; i < 100 && apiMock.getOpenConnectionCount() < 3; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(apiMock.getOpenConnectionCount() >= 3);
+    }
+
+    private List<String> listDir(Path dir) throws Exception {
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.map(Path::toString).collect(Collectors.toList());
+        }
+    }
+
+    private void reopenFileSystem(Map<String, Object> env) throws Exception {
+        fs.close();
+        env.put("delimiter", "/");
+        fs = (ObjectStorageFileSystem) FileSystems.newFileSystem(new URI("s3:" + getAddress()), env);
     }
 }
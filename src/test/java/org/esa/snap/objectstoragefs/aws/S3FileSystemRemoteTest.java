@@ -8,6 +8,7 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -25,13 +26,13 @@ public class S3FileSystemRemoteTest extends S3FileSystemTest {
     public void testScanner() throws Exception {
         List<BasicFileAttributes> items;
 
-        items = new S3Walker().walk(getAddress(), "", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "", "/").collect(Collectors.toList());
         assertEquals(7, items.size());
 
-        items = new S3Walker().walk(getAddress(), "products/", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "products/", "/").collect(Collectors.toList());
         assertEquals(3, items.size());
 
-        items = new S3Walker().walk(getAddress(), "tiles/", "/");
+        items = new S3Walker(fs.getConnectionPool(), fs.getRetryPolicy()).walk(getAddress(), "tiles/", "/").collect(Collectors.toList());
         assertEquals(60, items.size());
     }
 
@@ -0,0 +1,190 @@
+package org.esa.snap.objectstoragefs.aws;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class S3ListingParserTest {
+
+    private static final String LISTING = "" +
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">\n" +
+            "  <Name>TEST</Name>\n" +
+            "  <Prefix>tiles/</Prefix>\n" +
+            "  <Marker/>\n" +
+            "  <NextContinuationToken>1ueGcxLPRx1Tr/XYExHnhbYLgveDs2J/wm36Hy4vbOwM=</NextContinuationToken>\n" +
+            "  <KeyCount>4</KeyCount>\n" +
+            "  <MaxKeys>4</MaxKeys>\n" +
+            "  <Delimiter>/</Delimiter>\n" +
+            "  <IsTruncated>true</IsTruncated>\n" +
+            "  <!-- <Contents><Key>commented/</Key></Contents> -->\n" +
+            "  <Contents>\n" +
+            "    <Key>tiles/a &amp; b&#47;&#x43;.xml</Key>\n" +
+            "    <LastModified>2016-07-13T17:24:10.000Z</LastModified>\n" +
+            "    <ETag>\"5093fa512c4aa58b5f080da62f4b00dc\"</ETag>\n" +
+            "    <Size>12345678901</Size>\n" +
+            "    <Owner>\n" +
+            "      <ID>91d380b3cead28df927c824731b0173701336cd8d67b0679d7166288f3850f38</ID>\n" +
+            "      <Key>not a key</Key>\n" +
+            "    </Owner>\n" +
+            "    <StorageClass>STANDARD</StorageClass>\n" +
+            "  </Contents>\n" +
+            "  <Contents>\n" +
+            "    <Key><![CDATA[tiles/<\u00e9>.jp2]]></Key>\n" +
+            "    <LastModified>2016-07-13T17:24:11.000Z</LastModified>\n" +
+            "    <Size>0</Size>\n" +
+            "  </Contents>\n" +
+            "  <CommonPrefixes>\n" +
+            "    <Prefix>tiles/1/</Prefix>\n" +
+            "  </CommonPrefixes>\n" +
+            "  <CommonPrefixes>\n" +
+            "    <Prefix>tiles/\u00fc &lt;2&gt;/</Prefix>\n" +
+            "  </CommonPrefixes>\n" +
+            "</ListBucketResult>\n";
+
+    @Test
+    public void testParse() throws Exception {
+        S3ListingParser parser = new S3ListingParser();
+        List<BasicFileAttributes> items = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        parser.parse(new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8)), items, tokens::add);
+        assertListing(parser, items, tokens);
+    }
+
+    @Test
+    public void testParseSingleBytes() throws Exception {
+        // Every element boundary falls between two reads.
+        InputStream stream = new FilterInputStream(new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        S3ListingParser parser = new S3ListingParser();
+        List<BasicFileAttributes> items = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        parser.parse(stream, items, tokens::add);
+        assertListing(parser, items, tokens);
+    }
+
+    @Test
+    public void testParseLastPage() throws Exception {
+        String listing = "<ListBucketResult><IsTruncated>false</IsTruncated>" +
+                         "<Contents><Key>index.html</Key><Size>7</Size></Contents></ListBucketResult>";
+        S3ListingParser parser = new S3ListingParser();
+        List<BasicFileAttributes> items = new ArrayList<>();
+        parser.parse(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)), items, null);
+        assertFalse(parser.isTruncated());
+        assertNull(parser.getNextContinuationToken());
+        assertEquals(1, items.size());
+        assertEquals("index.html", items.get(0).fileKey());
+        assertEquals(7, items.get(0).size());
+    }
+
+    @Test
+    public void testParseMalformed() throws Exception {
+        S3ListingParser parser = new S3ListingParser();
+        String[] listings = {
+                "<ListBucketResult><Contents><Key>index.html</Key>",
+                "<ListBucketResult><Contents><Size>7x</Size></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Key>&nbsp;</Key></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Key>a</Key><Size>9223372036854775808</Size></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Key>a</Key><Size>99999999999999999999</Size></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Key/><Size>7</Size></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Key></Key><Size>7</Size></Contents></ListBucketResult>",
+                "<ListBucketResult><Contents><Size>7</Size></Contents></ListBucketResult>",
+        };
+        for (String listing : listings) {
+            try {
+                parser.parse(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)), new ArrayList<>(), null);
+                fail(listing);
+            } catch (IOException expected) {
+                // ok
+            }
+        }
+    }
+
+    /**
+     * Compares the parser with the SAX handler it replaces on a page of 1000 keys. Runs only
+     * if the system property {@code objectstoragefs.benchmark} is {@code true}.
+     */
+    @Test
+    public void benchmarkAgainstSaxHandler() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("objectstoragefs.benchmark"));
+        StringBuilder listing = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                  "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" +
+                                                  "<Name>sentinel-s2-l1c</Name><Prefix>tiles/</Prefix>" +
+                                                  "<NextContinuationToken>1ueGcxLPRx1Tr/XYExHnhbYLgveDs2J/wm36Hy4vbOwM=</NextContinuationToken>" +
+                                                  "<KeyCount>1000</KeyCount><MaxKeys>1000</MaxKeys><IsTruncated>true</IsTruncated>");
+        for (int i = 0; i < 1000; i++) {
+            listing.append("<Contents><Key>tiles/1/C/CV/2015/12/25/").append(i).append("/B01.jp2</Key>")
+                    .append("<LastModified>2016-07-13T17:24:10.000Z</LastModified>")
+                    .append("<ETag>&quot;5093fa512c4aa58b5f080da62f4b00dc&quot;</ETag>")
+                    .append("<Size>").append(1000000 + i).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        listing.append("</ListBucketResult>");
+        byte[] data = listing.toString().getBytes(StandardCharsets.UTF_8);
+        int iterations = 2000;
+
+        // The best of several rounds, so that warm-up and collections do not count.
+        long saxTime = Long.MAX_VALUE;
+        long parserTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+                parserFactory.setNamespaceAware(true);
+                XMLReader xmlReader = parserFactory.newSAXParser().getXMLReader();
+                List<BasicFileAttributes> items = new ArrayList<>();
+                xmlReader.setContentHandler(new S3ResponseHandler(items));
+                xmlReader.parse(new InputSource(new ByteArrayInputStream(data)));
+                assertEquals(1000, items.size());
+            }
+            saxTime = Math.min(saxTime, System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                S3ListingParser parser = new S3ListingParser();
+                List<BasicFileAttributes> items = new ArrayList<>();
+                parser.parse(new ByteArrayInputStream(data), items, null);
+                assertEquals(1000, items.size());
+            }
+            parserTime = Math.min(parserTime, System.nanoTime() - startTime);
+        }
+        assertTrue(String.format("listing parser: %.1f us/page, SAX handler: %.1f us/page",
+                                 parserTime / 1000.0 / iterations, saxTime / 1000.0 / iterations),
+                   parserTime <= saxTime);
+    }
+
+    private static void assertListing(S3ListingParser parser, List<BasicFileAttributes> items, List<String> tokens) {
+        assertTrue(parser.isTruncated());
+        assertEquals("1ueGcxLPRx1Tr/XYExHnhbYLgveDs2J/wm36Hy4vbOwM=", parser.getNextContinuationToken());
+        assertEquals(1, tokens.size());
+        assertEquals(parser.getNextContinuationToken(), tokens.get(0));
+        assertEquals(4, items.size());
+        assertEquals("tiles/a & b/C.xml", items.get(0).fileKey());
+        assertTrue(items.get(0).isRegularFile());
+        assertEquals(12345678901L, items.get(0).size());
+        assertEquals(1468430650000L, items.get(0).lastModifiedTime().toMillis());
+        assertEquals("tiles/<\u00e9>.jp2", items.get(1).fileKey());
+        assertEquals(0, items.get(1).size());
+        assertEquals("tiles/1/", items.get(2).fileKey());
+        assertTrue(items.get(2).isDirectory());
+        assertEquals("tiles/\u00fc <2>/", items.get(3).fileKey());
+        assertTrue(items.get(3).isDirectory());
+    }
+}
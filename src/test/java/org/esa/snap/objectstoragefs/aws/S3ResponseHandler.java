@@ -8,8 +8,14 @@ import org.xml.sax.helpers.DefaultHandler;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
 
-public class S3ResponseHandler extends DefaultHandler {
+/**
+ * Collects the entries of a ListObjectsV2 response parsed by a SAX parser. Listings are
+ * parsed by {@link S3ListingParser}, which avoids the overhead of SAX; this handler, which
+ * it replaced, is the baseline of the parser's benchmark.
+ */
+class S3ResponseHandler extends DefaultHandler {
     private static final String KEY = "Key";
     private static final String SIZE = "Size";
     private static final String CONTENTS = "Contents";
@@ -21,6 +27,7 @@ public class S3ResponseHandler extends DefaultHandler {
 
     private LinkedList<String> elementStack = new LinkedList<>();
     private List<BasicFileAttributes> items;
+    private Consumer<String> continuationTokenListener;
 
     private String key;
     private long size;
@@ -30,7 +37,20 @@ public class S3ResponseHandler extends DefaultHandler {
     private String prefix;
 
     S3ResponseHandler(List<BasicFileAttributes> items) {
+        this(items, null);
+    }
+
+    /**
+     * Creates a handler that reports the continuation token as soon as it has been parsed.
+     * S3 sends the token before the entries, so that the next page can be requested while
+     * the rest of the current page is still being received.
+     *
+     * @param items                     The list receiving the entries
+     * @param continuationTokenListener Called with the token of the next page, may be {@code null}
+     */
+    S3ResponseHandler(List<BasicFileAttributes> items, Consumer<String> continuationTokenListener) {
         this.items = items;
+        this.continuationTokenListener = continuationTokenListener;
     }
 
     private static String getTextValue(char[] ch, int start, int length) {
@@ -63,6 +83,9 @@ public class S3ResponseHandler extends DefaultHandler {
             items.add(ObjectStorageFileAttributes.newDir(prefix));
         } else if (currentElement.equals(CONTENTS) && elementStack.size() == 1) {
             items.add(ObjectStorageFileAttributes.newFile(key, size, lastModified));
+        } else if (currentElement.equals(NEXT_CONTINUATION_TOKEN) && elementStack.size() == 1
+                   && continuationTokenListener != null && nextContinuationToken != null) {
+            continuationTokenListener.accept(nextContinuationToken);
         }
     }
 
@@ -84,7 +107,8 @@ public class S3ResponseHandler extends DefaultHandler {
                 isTruncated = getBooleanValue(ch, start, length);
                 break;
             case NEXT_CONTINUATION_TOKEN:
-                nextContinuationToken = getTextValue(ch, start, length);
+                // Long tokens may be reported in several chunks.
+                nextContinuationToken = (nextContinuationToken != null ? nextContinuationToken : "") + getTextValue(ch, start, length);
                 break;
             case PREFIX:
                 prefix = getTextValue(ch, start, length);
@@ -1,5 +1,6 @@
 package org.esa.snap.objectstoragefs.aws;
 
+import org.eclipse.jetty.io.ConnectionStatistics;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
@@ -7,13 +8,30 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 public class S3RestApiMock {
 
     private Server server;
+    private final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
     private Map<String, File> files = new HashMap<>();
+    private Map<String, Integer> getRequestCounts = new HashMap<>();
+    private Map<String, Integer> headRequestCounts = new HashMap<>();
+    private int delayedRequestCount;
+    private long requestDelay;
+    private int pendingDelayedRequestCount;
+    private int maxPendingDelayedRequestCount;
+    private int truncatedResponseCount;
+    private int truncatedResponseLength;
+    private int failedListRequestCount;
+    private int listRequestCount;
+    private int startAfterListRequestCount;
+    private int compressedListResponseCount;
+    private int maxKeys = 1000;
     private long nextRequestId = new Random().nextLong();
 
     public static void main(String[] args) throws Exception {
@@ -42,20 +60,165 @@ public class S3RestApiMock {
         return value;
     }
 
+    static byte[] newData(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    byte[] getFileData(String key) {
+        return files.get(key).data;
+    }
+
+    synchronized int getGetRequestCount(String key) {
+        return getRequestCounts.getOrDefault(key, 0);
+    }
+
+    /**
+     * Delays the responses to the next requests for objects, and starts counting the pending delayed requests anew.
+     *
+     * @param count  The number of requests to delay
+     * @param millis The delay in milliseconds
+     */
+    synchronized void delayRequests(int count, long millis) {
+        delayedRequestCount = count;
+        requestDelay = millis;
+        maxPendingDelayedRequestCount = pendingDelayedRequestCount;
+    }
+
+    synchronized int getPendingDelayedRequestCount() {
+        return pendingDelayedRequestCount;
+    }
+
+    /**
+     * @return The maximum number of delayed requests that have been pending at the same time
+     */
+    synchronized int getMaxPendingDelayedRequestCount() {
+        return maxPendingDelayedRequestCount;
+    }
+
+    private void delayRequest() {
+        long delay;
+        synchronized (this) {
+            if (delayedRequestCount == 0) {
+                return;
+            }
+            delayedRequestCount--;
+            delay = requestDelay;
+            pendingDelayedRequestCount++;
+            maxPendingDelayedRequestCount = Math.max(maxPendingDelayedRequestCount, pendingDelayedRequestCount);
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                pendingDelayedRequestCount--;
+            }
+        }
+    }
+
+    /**
+     * Breaks the connections of the next responses with object data after a number of bytes.
+     *
+     * @param count  The number of responses to break
+     * @param length The number of body bytes sent before the connection is broken
+     */
+    synchronized void truncateResponses(int count, int length) {
+        truncatedResponseCount = count;
+        truncatedResponseLength = length;
+    }
+
+    private synchronized int getTruncatedResponseLength() {
+        if (truncatedResponseCount == 0) {
+            return -1;
+        }
+        truncatedResponseCount--;
+        return truncatedResponseLength;
+    }
+
+    /**
+     * Answers the next listing requests with "503 Service Unavailable".
+     *
+     * @param count The number of requests to fail
+     */
+    synchronized void failListRequests(int count) {
+        failedListRequestCount = count;
+    }
+
+    private synchronized boolean isListRequestFailing() {
+        if (failedListRequestCount == 0) {
+            return false;
+        }
+        failedListRequestCount--;
+        return true;
+    }
+
+    /**
+     * Sets the maximum number of entries in a page of a listing, unless requested otherwise.
+     *
+     * @param maxKeys The maximum number of entries
+     */
+    synchronized void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    synchronized int getListRequestCount() {
+        return listRequestCount;
+    }
+
+    /**
+     * @return The number of listing requests for pages starting after a given key, not counting
+     * requests for a single entry
+     */
+    synchronized int getStartAfterListRequestCount() {
+        return startAfterListRequestCount;
+    }
+
+    synchronized int getCompressedListResponseCount() {
+        return compressedListResponseCount;
+    }
+
+    synchronized int getHeadRequestCount(String key) {
+        return headRequestCounts.getOrDefault(key, 0);
+    }
+
+    private synchronized void countRequest(String method, String key) {
+        if ("GET".equals(method)) {
+            getRequestCounts.merge(key, 1, Integer::sum);
+        } else if ("HEAD".equals(method)) {
+            headRequestCounts.merge(key, 1, Integer::sum);
+        }
+    }
+
     @SuppressWarnings("WeakerAccess")
     void addFile(String key, String lastModified, String contentType, byte[] data) {
         File file = new File(key, lastModified, contentType, data);
         files.put(file.key, file);
     }
 
+    void removeFile(String key) {
+        files.remove(key);
+    }
+
     void start(int port) throws Exception {
         loadFiles();
         server = new Server(port);
+        server.getConnectors()[0].addBean(connectionStatistics);
         server.setHandler(new AwsS3RestApiHandler());
         server.start();
         //server.join();
     }
 
+    long getOpenedConnectionCount() {
+        return connectionStatistics.getConnectionsTotal();
+    }
+
+    long getOpenConnectionCount() {
+        return connectionStatistics.getConnections();
+    }
+
     void stop() throws Exception {
         server.stop();
     }
@@ -67,20 +230,20 @@ public class S3RestApiMock {
         for (int i = 0; i < 3; i++) {
             String prefix = "products/201" + (5 + i) + "/10/1/S2A_OPER_PRD_MSIL1C_PDMC_20160729T004231_R007_V20151001T091034_20151001T091034/";
             String lastModified = "2016-07-13T17:24:" + (10 + i) + ".000Z";
-            addFile(prefix + "preview/B01.jp2", lastModified, "application/binary", new byte[116665]);
-            addFile(prefix + "preview/B02.jp2", lastModified, "application/binary", new byte[116665]);
-            addFile(prefix + "preview/B03.jp2", lastModified, "application/binary", new byte[116665]);
+            addFile(prefix + "preview/B01.jp2", lastModified, "application/binary", newData(116665, i));
+            addFile(prefix + "preview/B02.jp2", lastModified, "application/binary", newData(116665, i + 1));
+            addFile(prefix + "preview/B03.jp2", lastModified, "application/binary", newData(116665, i + 2));
             addFile(prefix + "metadata.xml", lastModified, "text/xml;charset=utf-8", "<Metadata/>".getBytes());
         }
         for (int j = 1; j <= 3; j++) {
             for (int i = 0; i < 10; i++) {
                 String prefix = "tiles/" + j + "/C/CV/2015/12/25/" + i + "/";
                 String lastModified = "2016-07-13T17:24:" + (10 + i * j) + ".000Z";
-                addFile(prefix + "B01.jp2", lastModified, "application/binary", new byte[1024 * 1024]);
-                addFile(prefix + "B02.jp2", lastModified, "application/binary", new byte[1024 * 1024]);
-                addFile(prefix + "B03.jp2", lastModified, "application/binary", new byte[1024 * 1024]);
+                addFile(prefix + "B01.jp2", lastModified, "application/binary", newData(1024 * 1024, 10 * j + i));
+                addFile(prefix + "B02.jp2", lastModified, "application/binary", newData(1024 * 1024, 20 * j + i));
+                addFile(prefix + "B03.jp2", lastModified, "application/binary", newData(1024 * 1024, 30 * j + i));
                 addFile(prefix + "metadata.xml", lastModified, "text/xml;charset=utf-8", "<Metadata/>".getBytes());
-                addFile(prefix + "preview.jpg", lastModified, "image/jpeg", new byte[116665]);
+                addFile(prefix + "preview.jpg", lastModified, "image/jpeg", newData(116665, 40 * j + i));
             }
         }
     }
@@ -139,12 +302,33 @@ public class S3RestApiMock {
             //System.out.println("  delimiter = " + delimiter);
 
             if (key.equals("/")) {
+                int pageSize;
+                synchronized (S3RestApiMock.this) {
+                    listRequestCount++;
+                    pageSize = maxKeys;
+                }
+                if (isListRequestFailing()) {
+                    httpServletResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    httpServletResponse.flushBuffer();
+                    return;
+                }
+                String maxKeysParam = httpServletRequest.getParameter("max-keys");
+                if (maxKeysParam != null) {
+                    pageSize = Math.min(pageSize, Integer.parseInt(maxKeysParam));
+                }
+                // The continuation token is the last entry of the previous page.
+                String continuationToken = httpServletRequest.getParameter("continuation-token");
+                String startAfter = httpServletRequest.getParameter("start-after");
+                if (startAfter != null && !"1".equals(maxKeysParam)) {
+                    synchronized (S3RestApiMock.this) {
+                        startAfterListRequestCount++;
+                    }
+                }
                 StringBuffer result = new StringBuffer("" +
                                                                "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">\n" +
                                                                "  <Name>TEST</Name>\n" +
                                                                "  <Marker/>\n" +
-                                                               "  <MaxKeys>1000</MaxKeys>\n" +
-                                                               "  <IsTruncated>false</IsTruncated>");
+                                                               "  <MaxKeys>" + pageSize + "</MaxKeys>\n");
                 if (prefix != null) {
                     result.append(String.format("  <Prefix>%s</Prefix>\n", prefix));
                 } else {
@@ -161,46 +345,77 @@ public class S3RestApiMock {
                     delimiter = "/";
                 }
 
-                ArrayList<String> keyList = new ArrayList<>();
-                HashSet<String> commonPrefixes = new HashSet<>();
-                if (!delimiter.isEmpty()) {
-                    for (File file : files.values()) {
-                        if (file.key.startsWith(prefix)) {
-                            int index = file.key.indexOf(delimiter, prefix.length());
-                            if (index < 0) {
-                                keyList.add(file.key);
-                            } else {
-                                commonPrefixes.add(file.key.substring(0, index + 1));
-                            }
+                // Keys and common prefixes, in the order of S3: lexicographically by UTF-8 bytes.
+                TreeMap<String, Boolean> entries = new TreeMap<>();
+                for (File file : new ArrayList<>(files.values())) {
+                    if (file.key.startsWith(prefix)) {
+                        int index = file.key.indexOf(delimiter, prefix.length());
+                        if (index < 0) {
+                            entries.put(file.key, false);
+                        } else {
+                            entries.put(file.key.substring(0, index + 1), true);
                         }
                     }
-                } else if (!prefix.isEmpty()) {
-                    for (File file : files.values()) {
-                        if (file.key.startsWith(prefix)) {
-                            keyList.add(file.key);
-                        }
+                }
+                String after = continuationToken != null ? continuationToken : startAfter;
+                SortedMap<String, Boolean> remaining = after != null ? entries.tailMap(after + "\0") : entries;
+                ArrayList<String> keyList = new ArrayList<>();
+                ArrayList<String> cpList = new ArrayList<>();
+                String lastEntry = null;
+                for (Map.Entry<String, Boolean> entry : remaining.entrySet()) {
+                    if (keyList.size() + cpList.size() == pageSize) {
+                        break;
                     }
-                } else {
-                    keyList.addAll(files.keySet());
+                    (entry.getValue() ? cpList : keyList).add(entry.getKey());
+                    lastEntry = entry.getKey();
+                }
+                boolean truncated = lastEntry != null && !remaining.tailMap(lastEntry + "\0").isEmpty();
+                result.append("  <IsTruncated>").append(truncated).append("</IsTruncated>\n");
+                if (truncated) {
+                    result.append("  <NextContinuationToken>").append(lastEntry).append("</NextContinuationToken>\n");
                 }
-                Collections.sort(keyList);
                 for (String fileKey : keyList) {
                     result.append(toContents(files.get(fileKey)));
                 }
-                ArrayList<String> cpList = new ArrayList<>(commonPrefixes);
-                Collections.sort(cpList);
                 for (String commonPrefix : cpList) {
                     result.append(toCommonPrefix(commonPrefix));
                 }
                 result.append("</ListBucketResult>");
                 httpServletResponse.setStatus(HttpServletResponse.SC_OK);
                 httpServletResponse.setContentType("text/xml;charset=utf-8");
-                httpServletResponse.getWriter().println(result);
+                String acceptEncoding = httpServletRequest.getHeader("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    synchronized (S3RestApiMock.this) {
+                        compressedListResponseCount++;
+                    }
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (GZIPOutputStream stream = new GZIPOutputStream(compressed)) {
+                        stream.write(result.toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    httpServletResponse.setHeader("Content-Encoding", "gzip");
+                    httpServletResponse.setContentLength(compressed.size());
+                    httpServletResponse.getOutputStream().write(compressed.toByteArray());
+                } else {
+                    httpServletResponse.getWriter().println(result);
+                }
             } else {
                 File file = files.get(key.substring(1));
                 if (file != null) {
+                    countRequest(httpServletRequest.getMethod(), file.key);
+                    delayRequest();
+                    String etag = "\"" + Integer.toHexString(Arrays.hashCode(file.data)) + "\"";
+                    String ifMatch = httpServletRequest.getHeader("If-Match");
+                    if (ifMatch != null && !ifMatch.equals(etag)) {
+                        httpServletResponse.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                        httpServletResponse.flushBuffer();
+                        return;
+                    }
                     String rangeSpec = httpServletRequest.getHeader("Range");
                     int[] range = new int[]{0, file.data.length - 1};
+                    if (rangeSpec != null && rangeSpec.contains(",")) {
+                        writeMultipartRanges(httpServletResponse, file, rangeSpec);
+                        return;
+                    }
                     if (rangeSpec != null) {
                         //System.out.println("  range = " + rangeSpec);
                         try {
@@ -210,17 +425,35 @@ public class S3RestApiMock {
                             return;
                         }
                     }
+                    if (range[1] >= file.data.length) {
+                        range[1] = file.data.length - 1;
+                    }
+                    if (range[0] > range[1]) {
+                        httpServletResponse.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        httpServletResponse.setHeader("Content-Range", "bytes */" + file.data.length);
+                        httpServletResponse.flushBuffer();
+                        return;
+                    }
                     int offset = range[0];
                     int length = 1 + range[1] - offset;
                     if (offset == 0 && length == file.data.length) {
                         httpServletResponse.setStatus(HttpServletResponse.SC_OK);
                     } else {
                         httpServletResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                        httpServletResponse.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + file.data.length);
                     }
                     httpServletResponse.setContentType(file.contentType);
-                    httpServletResponse.setContentLength(file.data.length);
+                    httpServletResponse.setContentLength(length);
                     httpServletResponse.setHeader("Last-Modified", file.lastModified);
+                    httpServletResponse.setHeader("ETag", etag);
                     httpServletResponse.setHeader("Accept-Ranges", "bytes");
+                    int truncatedLength = "GET".equals(httpServletRequest.getMethod()) ? getTruncatedResponseLength() : -1;
+                    if (truncatedLength >= 0 && truncatedLength < length) {
+                        httpServletResponse.getOutputStream().write(file.data, offset, truncatedLength);
+                        httpServletResponse.flushBuffer();
+                        request.getHttpChannel().abort(new IOException("connection broken on purpose"));
+                        return;
+                    }
                     httpServletResponse.getOutputStream().write(file.data, offset, length);
                 } else {
                     httpServletResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -241,5 +474,33 @@ public class S3RestApiMock {
             }
             httpServletResponse.flushBuffer();
         }
+
+        private void writeMultipartRanges(HttpServletResponse httpServletResponse, File file, String rangeSpec) throws IOException {
+            String boundary = "RANGES" + Long.toHexString(nextRequestId);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (String part : rangeSpec.substring("bytes=".length()).split(",")) {
+                int[] range;
+                try {
+                    range = parseRange("bytes=" + part.trim(), new int[]{0, file.data.length - 1});
+                } catch (IllegalArgumentException e) {
+                    httpServletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    return;
+                }
+                range[1] = Math.min(range[1], file.data.length - 1);
+                String partHeader = "--" + boundary + "\r\n" +
+                                    "Content-Type: " + file.contentType + "\r\n" +
+                                    "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + file.data.length + "\r\n" +
+                                    "\r\n";
+                body.write(partHeader.getBytes(StandardCharsets.ISO_8859_1));
+                body.write(file.data, range[0], 1 + range[1] - range[0]);
+                body.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+            body.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            httpServletResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            httpServletResponse.setContentType("multipart/byteranges; boundary=" + boundary);
+            httpServletResponse.setContentLength(body.size());
+            body.writeTo(httpServletResponse.getOutputStream());
+            httpServletResponse.flushBuffer();
+        }
     }
 }
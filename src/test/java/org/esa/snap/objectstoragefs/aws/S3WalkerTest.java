@@ -0,0 +1,20 @@
+package org.esa.snap.objectstoragefs.aws;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class S3WalkerTest {
+
+    @Test
+    public void testCompareKeys() {
+        assertEquals(0, S3Walker.compareKeys("tiles/1/", "tiles/1/"));
+        assertTrue(S3Walker.compareKeys("tiles/1/", "tiles/2/") < 0);
+        assertTrue(S3Walker.compareKeys("tiles/1/B01.jp2", "tiles/1/") > 0);
+        assertTrue(S3Walker.compareKeys("tiles/1", "tiles/1/") < 0);
+        assertTrue(S3Walker.compareKeys("Z", "a") < 0);
+        // Ordered by UTF-8 bytes, that is by code points, unlike String.compareTo().
+        assertTrue(S3Walker.compareKeys("\uFFFD", "\uD83D\uDE00") < 0);
+        assertTrue("\uFFFD".compareTo("\uD83D\uDE00") > 0);
+    }
+}